@@ -0,0 +1,43 @@
+package de.bschandera;
+
+import de.bschandera.githubapininja.Fixtures;
+import de.bschandera.githubapininja.Language;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Turning the aggregated languages into the percentages that are printed.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FormatResultBenchmark {
+
+    @Param({"1", "10", "500"})
+    int languages;
+
+    List<Language> aggregated;
+    BigDecimal bytesTotal;
+
+    @Setup
+    public void setUp() {
+        aggregated = Fixtures.languages(languages);
+        bytesTotal = ApiNinja.sumUpBytesTotal(aggregated);
+    }
+
+    @Benchmark
+    public String formatResult() {
+        return ApiNinja.formatResult(aggregated, bytesTotal);
+    }
+
+    @Benchmark
+    public String sumUpAndFormatResult() {
+        return ApiNinja.formatResult(aggregated, ApiNinja.sumUpBytesTotal(aggregated));
+    }
+}
@@ -0,0 +1,38 @@
+package de.bschandera.githubapininja;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Aggregation of the languages of many repositories into one {@linkplain Language} per name.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class AggregationBenchmark {
+
+    /**
+     * Repositories times languages per repository. Not every combination is listed, a million repositories with 500
+     * languages each would not fit into memory.
+     */
+    @Param({"10x1", "10000x10", "100000x500", "1000000x1", "1000000x10"})
+    String fixture;
+
+    List<Repository> repositories;
+
+    @Setup
+    public void setUp() {
+        final int[] dimensions = Fixtures.dimensions(fixture);
+        repositories = Fixtures.repositories(dimensions[0], dimensions[1]);
+    }
+
+    @Benchmark
+    public List<Language> aggregateLanguagesOfRepos() {
+        return GitHubApi.aggregateLanguagesOfRepos(repositories);
+    }
+}
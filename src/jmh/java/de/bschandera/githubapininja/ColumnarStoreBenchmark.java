@@ -0,0 +1,96 @@
+package de.bschandera.githubapininja;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Re-aggregation of a stored crawl. The columnar file of {@linkplain ColumnarCrawlWriter} is compared with a JSON
+ * lines file of the same repositories, one {@code {"id": ..., "languages": {...}}} per line, that is read back into
+ * objects. The sizes of both files are printed during the setup.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class ColumnarStoreBenchmark {
+
+    @Param({"100000x10", "1000000x10"})
+    String fixture;
+
+    File directory;
+    File jsonLines;
+    ColumnarCrawlReader reader;
+
+    @Setup
+    public void setUp() throws IOException {
+        final int[] dimensions = Fixtures.dimensions(fixture);
+        final List<Repository> repositories = Fixtures.repositories(dimensions[0], dimensions[1]);
+        directory = Files.createTempDirectory("columnar-store-benchmark").toFile();
+
+        final File columns = new File(directory, "crawl.columns");
+        try (ColumnarCrawlWriter writer = new ColumnarCrawlWriter(columns)) {
+            writer.writeAll(repositories.iterator());
+        }
+        jsonLines = new File(directory, "crawl.jsonl");
+        try (Writer writer = new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(jsonLines), StandardCharsets.UTF_8))) {
+            for (Repository repository : repositories) {
+                writer.write(toJson(repository));
+                writer.write('\n');
+            }
+        }
+        System.out.println(fixture + ": columnar " + columns.length() + " bytes, JSON lines " + jsonLines.length()
+                + " bytes");
+        reader = ColumnarCrawlReader.open(columns);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        reader.close();
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    @Benchmark
+    public List<Language> aggregateColumnar() {
+        return reader.aggregate();
+    }
+
+    @Benchmark
+    public List<Language> aggregateJsonLines() throws IOException {
+        final LanguageAggregator aggregator = new LanguageAggregator();
+        final JsonParser parser = new JsonParser();
+        try (BufferedReader lines = new BufferedReader(
+                new InputStreamReader(new FileInputStream(jsonLines), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = lines.readLine()) != null) {
+                final JsonObject repository = parser.parse(line).getAsJsonObject();
+                aggregator.add(new Repository(repository.get("id").getAsString(),
+                        ModelFactory.parseLanguages(repository.getAsJsonObject("languages"))));
+            }
+        }
+        return aggregator.getLanguages();
+    }
+
+    private static String toJson(Repository repository) {
+        final JsonObject languages = new JsonObject();
+        for (Language language : repository.getLanguages()) {
+            languages.addProperty(language.getName(), language.getBytes());
+        }
+        final JsonObject result = new JsonObject();
+        result.addProperty("id", repository.getId());
+        result.add("languages", languages);
+        return result.toString();
+    }
+}
@@ -0,0 +1,118 @@
+package de.bschandera.githubapininja;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Fetching the languages of a page of repositories from a local server that answers every request after a fixed
+ * latency, once on a fixed pool of platform threads and once with a virtual thread per request.</p>
+ * <p>{@code virtual} needs Java 21 to run the benchmark, the sources are still compiled for Java 7.</p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CrawlBenchmark {
+    private static final int LATENCY_MILLIS = 50;
+    private static final long WINDOW_SECONDS = TimeUnit.HOURS.toSeconds(1);
+    private static final int MAX_CONNECTIONS = 1000;
+
+    @Param({"100", "1000"})
+    int repositories;
+
+    @Param({"platform-16", "platform-256", "virtual"})
+    String threads;
+
+    HttpServer server;
+    ExecutorService serverThreads;
+    ExecutorService executor;
+    ConnectionPool connectionPool;
+    GitHubApi gitHubApi;
+
+    @Setup
+    public void setUp() throws Exception {
+        serverThreads = Executors.newCachedThreadPool();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1000);
+        server.setExecutor(serverThreads);
+        final String url = "http://127.0.0.1:" + server.getAddress().getPort();
+        final String repositoriesPayload = repositoriesPayload(url);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                final boolean isRepositories = exchange.getRequestURI().getPath().equals("/repositories");
+                respond(exchange, isRepositories ? repositoriesPayload : "{\"Java\": 1234, \"Ruby\": 42}");
+            }
+        });
+        server.start();
+
+        executor = threads.equals("virtual") ? newVirtualThreadPerTaskExecutor()
+                : Executors.newFixedThreadPool(Integer.parseInt(threads.substring("platform-".length())));
+        // enough connections for every thread, so the pool does not limit the calls in flight
+        connectionPool = new ConnectionPool(MAX_CONNECTIONS, MAX_CONNECTIONS, 30, TimeUnit.SECONDS);
+        gitHubApi = new GitHubApi(
+                new CommunicationHelper(connectionPool, new CredentialPool(Collections.singletonList("token"))), url);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        executor.shutdownNow();
+        connectionPool.close();
+        server.stop(0);
+        serverThreads.shutdownNow();
+    }
+
+    @Benchmark
+    public List<Repository> getPublicRepositories() {
+        return gitHubApi.getPublicRepositories(executor, 1, TimeUnit.MINUTES);
+    }
+
+    private String repositoriesPayload(String url) {
+        StringBuilder result = new StringBuilder("[");
+        for (int i = 1; i <= repositories; i++) {
+            result.append(i == 1 ? "" : ",")
+                    .append("{\"id\": ").append(i)
+                    .append(", \"languages_url\": \"").append(url).append("/repos/r").append(i).append("/languages\"}");
+        }
+        return result.append("]").toString();
+    }
+
+    private static void respond(HttpExchange exchange, String body) throws IOException {
+        try {
+            Thread.sleep(LATENCY_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // plenty of calls in an hour long window, so the scheduler does not pace the calls
+        exchange.getResponseHeaders().add("X-RateLimit-Remaining", String.valueOf(Integer.MAX_VALUE / 2));
+        exchange.getResponseHeaders().add("X-RateLimit-Reset",
+                String.valueOf(TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()) + WINDOW_SECONDS));
+        final byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor() throws ReflectiveOperationException {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException("Virtual threads need Java 21, run with -p threads=platform-16,platform-256 "
+                    + "on older versions.", e);
+        }
+    }
+}
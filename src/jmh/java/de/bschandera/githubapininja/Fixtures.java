@@ -0,0 +1,136 @@
+package de.bschandera.githubapininja;
+
+import com.google.common.io.CharStreams;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import net.sf.qualitycheck.Check;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>Payloads and model objects of any size for the benchmarks.</p>
+ * <p><em>Recorded</em> payloads repeat the repositories of a page that was once returned by
+ * {@code https://api.github.com/repositories}, with fresh ids, so they have the shape and size of real responses.
+ * <em>Synthetic</em> payloads only contain the fields that are actually read, plus a small nested owner.</p>
+ */
+public final class Fixtures {
+    private static final String RECORDED_REPOSITORIES = "/fixtures/repositories.json";
+    private static final String RECORDED_LANGUAGES = "/fixtures/languages.json";
+
+    private Fixtures() {
+    }
+
+    public static String recordedRepositories(int count) throws IOException {
+        Check.notNegative(count, "count");
+        final JsonArray recorded = new JsonParser().parse(resource(RECORDED_REPOSITORIES)).getAsJsonArray();
+        List<String> templates = new ArrayList<>();
+        for (JsonElement repository : recorded) {
+            templates.add(repository.toString());
+        }
+
+        StringBuilder result = new StringBuilder("[");
+        for (int i = 0; i < count; i++) {
+            // parse the template again, because JsonObject cannot be copied
+            JsonObject repository = new JsonParser().parse(templates.get(i % templates.size())).getAsJsonObject();
+            repository.addProperty("id", i + 1);
+            repository.addProperty("languages_url", languagesUrl(i + 1));
+            result.append(i == 0 ? "" : ",").append(repository);
+        }
+        return result.append("]").toString();
+    }
+
+    public static String syntheticRepositories(int count) {
+        Check.notNegative(count, "count");
+        StringBuilder result = new StringBuilder("[");
+        for (int i = 1; i <= count; i++) {
+            result.append(i == 1 ? "" : ",")
+                    .append("{\"id\":").append(i)
+                    .append(",\"name\":\"repo-").append(i)
+                    .append("\",\"owner\":{\"login\":\"owner-").append(i).append("\",\"id\":").append(i)
+                    .append("},\"languages_url\":\"").append(languagesUrl(i))
+                    .append("\"}");
+        }
+        return result.append("]").toString();
+    }
+
+    /**
+     * @return the languages of {@code wycats/merb-core}.
+     */
+    public static String recordedLanguages() throws IOException {
+        return resource(RECORDED_LANGUAGES);
+    }
+
+    public static String syntheticLanguages(int count) {
+        Check.notNegative(count, "count");
+        StringBuilder result = new StringBuilder("{");
+        for (int i = 0; i < count; i++) {
+            result.append(i == 0 ? "" : ",").append('"').append(languageName(i)).append("\":").append(bytes(i));
+        }
+        return result.append("}").toString();
+    }
+
+    /**
+     * @param count                  number of repositories.
+     * @param languagesPerRepository the languages of neighbouring repositories overlap, so the aggregation sees
+     *                               {@code languagesPerRepository} times as many languages as there are repositories,
+     *                               but at most {@code 2 * languagesPerRepository} distinct ones.
+     */
+    public static List<Repository> repositories(int count, int languagesPerRepository) {
+        Check.notNegative(count, "count");
+        Check.notNegative(languagesPerRepository, "languagesPerRepository");
+        final List<Language> pool = languages(2 * languagesPerRepository);
+
+        List<Repository> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final int offset = i % 2 == 0 ? 0 : languagesPerRepository / 2;
+            result.add(new Repository(String.valueOf(i + 1), languagesUrl(i + 1),
+                    pool.subList(offset, offset + languagesPerRepository)));
+        }
+        return result;
+    }
+
+    public static List<Language> languages(int count) {
+        Check.notNegative(count, "count");
+        List<Language> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(new Language(languageName(i), BigDecimal.valueOf(bytes(i))));
+        }
+        return result;
+    }
+
+    /**
+     * @param fixture e.g. {@code 1000x10}.
+     * @return both numbers of the fixture.
+     */
+    public static int[] dimensions(String fixture) {
+        final String[] parts = fixture.split("x");
+        Check.stateIsTrue(parts.length == 2, "fixture must look like 1000x10, but was %s", fixture);
+        return new int[]{Integer.parseInt(parts[0]), Integer.parseInt(parts[1])};
+    }
+
+    private static String languagesUrl(int id) {
+        return "https://api.github.com/repos/owner-" + id + "/repo-" + id + "/languages";
+    }
+
+    private static String languageName(int index) {
+        return "Language-" + index;
+    }
+
+    private static long bytes(int index) {
+        return 1000L + 7919L * index;
+    }
+
+    private static String resource(String name) throws IOException {
+        try (Reader reader = new InputStreamReader(Fixtures.class.getResourceAsStream(name), StandardCharsets.UTF_8)) {
+            return CharStreams.toString(reader);
+        }
+    }
+}
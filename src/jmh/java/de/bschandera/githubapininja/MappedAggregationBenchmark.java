@@ -0,0 +1,88 @@
+package de.bschandera.githubapininja;
+
+import com.google.common.collect.AbstractIterator;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Re-aggregation of a large stored crawl straight from the mapped file, mapped at once or in chunks. The repositories
+ * are generated while they are written, so the setup does not hold them in memory either. Run it with the {@code gc}
+ * profiler to see that aggregating does not depend on the heap.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx256m")
+@State(Scope.Benchmark)
+public class MappedAggregationBenchmark {
+
+    /**
+     * Repositories times languages per repository, e.g. 50 million rows.
+     */
+    @Param({"5000000x10"})
+    String fixture;
+
+    /**
+     * Upper bound of a mapping, the largest one and 64 MB.
+     */
+    @Param({"2147483647", "67108864"})
+    int chunkSize;
+
+    File file;
+    ColumnarCrawlReader reader;
+
+    @Setup
+    public void setUp() throws IOException {
+        final int[] dimensions = Fixtures.dimensions(fixture);
+        final List<Language> pool = Fixtures.languages(2 * dimensions[1]);
+        file = File.createTempFile("mapped-aggregation-benchmark", ".columns");
+        try (ColumnarCrawlWriter writer = new ColumnarCrawlWriter(file)) {
+            writer.writeAll(new GeneratedRepositories(dimensions[0], dimensions[1], pool));
+        }
+        reader = ColumnarCrawlReader.open(file, chunkSize);
+        System.out.println(fixture + ": " + reader.getRows() + " rows, " + file.length() + " bytes, "
+                + reader.getChunks() + " chunks");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        reader.close();
+        file.delete();
+    }
+
+    @Benchmark
+    public List<Language> aggregate() {
+        return reader.aggregate();
+    }
+
+    /**
+     * Same repositories as {@linkplain Fixtures#repositories(int, int)}, one at a time.
+     */
+    private static class GeneratedRepositories extends AbstractIterator<Repository> {
+        private final int count;
+        private final int languagesPerRepository;
+        private final List<Language> pool;
+        private int next;
+
+        GeneratedRepositories(int count, int languagesPerRepository, List<Language> pool) {
+            this.count = count;
+            this.languagesPerRepository = languagesPerRepository;
+            this.pool = pool;
+        }
+
+        @Override
+        protected Repository computeNext() {
+            if (next == count) {
+                return endOfData();
+            }
+            final int offset = next % 2 == 0 ? 0 : languagesPerRepository / 2;
+            next++;
+            return new Repository(String.valueOf(next), pool.subList(offset, offset + languagesPerRepository));
+        }
+    }
+}
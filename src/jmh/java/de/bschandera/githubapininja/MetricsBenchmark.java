@@ -0,0 +1,61 @@
+package de.bschandera.githubapininja;
+
+import com.google.gson.stream.JsonReader;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Overhead of {@linkplain Metrics} on a hot path: parsing a small languages payload with the timed
+ * {@linkplain ModelFactory#LANGUAGES_PARSER}, with metrics disabled and enabled, compared with the untimed parse
+ * method. A bare timer shows the cost of the instrument alone.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MetricsBenchmark {
+    private static final Metrics.Timer TIMER = Metrics.timer("benchmark_seconds", "Timer of the benchmark");
+
+    @Param({"false", "true"})
+    boolean enabled;
+
+    byte[] bytes;
+
+    @Setup
+    public void setUp() {
+        Metrics.setEnabled(enabled);
+        bytes = Fixtures.syntheticLanguages(10).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @TearDown
+    public void tearDown() {
+        Metrics.setEnabled(false);
+    }
+
+    @Benchmark
+    public List<Language> parseUntimed() throws IOException {
+        return ModelFactory.parseLanguages(reader(bytes));
+    }
+
+    @Benchmark
+    public List<Language> parseTimed() throws IOException {
+        return ModelFactory.LANGUAGES_PARSER.parse(reader(bytes));
+    }
+
+    @Benchmark
+    public void timer() {
+        TIMER.stop(TIMER.start());
+    }
+
+    private static JsonReader reader(byte[] bytes) {
+        return new JsonReader(new InputStreamReader(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,83 @@
+package de.bschandera.githubapininja;
+
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of the repositories and languages payloads, once while streaming, as {@linkplain CommunicationHelper} does,
+ * and once by building the JSON tree first, as it was done before. Both read from bytes, like from the network.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ModelFactoryBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class RepositoriesPayload {
+        /**
+         * GitHub returns 100 repositories per page.
+         */
+        @Param({"10", "100", "10000"})
+        int repositories;
+
+        @Param({"recorded", "synthetic"})
+        String payload;
+
+        byte[] bytes;
+
+        @Setup
+        public void setUp() throws IOException {
+            final String json = payload.equals("recorded")
+                    ? Fixtures.recordedRepositories(repositories)
+                    : Fixtures.syntheticRepositories(repositories);
+            bytes = json.getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class LanguagesPayload {
+        @Param({"1", "10", "500"})
+        int languages;
+
+        byte[] bytes;
+
+        @Setup
+        public void setUp() {
+            bytes = Fixtures.syntheticLanguages(languages).getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    @Benchmark
+    public List<Repository> parseReposWhileStreaming(RepositoriesPayload payload) throws IOException {
+        return ModelFactory.parseRepos(reader(payload.bytes));
+    }
+
+    @Benchmark
+    public List<Repository> parseReposFromTree(RepositoriesPayload payload) {
+        return ModelFactory.parseRepos(new JsonParser().parse(reader(payload.bytes)).getAsJsonArray());
+    }
+
+    @Benchmark
+    public List<Language> parseLanguagesWhileStreaming(LanguagesPayload payload) throws IOException {
+        return ModelFactory.parseLanguages(reader(payload.bytes));
+    }
+
+    @Benchmark
+    public List<Language> parseLanguagesFromTree(LanguagesPayload payload) {
+        return ModelFactory.parseLanguages(new JsonParser().parse(reader(payload.bytes)).getAsJsonObject());
+    }
+
+    private static JsonReader reader(byte[] bytes) {
+        return new JsonReader(new InputStreamReader(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,46 @@
+package de.bschandera.githubapininja;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Aggregation of the languages on a {@linkplain ForkJoinPool} of growing parallelism, compare it with
+ * {@linkplain AggregationBenchmark} for the sequential run.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class ParallelAggregationBenchmark {
+
+    @Param({"100000x10", "1000000x10"})
+    String fixture;
+
+    @Param({"1", "2", "4", "8", "16", "32"})
+    int parallelism;
+
+    List<Repository> repositories;
+    ForkJoinPool pool;
+
+    @Setup
+    public void setUp() {
+        final int[] dimensions = Fixtures.dimensions(fixture);
+        repositories = Fixtures.repositories(dimensions[0], dimensions[1]);
+        pool = new ForkJoinPool(parallelism);
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public List<Language> aggregateLanguagesOfRepos() {
+        return GitHubApi.aggregateLanguagesOfRepos(repositories, pool);
+    }
+}
@@ -0,0 +1,93 @@
+package de.bschandera.githubapininja;
+
+import com.google.common.io.ByteStreams;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load test of {@linkplain StatisticsServer}: several client threads request the statistics over keep-alive
+ * connections while the server answers from the published snapshot. The sample time mode reports the percentiles of
+ * the latency, e.g. p0.99, and the number of requests per second is the sample count divided by the measurement time.
+ * Republishing in the background shows that swapping the snapshot does not stall requests.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class StatisticsServerBenchmark {
+
+    @Param({"10000x10"})
+    String fixture;
+
+    StatisticsServer server;
+    LanguageStatistics.Snapshot snapshot;
+    String language;
+    Thread publisher;
+
+    @Setup
+    public void setUp() throws IOException {
+        final int[] dimensions = Fixtures.dimensions(fixture);
+        final List<Repository> repositories = Fixtures.repositories(dimensions[0], dimensions[1]);
+        final LanguageStatistics statistics = new LanguageStatistics();
+        for (Repository repository : repositories) {
+            statistics.add(repository);
+        }
+        snapshot = statistics.snapshot();
+        language = snapshot.top(1).get(0).getName();
+        server = StatisticsServer.start(new InetSocketAddress("localhost", 0), 4);
+        server.publish(snapshot);
+
+        publisher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (!Thread.currentThread().isInterrupted()) {
+                    server.publish(snapshot);
+                    try {
+                        TimeUnit.MILLISECONDS.sleep(100);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+        });
+        publisher.start();
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        publisher.interrupt();
+        publisher.join();
+        server.close();
+    }
+
+    @Benchmark
+    public int statistics() throws IOException {
+        return get(StatisticsServer.PATH_STATISTICS);
+    }
+
+    @Benchmark
+    public int singleLanguage() throws IOException {
+        return get(StatisticsServer.PATH_STATISTICS + "/" + language);
+    }
+
+    /**
+     * Reads the whole body, so the connection is kept alive for the next request of the thread.
+     */
+    private int get(String path) throws IOException {
+        final HttpURLConnection connection =
+                (HttpURLConnection) new URL("http://localhost:" + server.getPort() + path).openConnection();
+        try (InputStream in = connection.getInputStream()) {
+            return ByteStreams.toByteArray(in).length;
+        }
+    }
+}
@@ -1,18 +1,55 @@
 package de.bschandera;
 
-import de.bschandera.githubapininja.GitHubApi;
-import de.bschandera.githubapininja.Language;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Optional;
+import de.bschandera.githubapininja.*;
 
+import java.io.File;
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 public class ApiNinja {
 
     private static final BigDecimal _100 = BigDecimal.valueOf(100);
     private static final int BIG_DECIMAL_SCALE_6 = 6;
+    private static final File LANGUAGES_CACHE_FILE =
+            new File(System.getProperty("user.home"), ".github-api-ninja/languages-cache.json");
+    private static final int LANGUAGES_CACHE_MAX_ENTRIES = 100000;
+    private static final File CHECKPOINT_FILE =
+            new File(System.getProperty("user.home"), ".github-api-ninja/crawl-checkpoint.log");
+    private static final int CHECKPOINT_SYNC_INTERVAL = 25;
+    private static final File CRAWLS_DIRECTORY = new File(System.getProperty("user.home"), ".github-api-ninja/crawls");
+    private static final long MAX_REPOSITORIES = 100;
+    private static final long PROGRESS_INTERVAL = 25;
+    private static final int TOP_LANGUAGES = 20;
+    private static final String ARGUMENT_SERVE = "--serve";
+    private static final int DEFAULT_PORT = 8080;
+    private static final int SERVER_THREADS = 4;
+    private static final long CRAWL_PAUSE_MINUTES = 5;
 
-    public static void main(String[] args) {
-        GitHubApi gitHub = new GitHubApi();
+    public static void main(String[] args) throws IOException {
+        try (LanguagesCache languagesCache = new LanguagesCache(LANGUAGES_CACHE_FILE, LANGUAGES_CACHE_MAX_ENTRIES);
+             CrawlCheckpoint checkpoint = CrawlCheckpoint.open(CHECKPOINT_FILE, CHECKPOINT_SYNC_INTERVAL);
+             CommunicationHelper communicationHelper = new CommunicationHelper(
+                     CredentialPool.load(TokenStore.inUserHome()))) {
+            final GitHubApi gitHub = new GitHubApi(new CoalescingApiClient(communicationHelper), languagesCache);
+            if (args.length > 0 && ARGUMENT_SERVE.equals(args[0])) {
+                serveStatistics(gitHub, checkpoint, args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_PORT);
+            } else {
+                printStatistics(gitHub, checkpoint);
+            }
+        }
+    }
+
+    /**
+     * Goes on with the crawl of the checkpoint, unless it is complete. Then a new crawl is started. The repositories of
+     * this run are kept for later analysis, see {@linkplain ColumnarCrawlReader}.
+     */
+    private static void printStatistics(GitHubApi gitHub, CrawlCheckpoint checkpoint) throws IOException {
         if (gitHub.isAvailable()) {
             System.out.println("GitHub's status is all fine. Let the show begin.");
             System.out.println();
@@ -21,16 +58,99 @@ public class ApiNinja {
             return;
         }
 
-        List<Language> languagesOfPublicRepos = gitHub.aggregateLanguagesOfPublicRepos();
-        BigDecimal bytesTotal = sumUpBytesTotal(languagesOfPublicRepos);
-        System.out.println("bytesTotal: " + bytesTotal);
+        if (checkpoint.getRepositories() >= MAX_REPOSITORIES) {
+            checkpoint.clear();
+        } else if (checkpoint.getRepositories() > 0) {
+            System.out.println("Resuming after " + checkpoint.getRepositories() + " repositories (since id "
+                    + checkpoint.getSinceId() + ")");
+        }
+        Iterator<Repository> repositories = gitHub.crawlPublicRepositories(
+                CrawlLimits.unbounded().withMaxRepositories(MAX_REPOSITORIES), checkpoint);
+        try (ColumnarCrawlWriter crawlWriter = newCrawlWriter()) {
+            while (repositories.hasNext()) {
+                crawlWriter.write(repositories.next());
+                final long crawled = checkpoint.getRepositories();
+                if (crawled % PROGRESS_INTERVAL == 0 && repositories.hasNext()) {
+                    System.out.println(crawled + " repositories so far, bytesTotal: "
+                            + checkpoint.snapshot().getBytesTotal());
+                }
+            }
+        }
+
+        LanguageStatistics.Snapshot snapshot = checkpoint.snapshot();
+        System.out.println("bytesTotal: " + snapshot.getBytesTotal() + ", languages: "
+                + snapshot.getLanguages().size());
+        System.out.println("Top " + TOP_LANGUAGES + ":");
+        System.out.println(formatTop(snapshot, TOP_LANGUAGES));
+    }
+
+    /**
+     * Serves the statistics of the checkpoint right away, see {@linkplain StatisticsServer}, and crawls on without a
+     * limit. The served statistics are replaced every {@value #PROGRESS_INTERVAL} repositories. When a crawl ends, e.g.
+     * because GitHub could not be reached or a request failed for good, it is resumed from the checkpoint after a
+     * pause. Every crawl keeps its repositories in a file of its own, which is flushed whenever the checkpoint is
+     * synced. {@linkplain Metrics} are enabled and also registered as an MXBean.
+     */
+    private static void serveStatistics(GitHubApi gitHub, CrawlCheckpoint checkpoint, int port) throws IOException {
+        Metrics.setEnabled(true);
+        Metrics.registerMXBean();
+        try (StatisticsServer server = StatisticsServer.start(new InetSocketAddress(port), SERVER_THREADS)) {
+            server.publish(checkpoint.snapshot());
+            System.out.println("Serving http://localhost:" + server.getPort() + StatisticsServer.PATH_STATISTICS
+                    + " and http://localhost:" + server.getPort() + StatisticsServer.PATH_METRICS);
+            while (true) {
+                crawlOnce(gitHub, checkpoint, server, CRAWLS_DIRECTORY);
+                try {
+                    TimeUnit.MINUTES.sleep(CRAWL_PAUSE_MINUTES);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * One crawl of {@linkplain #serveStatistics(GitHubApi, CrawlCheckpoint, int)}, if GitHub can be reached. A request
+     * that failed for good ends the crawl, but not the server: the error is printed and the statistics of the
+     * checkpoint are published, the next crawl resumes from it.
+     */
+    @VisibleForTesting
+    static void crawlOnce(GitHubApi gitHub, CrawlCheckpoint checkpoint, StatisticsServer server,
+                          File crawlsDirectory) throws IOException {
+        try {
+            if (!gitHub.isAvailable()) {
+                return;
+            }
+            Iterator<Repository> repositories = gitHub.crawlPublicRepositories(CrawlLimits.unbounded(), checkpoint);
+            try (ColumnarCrawlWriter crawlWriter = newCrawlWriter(crawlsDirectory)) {
+                while (repositories.hasNext()) {
+                    crawlWriter.write(repositories.next());
+                    final long crawled = checkpoint.getRepositories();
+                    if (crawled % CHECKPOINT_SYNC_INTERVAL == 0) {
+                        crawlWriter.flush();
+                    }
+                    if (crawled % PROGRESS_INTERVAL == 0) {
+                        server.publish(checkpoint.snapshot());
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            System.out.println("The crawl stopped after " + checkpoint.getRepositories() + " repositories: " + e);
+        }
+        server.publish(checkpoint.snapshot());
+    }
+
+    private static ColumnarCrawlWriter newCrawlWriter() throws IOException {
+        return newCrawlWriter(CRAWLS_DIRECTORY);
+    }
 
-        String result = formatResult(languagesOfPublicRepos, bytesTotal);
-        System.out.println(result);
-        System.out.println();
+    private static ColumnarCrawlWriter newCrawlWriter(File crawlsDirectory) throws IOException {
+        return new ColumnarCrawlWriter(new File(crawlsDirectory, "crawl-" + System.currentTimeMillis() + ".columns"));
     }
 
-    private static BigDecimal sumUpBytesTotal(List<Language> languagesOfPublicRepos) {
+    @VisibleForTesting
+    static BigDecimal sumUpBytesTotal(List<Language> languagesOfPublicRepos) {
         BigDecimal bytesTotal = BigDecimal.ZERO;
         for (Language language : languagesOfPublicRepos) {
             bytesTotal = bytesTotal.add(language.getBytes());
@@ -38,7 +158,29 @@ public class ApiNinja {
         return bytesTotal;
     }
 
-    private static String formatResult(List<Language> languagesOfPublicRepos, BigDecimal bytesTotal) {
+    /**
+     * One line per language of the top {@code k}, most bytes first, with its share of all bytes, its number of
+     * repositories and its median share in them.
+     */
+    @VisibleForTesting
+    static String formatTop(LanguageStatistics.Snapshot snapshot, int k) {
+        StringBuilder result = new StringBuilder();
+        for (Language language : snapshot.top(k)) {
+            final BigDecimal percentage = snapshot.getShare(language).multiply(_100)
+                    .setScale(2, BigDecimal.ROUND_HALF_UP);
+            result.append(language.getName()).append(": ").append(percentage).append(" %, ")
+                    .append(snapshot.getRepositories(language)).append(" repositories");
+            final Optional<BigDecimal> medianShare = snapshot.getSharePercentile(language, 50);
+            if (medianShare.isPresent()) {
+                result.append(", median share ").append(medianShare.get().multiply(_100).setScale(0)).append(" %");
+            }
+            result.append('\n');
+        }
+        return result.toString();
+    }
+
+    @VisibleForTesting
+    static String formatResult(List<Language> languagesOfPublicRepos, BigDecimal bytesTotal) {
         StringBuilder result = new StringBuilder();
         for (Language language : languagesOfPublicRepos) {
             final BigDecimal percentage = asPercentage(language.getBytes(), bytesTotal);
@@ -0,0 +1,138 @@
+package de.bschandera.githubapininja;
+
+import com.google.common.base.Function;
+import com.google.common.base.Optional;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.gson.JsonElement;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * <p>Makes calls against the GitHub api. {@linkplain CommunicationHelper} does the actual http calls, other
+ * implementations decorate it, e.g., {@linkplain CachingApiClient}.</p>
+ * <p>Implementations only have to provide {@linkplain #getResponse(String, Map, PayloadParser)}, the other request
+ * methods are built on top of it. The asynchronous methods call it in the calling thread, unless an implementation
+ * has a non-blocking way to send requests.</p>
+ */
+public abstract class ApiClient {
+
+    /**
+     * Make REST call against the GitHub API. Parse result to JSON.
+     *
+     * @param uri
+     * @return absent if the request was not successful.
+     */
+    public Optional<JsonElement> getResponseAsJson(String uri) {
+        final Optional<ApiResponse<JsonElement>> response = getResponse(uri);
+        return response.isPresent() ? Optional.of(response.get().getPayload()) : Optional.<JsonElement>absent();
+    }
+
+    /**
+     * Same as {@linkplain #getResponseAsJson(String)} but keeps the response headers, e.g., to follow the
+     * {@code Link} header of paginated resources.
+     *
+     * @param uri
+     * @return absent if the request was not successful.
+     */
+    public Optional<ApiResponse<JsonElement>> getResponse(String uri) {
+        return getResponse(uri, Collections.<String, String>emptyMap());
+    }
+
+    /**
+     * Same as {@linkplain #getResponse(String)} but sends the given request headers along. Use it for conditional
+     * requests, i.e., with {@code If-None-Match} or {@code If-Modified-Since}. If GitHub answers with
+     * {@code 304 Not Modified}, the result is present and {@linkplain ApiResponse#isNotModified()}.
+     *
+     * @param uri
+     * @param requestHeaders
+     * @return absent if the request was not successful.
+     */
+    public Optional<ApiResponse<JsonElement>> getResponse(String uri, Map<String, String> requestHeaders) {
+        return getResponse(uri, requestHeaders, PayloadParser.JSON_TREE);
+    }
+
+    /**
+     * Same as {@linkplain #getResponse(String)} but the payload is parsed by the given parser while it is read.
+     *
+     * @param uri
+     * @param parser
+     * @return absent if the request was not successful.
+     */
+    public <T> Optional<ApiResponse<T>> getResponse(String uri, PayloadParser<T> parser) {
+        return getResponse(uri, Collections.<String, String>emptyMap(), parser);
+    }
+
+    /**
+     * Same as {@linkplain #getResponse(String, Map)} but the payload is parsed by the given parser while it is read.
+     *
+     * @param uri
+     * @param requestHeaders
+     * @param parser
+     * @return absent if the request was not successful.
+     */
+    public abstract <T> Optional<ApiResponse<T>> getResponse(String uri, Map<String, String> requestHeaders,
+                                                             PayloadParser<T> parser);
+
+    /**
+     * Sends the given JSON body with a {@code POST} request, e.g. a query to GitHub's GraphQL api. The payload of the
+     * response is parsed by the given parser while it is read.
+     *
+     * @param uri
+     * @param jsonBody
+     * @param parser
+     * @return absent if the request was not successful.
+     */
+    public abstract <T> Optional<ApiResponse<T>> postResponse(String uri, String jsonBody, PayloadParser<T> parser);
+
+    /**
+     * Asynchronous version of {@linkplain #getResponseAsJson(String)}.
+     *
+     * @param uri
+     * @return future of the payload, absent if the request was not successful. Fails if the request could not be sent.
+     */
+    public ListenableFuture<Optional<JsonElement>> getResponseAsJsonAsync(String uri) {
+        return Futures.transform(getResponseAsync(uri, Collections.<String, String>emptyMap(), PayloadParser.JSON_TREE),
+                new Function<Optional<ApiResponse<JsonElement>>, Optional<JsonElement>>() {
+                    @Override
+                    public Optional<JsonElement> apply(Optional<ApiResponse<JsonElement>> response) {
+                        return response.isPresent()
+                                ? Optional.of(response.get().getPayload())
+                                : Optional.<JsonElement>absent();
+                    }
+                });
+    }
+
+    /**
+     * Asynchronous version of {@linkplain #getResponse(String, Map, PayloadParser)}. The parser may be called by a
+     * thread of the implementation, so it must not block.
+     *
+     * @param uri
+     * @param requestHeaders
+     * @param parser
+     * @return future of the response, absent if the request was not successful. Fails if the request could not be
+     * sent.
+     */
+    public <T> ListenableFuture<Optional<ApiResponse<T>>> getResponseAsync(String uri,
+                                                                         Map<String, String> requestHeaders,
+                                                                         PayloadParser<T> parser) {
+        try {
+            return Futures.immediateFuture(getResponse(uri, requestHeaders, parser));
+        } catch (RuntimeException e) {
+            return Futures.immediateFailedFuture(e);
+        }
+    }
+
+    /**
+     * @return {@code true} if and only if there are still calls allowed against the api, now or after waiting for the
+     * rate limit window to reset.
+     */
+    public abstract boolean hasStillApiCallsLeft();
+
+    /**
+     * @param url
+     * @return true if and only if the url can be requested and the response status code is 200.
+     */
+    public abstract boolean urlIsAvailable(String url);
+}
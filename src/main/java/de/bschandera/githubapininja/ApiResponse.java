@@ -0,0 +1,81 @@
+package de.bschandera.githubapininja;
+
+import com.google.common.base.Optional;
+import net.sf.qualitycheck.Check;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Response of the GitHub api: either a successful one with the parsed payload, or a {@code 304 Not Modified}
+ * answer to a conditional request, which has no payload. Both come with the response headers. Header names are
+ * case-insensitive.
+ *
+ * @param <T> type of the parsed payload, see {@linkplain PayloadParser}.
+ */
+public class ApiResponse<T> {
+    private static final int STATUS_NOT_MODIFIED = 304;
+
+    private final int statusCode;
+    private final T payload;
+    private final int bodyLength;
+    private final Map<String, String> headers;
+
+    /**
+     * @param payload    the parsed body.
+     * @param headers
+     * @param bodyLength number of bytes of the body before parsing.
+     */
+    public ApiResponse(T payload, Map<String, String> headers, int bodyLength) {
+        this(200, payload, headers, bodyLength);
+        Check.notNull(payload, "payload");
+        Check.notNegative(bodyLength, "bodyLength");
+    }
+
+    private ApiResponse(int statusCode, T payload, Map<String, String> headers, int bodyLength) {
+        Check.notNull(headers, "headers");
+        this.statusCode = statusCode;
+        this.payload = payload;
+        this.bodyLength = bodyLength;
+        this.headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            // the status line is reported as header without a name
+            if (header.getKey() != null && header.getValue() != null) {
+                this.headers.put(header.getKey(), header.getValue());
+            }
+        }
+    }
+
+    /**
+     * @param headers response headers of the {@code 304 Not Modified} response.
+     */
+    public static <T> ApiResponse<T> notModified(Map<String, String> headers) {
+        return new ApiResponse<>(STATUS_NOT_MODIFIED, null, headers, 0);
+    }
+
+    /**
+     * @return {@code true} if the resource did not change since the version named in the conditional request.
+     */
+    public boolean isNotModified() {
+        return statusCode == STATUS_NOT_MODIFIED;
+    }
+
+    /**
+     * @return the parsed body, which must not be modified. Must not be called if {@linkplain #isNotModified()}.
+     */
+    public T getPayload() {
+        Check.stateIsTrue(!isNotModified(), "A response to a conditional request without changes has no body.");
+        return payload;
+    }
+
+    /**
+     * @return number of bytes of the body, {@code 0} if {@linkplain #isNotModified()}.
+     */
+    public int getBodyLength() {
+        return bodyLength;
+    }
+
+    public Optional<String> getHeader(String name) {
+        return Optional.fromNullable(headers.get(name));
+    }
+}
@@ -0,0 +1,114 @@
+package de.bschandera.githubapininja;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import net.sf.qualitycheck.Check;
+import net.sf.qualitycheck.exception.IllegalStateOfArgumentException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>Asks GitHub's GraphQL api for the languages of many repositories with a single request, instead of one
+ * {@linkplain Repository#getLanguagesURL()} request per repository. The repositories are split into batches of
+ * {@code batchSize}, every batch is one {@code nodes(ids: [...])} query.</p>
+ * <p>GraphQL identifies repositories by their {@linkplain Repository#getNodeId() node id}, the REST api tells it in
+ * {@code node_id}. At most {@value #MAX_LANGUAGES_PER_REPOSITORY} languages are asked for per repository, more are very
+ * rare.</p>
+ */
+public class BatchLanguagesFetcher {
+    /**
+     * GitHub does not resolve more ids per {@code nodes} query.
+     */
+    public static final int MAX_BATCH_SIZE = 100;
+    private static final int MAX_LANGUAGES_PER_REPOSITORY = 100;
+    private static final String QUERY = "query($ids: [ID!]!) { nodes(ids: $ids) { ... on Repository { id "
+            + "languages(first: " + MAX_LANGUAGES_PER_REPOSITORY + ") { edges { size node { name } } } } } }";
+
+    private final ApiClient apiClient;
+    private final String graphQlUrl;
+    private final int batchSize;
+
+    /**
+     * @param apiClient  must be able to send {@code POST} requests, e.g., a {@linkplain CommunicationHelper}.
+     * @param graphQlUrl e.g., {@code https://api.github.com/graphql}.
+     * @param batchSize  repositories per request, between 1 and {@value #MAX_BATCH_SIZE}.
+     */
+    public BatchLanguagesFetcher(ApiClient apiClient, String graphQlUrl, int batchSize) {
+        Check.notNull(apiClient, "apiClient");
+        Check.notEmpty(graphQlUrl, "graphQlUrl");
+        Check.greaterThan(0, batchSize, "batchSize");
+        Check.lesserThan(MAX_BATCH_SIZE + 1, batchSize, "batchSize");
+        this.apiClient = apiClient;
+        this.graphQlUrl = graphQlUrl;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @param repositories without languages, with a node id, e.g., of
+     *                     {@linkplain ModelFactory#parseRepos(com.google.gson.JsonArray)}.
+     * @return the given repositories with their languages, in the same order. Repositories GitHub does not know anymore
+     * are left out. Ends before the first batch whose request was not successful or when no api calls are left.
+     */
+    public List<Repository> fetchLanguages(List<Repository> repositories) {
+        Check.noNullElements(repositories, "repositories");
+        for (Repository repository : repositories) {
+            Check.stateIsTrue(repository.getNodeId().isPresent(), "repository %s has no node id", repository.getId());
+        }
+        List<Repository> result = new ArrayList<>(repositories.size());
+        for (List<Repository> batch : Lists.partition(repositories, batchSize)) {
+            if (!apiClient.hasStillApiCallsLeft()) {
+                System.out.println("No more api calls are allowed (X-RateLimit-Remaining = 0)\n");
+                break;
+            }
+            final Optional<Map<String, List<Language>>> languages = fetchBatch(batch);
+            if (!languages.isPresent()) {
+                break;
+            }
+            for (Repository repository : batch) {
+                final List<Language> languagesOfRepository = languages.get().get(repository.getNodeId().get());
+                if (languagesOfRepository != null) {
+                    result.add(new Repository(repository.getId(), repository.getNodeId(),
+                            repository.getLanguagesURL(), languagesOfRepository));
+                }
+            }
+        }
+        return result;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    private Optional<Map<String, List<Language>>> fetchBatch(List<Repository> batch) {
+        final Optional<ApiResponse<Map<String, List<Language>>>> response;
+        try {
+            response = apiClient.postResponse(graphQlUrl, requestBody(batch), ModelFactory.NODES_LANGUAGES_PARSER);
+        } catch (IllegalStateOfArgumentException e) {
+            // another request used up the last api call in the meantime
+            return Optional.absent();
+        }
+        return response.isPresent()
+                ? Optional.of(response.get().getPayload())
+                : Optional.<Map<String, List<Language>>>absent();
+    }
+
+    @VisibleForTesting
+    static String requestBody(List<Repository> batch) {
+        final JsonArray ids = new JsonArray();
+        for (Repository repository : batch) {
+            ids.add(new JsonPrimitive(repository.getNodeId().get()));
+        }
+        final JsonObject variables = new JsonObject();
+        variables.add("ids", ids);
+        final JsonObject result = new JsonObject();
+        result.addProperty("query", QUERY);
+        result.add("variables", variables);
+        return result.toString();
+    }
+}
@@ -0,0 +1,173 @@
+package de.bschandera.githubapininja;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
+import com.google.common.cache.*;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import net.sf.qualitycheck.Check;
+
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Keeps successful responses of another {@linkplain ApiClient} in memory, so asking for the same uri with the same
+ * {@linkplain PayloadParser} again does neither go to the network nor parse JSON again. The cached payloads are shared
+ * by all callers and must not be modified. Responses expire after a fixed time to live. The cache is bounded
+ * either by the number of responses or by the size of their bodies, the least recently used responses are evicted
+ * first.</p>
+ * <p>If several threads ask for the same uri that is not cached, only one request is sent, the others wait for its
+ * response. Failed requests are not cached. Conditional requests, i.e., requests with headers, always go to the
+ * wrapped client.</p>
+ */
+public class CachingApiClient extends ApiClient {
+    private final ApiClient delegate;
+    private final LoadingCache<Request<?>, ApiResponse<?>> responses;
+
+    @VisibleForTesting
+    CachingApiClient(ApiClient delegate, CacheBuilder<? super Request<?>, ? super ApiResponse<?>> cacheBuilder) {
+        Check.notNull(delegate, "delegate");
+        Check.notNull(cacheBuilder, "cacheBuilder");
+        this.delegate = delegate;
+        responses = cacheBuilder.recordStats().build(new CacheLoader<Request<?>, ApiResponse<?>>() {
+            @Override
+            public ApiResponse<?> load(Request<?> request) throws ResponseNotAvailableException {
+                return request.send(CachingApiClient.this.delegate);
+            }
+        });
+    }
+
+    /**
+     * @param delegate   client that does the actual requests.
+     * @param maxEntries maximal number of cached responses.
+     * @param timeToLive how long a response is served from the cache.
+     * @param unit
+     */
+    public static CachingApiClient withMaxEntries(ApiClient delegate, long maxEntries, long timeToLive,
+                                                  TimeUnit unit) {
+        Check.notNegative(maxEntries, "maxEntries");
+        return new CachingApiClient(delegate, expiring(timeToLive, unit).maximumSize(maxEntries));
+    }
+
+    /**
+     * @param delegate   client that does the actual requests.
+     * @param maxBytes   maximal sum of the body lengths of all cached responses.
+     * @param timeToLive how long a response is served from the cache.
+     * @param unit
+     */
+    public static CachingApiClient withMaxBytes(ApiClient delegate, long maxBytes, long timeToLive, TimeUnit unit) {
+        Check.notNegative(maxBytes, "maxBytes");
+        return new CachingApiClient(delegate, expiring(timeToLive, unit)
+                .maximumWeight(maxBytes)
+                .weigher(new Weigher<Request<?>, ApiResponse<?>>() {
+                    @Override
+                    public int weigh(Request<?> request, ApiResponse<?> response) {
+                        return request.uri.length() + response.getBodyLength();
+                    }
+                }));
+    }
+
+    private static CacheBuilder<Object, Object> expiring(long timeToLive, TimeUnit unit) {
+        Check.notNegative(timeToLive, "timeToLive");
+        Check.notNull(unit, "unit");
+        return CacheBuilder.newBuilder().expireAfterWrite(timeToLive, unit);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked") // the response was parsed by the parser that is part of the key
+    public <T> Optional<ApiResponse<T>> getResponse(String uri, Map<String, String> requestHeaders,
+                                                    PayloadParser<T> parser) {
+        Check.notNull(uri, "uri");
+        Check.notNull(requestHeaders, "requestHeaders");
+        Check.notNull(parser, "parser");
+        if (!requestHeaders.isEmpty()) {
+            return delegate.getResponse(uri, requestHeaders, parser);
+        }
+
+        try {
+            return Optional.of((ApiResponse<T>) responses.get(new Request<>(uri, parser)));
+        } catch (ExecutionException e) {
+            // the request was not successful
+            return Optional.absent();
+        } catch (UncheckedExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    /**
+     * {@code POST} requests are not cached, they always go to the wrapped client.
+     */
+    @Override
+    public <T> Optional<ApiResponse<T>> postResponse(String uri, String jsonBody, PayloadParser<T> parser) {
+        return delegate.postResponse(uri, jsonBody, parser);
+    }
+
+    @Override
+    public boolean hasStillApiCallsLeft() {
+        return delegate.hasStillApiCallsLeft();
+    }
+
+    @Override
+    public boolean urlIsAvailable(String url) {
+        return delegate.urlIsAvailable(url);
+    }
+
+    /**
+     * @return number of hits, misses and evictions since this cache was created.
+     */
+    public CacheStats getStats() {
+        return responses.stats();
+    }
+
+    public long size() {
+        return responses.size();
+    }
+
+    public void invalidateAll() {
+        responses.invalidateAll();
+    }
+
+    /**
+     * Key of the cache: a uri together with the parser of its payload.
+     */
+    private static class Request<T> {
+        private final String uri;
+        private final PayloadParser<T> parser;
+
+        Request(String uri, PayloadParser<T> parser) {
+            this.uri = uri;
+            this.parser = parser;
+        }
+
+        ApiResponse<T> send(ApiClient apiClient) throws ResponseNotAvailableException {
+            final Optional<ApiResponse<T>> response = apiClient.getResponse(uri, parser);
+            if (!response.isPresent()) {
+                throw new ResponseNotAvailableException(uri);
+            }
+            return response.get();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            Request<?> request = (Request<?>) o;
+            return uri.equals(request.uri) && parser.equals(request.parser);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * uri.hashCode() + parser.hashCode();
+        }
+    }
+
+    private static class ResponseNotAvailableException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        ResponseNotAvailableException(String uri) {
+            super("Request was not successful: " + uri);
+        }
+    }
+}
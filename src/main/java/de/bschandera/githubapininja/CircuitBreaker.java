@@ -0,0 +1,182 @@
+package de.bschandera.githubapininja;
+
+import com.google.common.annotations.VisibleForTesting;
+import net.sf.qualitycheck.Check;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Stops sending api calls while most of them fail, so a GitHub outage is not made worse by a crawl that keeps
+ * hammering it. The outcomes of the last calls are kept in a window. Once enough of them were made and the share of
+ * failures reaches a threshold, the breaker opens and no call is let through for a while. Then a single call is let
+ * through to probe: if it succeeds, the breaker closes again, otherwise it stays open for another while.</p>
+ * <p>Only failures that say something about GitHub count, i.e. connection errors and transient server errors. A
+ * {@code 404 Not Found} is a success in that sense.</p>
+ * <p>The breaker is thread-safe and never blocks, callers that are not let through fail fast.</p>
+ */
+public class CircuitBreaker {
+    private static final int DEFAULT_WINDOW = 20;
+    private static final int DEFAULT_MINIMUM_CALLS = 10;
+    private static final double DEFAULT_FAILURE_RATE = 0.5;
+    private static final long DEFAULT_OPEN_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    public enum State {
+        /**
+         * Calls are let through and their outcomes are counted.
+         */
+        CLOSED,
+        /**
+         * No call is let through.
+         */
+        OPEN,
+        /**
+         * A single call is let through to probe whether GitHub recovered.
+         */
+        HALF_OPEN
+    }
+
+    private final boolean[] failures;
+    private final int minimumCalls;
+    private final double failureRate;
+    private final long openMillis;
+    private final RateLimitScheduler.Clock clock;
+
+    private State state = State.CLOSED;
+    private int calls;
+    private int failed;
+    private int next;
+    private long openedMillis;
+    private boolean probing;
+    private long rejected;
+
+    /**
+     * Opens when at least half of the last 20 calls failed, but not before 10 calls were made, and stays open for
+     * 30 s.
+     */
+    public CircuitBreaker() {
+        this(DEFAULT_WINDOW, DEFAULT_MINIMUM_CALLS, DEFAULT_FAILURE_RATE, DEFAULT_OPEN_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param window       number of the last calls whose outcomes count.
+     * @param minimumCalls number of calls in the window before the breaker may open, at most {@code window}.
+     * @param failureRate  share of failed calls in the window that opens the breaker, greater than 0 and at most 1.
+     * @param openDuration how long no call is let through once the breaker opened.
+     * @param unit
+     */
+    public CircuitBreaker(int window, int minimumCalls, double failureRate, long openDuration, TimeUnit unit) {
+        this(window, minimumCalls, failureRate, openDuration, unit, RateLimitScheduler.Clock.SYSTEM);
+    }
+
+    @VisibleForTesting
+    CircuitBreaker(int window, int minimumCalls, double failureRate, long openDuration, TimeUnit unit,
+                   RateLimitScheduler.Clock clock) {
+        Check.greaterThan(0, window, "window");
+        Check.greaterThan(0, minimumCalls, "minimumCalls");
+        Check.stateIsTrue(minimumCalls <= window, "minimumCalls must not be greater than window");
+        Check.stateIsTrue(failureRate > 0 && failureRate <= 1, "failureRate must be in (0, 1]");
+        Check.notNegative(openDuration, "openDuration");
+        Check.notNull(unit, "unit");
+        Check.notNull(clock, "clock");
+        this.failures = new boolean[window];
+        this.minimumCalls = minimumCalls;
+        this.failureRate = failureRate;
+        this.openMillis = unit.toMillis(openDuration);
+        this.clock = clock;
+    }
+
+    /**
+     * A call that is let through must be followed by {@linkplain #onSuccess()}, {@linkplain #onFailure()} or
+     * {@linkplain #release()}.
+     *
+     * @return {@code true} if the call may be sent.
+     */
+    public synchronized boolean tryAcquire() {
+        if (state == State.OPEN && clock.currentTimeMillis() - openedMillis >= openMillis) {
+            state = State.HALF_OPEN;
+        }
+        if (state == State.CLOSED || (state == State.HALF_OPEN && !probing)) {
+            probing = state == State.HALF_OPEN;
+            return true;
+        }
+        rejected++;
+        return false;
+    }
+
+    public synchronized void onSuccess() {
+        if (state == State.HALF_OPEN) {
+            close();
+        } else if (state == State.CLOSED) {
+            record(false);
+        }
+    }
+
+    public synchronized void onFailure() {
+        if (state == State.HALF_OPEN) {
+            open();
+        } else if (state == State.CLOSED) {
+            record(true);
+            if (calls >= minimumCalls && failed >= failureRate * calls) {
+                open();
+            }
+        }
+    }
+
+    /**
+     * The call that was let through ended without saying anything about GitHub, e.g. it was cancelled. If it was the
+     * probe, the next call probes instead.
+     */
+    public synchronized void release() {
+        probing = false;
+    }
+
+    private void record(boolean failure) {
+        if (calls == failures.length) {
+            failed -= failures[next] ? 1 : 0;
+        } else {
+            calls++;
+        }
+        failures[next] = failure;
+        failed += failure ? 1 : 0;
+        next = (next + 1) % failures.length;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedMillis = clock.currentTimeMillis();
+        probing = false;
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        probing = false;
+        calls = 0;
+        failed = 0;
+        next = 0;
+    }
+
+    /**
+     * @return the state as of the last call, an open breaker turns half open only with the next
+     * {@linkplain #tryAcquire()}.
+     */
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * @return calls that were not let through.
+     */
+    public synchronized long getRejectedCalls() {
+        return rejected;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "CircuitBreaker{" +
+                "state=" + state +
+                ", calls=" + calls +
+                ", failed=" + failed +
+                ", rejected=" + rejected +
+                '}';
+    }
+}
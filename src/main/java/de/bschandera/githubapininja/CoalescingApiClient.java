@@ -0,0 +1,226 @@
+package de.bschandera.githubapininja;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Supplier;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+import net.sf.qualitycheck.Check;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Collapses identical requests to another {@linkplain ApiClient} that are in flight at the same time: only the
+ * first one is sent, the others wait for its response and share it. Requests are identical if they have the same
+ * uri, request headers and {@linkplain PayloadParser}. The shared payloads must not be modified.</p>
+ * <p>Nothing is kept once a response arrived, a request that is sent later goes to the wrapped client again. Use a
+ * {@linkplain CachingApiClient} to keep responses. A failed request fails all of its waiting callers.</p>
+ * <p>Checks {@linkplain #urlIsAvailable(String) whether an url is available} are collapsed the same way. Only the
+ * number of collapsed requests in total is counted, a count per uri would grow with every uri ever requested.</p>
+ */
+public class CoalescingApiClient extends ApiClient {
+    private final ApiClient delegate;
+    private final ConcurrentMap<Request, SettableFuture<Optional<? extends ApiResponse<?>>>> inFlight =
+            new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, SettableFuture<Boolean>> availabilityChecks = new ConcurrentHashMap<>();
+    private final AtomicLong collapsed = new AtomicLong();
+    private final AtomicLong sent = new AtomicLong();
+
+    /**
+     * @param delegate client that does the actual requests.
+     */
+    public CoalescingApiClient(ApiClient delegate) {
+        Check.notNull(delegate, "delegate");
+        this.delegate = delegate;
+    }
+
+    /**
+     * Blocks until the response of the identical request in flight arrived, if there is one. Otherwise the request is
+     * sent in the calling thread.
+     */
+    @Override
+    @SuppressWarnings("unchecked") // the response was parsed by the parser that is part of the key
+    public <T> Optional<ApiResponse<T>> getResponse(final String uri, final Map<String, String> requestHeaders,
+                                                    final PayloadParser<T> parser) {
+        return (Optional<ApiResponse<T>>) singleFlight(inFlight, new Request(uri, requestHeaders, parser),
+                new Supplier<Optional<? extends ApiResponse<?>>>() {
+                    @Override
+                    public Optional<? extends ApiResponse<?>> get() {
+                        return delegate.getResponse(uri, requestHeaders, parser);
+                    }
+                });
+    }
+
+    /**
+     * Waits for the response of the identical request in flight, if there is one. Otherwise the request is sent by
+     * the wrapped client.
+     */
+    @Override
+    @SuppressWarnings("unchecked") // the response was parsed by the parser that is part of the key
+    public <T> ListenableFuture<Optional<ApiResponse<T>>> getResponseAsync(String uri,
+                                                                         Map<String, String> requestHeaders,
+                                                                         PayloadParser<T> parser) {
+        final Request request = new Request(uri, requestHeaders, parser);
+        final SettableFuture<Optional<? extends ApiResponse<?>>> flight = SettableFuture.create();
+        final SettableFuture<Optional<? extends ApiResponse<?>>> existing = inFlight.putIfAbsent(request, flight);
+        if (existing != null) {
+            collapsed.incrementAndGet();
+            return (ListenableFuture<Optional<ApiResponse<T>>>) follow(existing);
+        }
+
+        sent.incrementAndGet();
+        final ListenableFuture<Optional<ApiResponse<T>>> response;
+        try {
+            response = delegate.getResponseAsync(uri, requestHeaders, parser);
+        } catch (RuntimeException | Error e) {
+            land(inFlight, request, flight).setException(e);
+            throw e;
+        }
+        Futures.addCallback(response, new FutureCallback<Optional<ApiResponse<T>>>() {
+            @Override
+            public void onSuccess(Optional<ApiResponse<T>> result) {
+                land(inFlight, request, flight).set(result);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                land(inFlight, request, flight).setException(t);
+            }
+        });
+        return (ListenableFuture<Optional<ApiResponse<T>>>) follow(flight);
+    }
+
+    /**
+     * Calls the given request unless the same key is in flight already, then waits for its result instead.
+     */
+    private <K, V> V singleFlight(ConcurrentMap<K, SettableFuture<V>> flights, K key, Supplier<V> request) {
+        final SettableFuture<V> flight = SettableFuture.create();
+        final SettableFuture<V> existing = flights.putIfAbsent(key, flight);
+        if (existing != null) {
+            collapsed.incrementAndGet();
+            try {
+                return Uninterruptibles.getUninterruptibly(existing);
+            } catch (ExecutionException e) {
+                throw Throwables.propagate(e.getCause());
+            }
+        }
+
+        sent.incrementAndGet();
+        final V result;
+        try {
+            result = request.get();
+        } catch (RuntimeException | Error e) {
+            land(flights, key, flight).setException(e);
+            throw e;
+        }
+        land(flights, key, flight).set(result);
+        return result;
+    }
+
+    /**
+     * Every caller gets its own future, so cancelling it does not cancel the request for the others.
+     */
+    private static ListenableFuture<?> follow(ListenableFuture<?> flight) {
+        final SettableFuture<Object> result = SettableFuture.create();
+        Futures.addCallback(flight, new FutureCallback<Object>() {
+            @Override
+            public void onSuccess(Object response) {
+                result.set(response);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                result.setException(t);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Removes the flight before its waiters are released, so later requests are sent again instead of getting a
+     * response that was received before they were made.
+     */
+    private static <K, F> F land(ConcurrentMap<K, F> flights, K key, F flight) {
+        flights.remove(key, flight);
+        return flight;
+    }
+
+    /**
+     * {@code POST} requests are not collapsed, they always go to the wrapped client.
+     */
+    @Override
+    public <T> Optional<ApiResponse<T>> postResponse(String uri, String jsonBody, PayloadParser<T> parser) {
+        return delegate.postResponse(uri, jsonBody, parser);
+    }
+
+    @Override
+    public boolean hasStillApiCallsLeft() {
+        return delegate.hasStillApiCallsLeft();
+    }
+
+    /**
+     * Concurrent checks of the same url are collapsed like requests.
+     */
+    @Override
+    public boolean urlIsAvailable(final String url) {
+        Check.notNull(url, "url");
+        return singleFlight(availabilityChecks, url, new Supplier<Boolean>() {
+            @Override
+            public Boolean get() {
+                return delegate.urlIsAvailable(url);
+            }
+        });
+    }
+
+    /**
+     * @return number of requests that were passed to the wrapped client.
+     */
+    public long getSentRequests() {
+        return sent.get();
+    }
+
+    /**
+     * @return number of requests that waited for an identical one instead of being sent, in total.
+     */
+    public long getCollapsedRequests() {
+        return collapsed.get();
+    }
+
+    /**
+     * Key of a flight: a uri with its request headers and the parser of its payload.
+     */
+    private static class Request {
+        private final String uri;
+        private final Map<String, String> requestHeaders;
+        private final PayloadParser<?> parser;
+
+        Request(String uri, Map<String, String> requestHeaders, PayloadParser<?> parser) {
+            this.uri = Check.notNull(uri, "uri");
+            this.requestHeaders = ImmutableMap.copyOf(Check.notNull(requestHeaders, "requestHeaders"));
+            this.parser = Check.notNull(parser, "parser");
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            Request request = (Request) o;
+            return uri.equals(request.uri) && requestHeaders.equals(request.requestHeaders)
+                    && parser.equals(request.parser);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * uri.hashCode() + requestHeaders.hashCode()) + parser.hashCode();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package de.bschandera.githubapininja;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * <p>Layout of the files of {@linkplain ColumnarCrawlWriter} and {@linkplain ColumnarCrawlReader}. A file starts with
+ * {@value #MAGIC} and the {@value #VERSION}, followed by any number of blocks. Every block holds whole repositories and
+ * their languages in columns, one row per language of a repository:</p>
+ * <pre>
+ * int  length of the block without this int
+ * int  repositories
+ * int  rows
+ * int  length of the dictionary column
+ * int  length of the id column
+ * int  length of the language count column
+ * int  length of the language column
+ * dictionary: varint count, then per name varint length and UTF-8 bytes
+ * ids:        zigzag varint difference to the id before, the first one to 0, per repository
+ * counts:     varint number of languages per repository
+ * languages:  varint index into the dictionary per row
+ * bytes:      long per row
+ * </pre>
+ * <p>The dictionary is shared by all blocks of a file. A block only lists the names that were not used before, they
+ * get the next indexes. Because the length of every block is known up front, a block that was torn by a crash is
+ * noticed and ignored.</p>
+ */
+final class ColumnarCrawlFormat {
+    static final int MAGIC = 0x47484E43;
+    static final int VERSION = 1;
+    static final int FILE_HEADER_LENGTH = 8;
+    /**
+     * Without the leading length of the block.
+     */
+    static final int BLOCK_HEADER_LENGTH = 24;
+
+    private ColumnarCrawlFormat() {
+    }
+
+    static void writeVarint(ByteArrayOutputStream out, long value) {
+        long remaining = value;
+        while ((remaining & ~0x7FL) != 0) {
+            out.write((int) ((remaining & 0x7F) | 0x80));
+            remaining >>>= 7;
+        }
+        out.write((int) remaining);
+    }
+
+    static void writeSignedVarint(ByteArrayOutputStream out, long value) {
+        writeVarint(out, (value << 1) ^ (value >> 63));
+    }
+
+    /**
+     * Reads at the position of the buffer and moves it behind the varint.
+     */
+    static long readVarint(ByteBuffer buffer) {
+        long result = 0;
+        int shift = 0;
+        byte next;
+        do {
+            next = buffer.get();
+            result |= (long) (next & 0x7F) << shift;
+            shift += 7;
+        } while (next < 0);
+        return result;
+    }
+
+    static int readIntVarint(ByteBuffer buffer) {
+        int result = 0;
+        int shift = 0;
+        byte next;
+        do {
+            next = buffer.get();
+            result |= (next & 0x7F) << shift;
+            shift += 7;
+        } while (next < 0);
+        return result;
+    }
+
+    static long readSignedVarint(ByteBuffer buffer) {
+        final long zigzag = readVarint(buffer);
+        return (zigzag >>> 1) ^ -(zigzag & 1);
+    }
+}
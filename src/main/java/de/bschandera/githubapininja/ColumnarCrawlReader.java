@@ -0,0 +1,297 @@
+package de.bschandera.githubapininja;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import net.sf.qualitycheck.Check;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <p>Reads the files of {@linkplain ColumnarCrawlWriter}. The file is mapped into memory and rows are read right from
+ * the mapping, no {@linkplain Repository} or {@linkplain Language} is made per row. Only the dictionary of language
+ * names is read when the file is opened.</p>
+ * <p>A single mapping cannot be larger than 2 GB, so larger files are mapped in chunks. Every chunk holds whole
+ * blocks, a row is never split between two chunks.</p>
+ * <p>A block that was torn at the end of the file, e.g. because the writer was killed, is ignored. The mappings are
+ * released by the garbage collector, not by {@linkplain #close()}. Scans are thread-safe.</p>
+ */
+public class ColumnarCrawlReader implements Closeable {
+    private static final int MAX_CHUNK_SIZE = Integer.MAX_VALUE;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer[] chunks;
+    private final List<String> languageNames;
+    /**
+     * Chunk of every block.
+     */
+    private final int[] blockChunks;
+    /**
+     * Position of every block in its chunk, behind the leading length of the block.
+     */
+    private final int[] blockPositions;
+    private final long repositories;
+    private final long rows;
+
+    private ColumnarCrawlReader(FileChannel channel, MappedByteBuffer[] chunks, List<String> languageNames,
+                                int[] blockChunks, int[] blockPositions, long repositories, long rows) {
+        this.channel = channel;
+        this.chunks = chunks;
+        this.languageNames = languageNames;
+        this.blockChunks = blockChunks;
+        this.blockPositions = blockPositions;
+        this.repositories = repositories;
+        this.rows = rows;
+    }
+
+    /**
+     * @param file written by {@linkplain ColumnarCrawlWriter}.
+     * @return
+     * @throws IOException if the file cannot be read or was not written by {@linkplain ColumnarCrawlWriter}.
+     */
+    public static ColumnarCrawlReader open(File file) throws IOException {
+        return open(file, MAX_CHUNK_SIZE);
+    }
+
+    /**
+     * @param chunkSize upper bound of the size of a mapping, it must hold the largest block of the file.
+     */
+    @VisibleForTesting
+    static ColumnarCrawlReader open(File file, int chunkSize) throws IOException {
+        Check.notNull(file, "file");
+        Check.greaterThan(4 + ColumnarCrawlFormat.BLOCK_HEADER_LENGTH, chunkSize, "chunkSize");
+        final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            final ByteBuffer header = ByteBuffer.allocate(ColumnarCrawlFormat.FILE_HEADER_LENGTH);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // read until the header is complete or the file ends
+            }
+            if (header.hasRemaining() || header.getInt(0) != ColumnarCrawlFormat.MAGIC) {
+                throw new IOException(file + " is no columnar crawl file.");
+            }
+            if (header.getInt(4) != ColumnarCrawlFormat.VERSION) {
+                throw new IOException(file + " has the unknown version " + header.getInt(4) + ".");
+            }
+            return readBlocks(channel, chunkSize);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Maps the file chunk by chunk. A chunk starts with the first block that did not fit into the chunk before.
+     */
+    private static ColumnarCrawlReader readBlocks(FileChannel channel, int chunkSize) throws IOException {
+        final long size = channel.size();
+        List<MappedByteBuffer> chunks = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        int[] blockChunks = new int[16];
+        int[] blockPositions = new int[16];
+        int blockCount = 0;
+        long repositories = 0;
+        long rows = 0;
+        long chunkStart = ColumnarCrawlFormat.FILE_HEADER_LENGTH;
+        boolean torn = false;
+        while (!torn && size - chunkStart >= 4 + ColumnarCrawlFormat.BLOCK_HEADER_LENGTH) {
+            final MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, chunkStart,
+                    Math.min(chunkSize, size - chunkStart));
+            final ByteBuffer dictionary = chunk.duplicate();
+            int position = 0;
+            while (chunk.limit() - position >= 4 + ColumnarCrawlFormat.BLOCK_HEADER_LENGTH) {
+                final int length = chunk.getInt(position);
+                if (length < ColumnarCrawlFormat.BLOCK_HEADER_LENGTH || length > size - chunkStart - position - 4) {
+                    // torn by a crash while writing
+                    torn = true;
+                    break;
+                }
+                if (length > chunk.limit() - position - 4) {
+                    Check.stateIsTrue(position > 0, "Block at %s is larger than the chunk size %s.",
+                            chunkStart + position, chunkSize);
+                    break;
+                }
+                final int block = position + 4;
+                dictionary.position(block + ColumnarCrawlFormat.BLOCK_HEADER_LENGTH);
+                final int newNames = ColumnarCrawlFormat.readIntVarint(dictionary);
+                for (int i = 0; i < newNames; i++) {
+                    final byte[] utf8 = new byte[ColumnarCrawlFormat.readIntVarint(dictionary)];
+                    dictionary.get(utf8);
+                    names.add(new String(utf8, StandardCharsets.UTF_8));
+                }
+
+                if (blockCount == blockPositions.length) {
+                    blockChunks = Arrays.copyOf(blockChunks, 2 * blockCount);
+                    blockPositions = Arrays.copyOf(blockPositions, 2 * blockCount);
+                }
+                blockChunks[blockCount] = chunks.size();
+                blockPositions[blockCount] = block;
+                blockCount++;
+                repositories += chunk.getInt(block);
+                rows += chunk.getInt(block + 4);
+                position = block + length;
+            }
+            chunks.add(chunk);
+            chunkStart += position;
+        }
+        return new ColumnarCrawlReader(channel, chunks.toArray(new MappedByteBuffer[chunks.size()]),
+                ImmutableList.copyOf(names), Arrays.copyOf(blockChunks, blockCount),
+                Arrays.copyOf(blockPositions, blockCount), repositories, rows);
+    }
+
+    /**
+     * @return the dictionary, a row refers to a language by its index in this list.
+     */
+    public List<String> getLanguageNames() {
+        return languageNames;
+    }
+
+    public long getRepositories() {
+        return repositories;
+    }
+
+    /**
+     * @return number of languages of all repositories.
+     */
+    public long getRows() {
+        return rows;
+    }
+
+    /**
+     * Hands every row to the given visitor, in the order they were written. Repositories without languages have no
+     * rows.
+     *
+     * @param visitor
+     */
+    public void scan(RowVisitor visitor) {
+        Check.notNull(visitor, "visitor");
+        final ByteBuffer[] ids = duplicates();
+        final ByteBuffer[] counts = duplicates();
+        final ByteBuffer[] languages = duplicates();
+        for (int i = 0; i < blockPositions.length; i++) {
+            final MappedByteBuffer chunk = chunks[blockChunks[i]];
+            final int block = blockPositions[i];
+            final ByteBuffer idColumn = ids[blockChunks[i]];
+            final ByteBuffer countColumn = counts[blockChunks[i]];
+            final ByteBuffer languageColumn = languages[blockChunks[i]];
+            idColumn.position(block + ColumnarCrawlFormat.BLOCK_HEADER_LENGTH + chunk.getInt(block + 8));
+            countColumn.position(idColumn.position() + chunk.getInt(block + 12));
+            languageColumn.position(countColumn.position() + chunk.getInt(block + 16));
+            int bytes = languageColumn.position() + chunk.getInt(block + 20);
+
+            final int repositoriesOfBlock = chunk.getInt(block);
+            long id = 0;
+            for (int repository = 0; repository < repositoriesOfBlock; repository++) {
+                id += ColumnarCrawlFormat.readSignedVarint(idColumn);
+                final int count = ColumnarCrawlFormat.readIntVarint(countColumn);
+                for (int row = 0; row < count; row++) {
+                    visitor.visit(id, ColumnarCrawlFormat.readIntVarint(languageColumn), chunk.getLong(bytes));
+                    bytes += 8;
+                }
+            }
+            Check.stateIsTrue(bytes == block + chunk.getInt(block - 4), "Block %s is corrupt.", i);
+        }
+    }
+
+    /**
+     * Sums up the bytes per language of all rows, see {@linkplain #aggregateInto(LanguageAggregator)}.
+     *
+     * @return every language once, in the order of the dictionary, with the sum of its bytes.
+     */
+    public List<Language> aggregate() {
+        final LanguageAggregator aggregator = new LanguageAggregator();
+        aggregateInto(aggregator);
+        return aggregator.getLanguages();
+    }
+
+    /**
+     * Sums up the bytes per language of all rows and adds the sum of every language to the given aggregator, e.g. to
+     * combine several crawls. Only the language and the bytes columns are read. The rows are summed up in a
+     * {@code long} per dictionary index, nothing is allocated per row. The aggregator learns the number of repositories
+     * of every language, but not the shares.
+     *
+     * @param aggregator receives the sum of every name of the dictionary.
+     */
+    public void aggregateInto(LanguageAggregator aggregator) {
+        Check.notNull(aggregator, "aggregator");
+        final long[] sums = new long[languageNames.size()];
+        final long[] repositoriesPerLanguage = new long[languageNames.size()];
+        final BigDecimal[] overflows = new BigDecimal[languageNames.size()];
+        final ByteBuffer[] languages = duplicates();
+        for (int i = 0; i < blockPositions.length; i++) {
+            final MappedByteBuffer chunk = chunks[blockChunks[i]];
+            final int block = blockPositions[i];
+            final ByteBuffer languageColumn = languages[blockChunks[i]];
+            languageColumn.position(block + ColumnarCrawlFormat.BLOCK_HEADER_LENGTH + chunk.getInt(block + 8)
+                    + chunk.getInt(block + 12) + chunk.getInt(block + 16));
+            int bytes = languageColumn.position() + chunk.getInt(block + 20);
+            final int rowsOfBlock = chunk.getInt(block + 4);
+            for (int row = 0; row < rowsOfBlock; row++) {
+                final int language = ColumnarCrawlFormat.readIntVarint(languageColumn);
+                final long bytesOfRow = chunk.getLong(bytes);
+                bytes += 8;
+                repositoriesPerLanguage[language]++;
+                final long sum = sums[language] + bytesOfRow;
+                if (sum < 0) {
+                    // both summands are not negative, so the sum overflowed
+                    final BigDecimal counter = BigDecimal.valueOf(sums[language]);
+                    overflows[language] = overflows[language] == null ? counter : overflows[language].add(counter);
+                    sums[language] = bytesOfRow;
+                } else {
+                    sums[language] = sum;
+                }
+            }
+        }
+
+        for (int language = 0; language < sums.length; language++) {
+            final BigDecimal sum = BigDecimal.valueOf(sums[language]);
+            aggregator.addSum(new Language(languageNames.get(language),
+                    overflows[language] == null ? sum : sum.add(overflows[language])),
+                    repositoriesPerLanguage[language], null);
+        }
+    }
+
+    /**
+     * @return number of chunks the file is mapped in.
+     */
+    int getChunks() {
+        return chunks.length;
+    }
+
+    /**
+     * @return a buffer per chunk, so every scan has its own positions.
+     */
+    private ByteBuffer[] duplicates() {
+        final ByteBuffer[] result = new ByteBuffer[chunks.length];
+        for (int i = 0; i < chunks.length; i++) {
+            result[i] = chunks[i].duplicate();
+        }
+        return result;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Receives the rows of {@linkplain ColumnarCrawlReader#scan(RowVisitor)}.
+     */
+    public interface RowVisitor {
+        /**
+         * @param repositoryId
+         * @param language     index into {@linkplain ColumnarCrawlReader#getLanguageNames()}.
+         * @param bytes
+         */
+        void visit(long repositoryId, int language, long bytes);
+    }
+}
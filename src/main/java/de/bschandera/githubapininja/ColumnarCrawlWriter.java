@@ -0,0 +1,200 @@
+package de.bschandera.githubapininja;
+
+import com.google.common.annotations.VisibleForTesting;
+import net.sf.qualitycheck.Check;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * <p>Stores crawled repositories and their languages compactly for later analysis, see {@linkplain ColumnarCrawlFormat}
+ * for the layout and {@linkplain ColumnarCrawlReader} to read them. Language names are stored once in a dictionary,
+ * every row only refers to it by index. Repository ids are stored as the difference to the id before, which is small
+ * for a crawl in the order of the ids.</p>
+ * <p>Repositories are collected in memory until a block of {@code rowsPerBlock} rows is full, then the block is
+ * written. {@linkplain #flush()} writes the repositories collected so far as a smaller block, e.g. whenever the
+ * {@linkplain CrawlCheckpoint} is synced, and {@linkplain #close()} writes the last block. Not thread-safe.</p>
+ */
+public class ColumnarCrawlWriter implements Closeable, Flushable {
+    static final int DEFAULT_ROWS_PER_BLOCK = 65536;
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final FileOutputStream fileOut;
+    private final DataOutputStream out;
+    private final int rowsPerBlock;
+    private final Map<String, Integer> dictionary = new HashMap<>();
+    private final List<String> newNames = new ArrayList<>();
+    private long[] repositoryIds = new long[INITIAL_CAPACITY];
+    private int[] languageCounts = new int[INITIAL_CAPACITY];
+    private int repositories;
+    private int[] languages = new int[INITIAL_CAPACITY];
+    private long[] bytes = new long[INITIAL_CAPACITY];
+    private int rows;
+
+    /**
+     * @param file is overwritten if it exists.
+     * @throws IOException
+     */
+    public ColumnarCrawlWriter(File file) throws IOException {
+        this(file, DEFAULT_ROWS_PER_BLOCK);
+    }
+
+    @VisibleForTesting
+    ColumnarCrawlWriter(File file, int rowsPerBlock) throws IOException {
+        Check.notNull(file, "file");
+        Check.greaterThan(0, rowsPerBlock, "rowsPerBlock");
+        this.rowsPerBlock = rowsPerBlock;
+        final File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Cannot create directory " + parent);
+        }
+        fileOut = new FileOutputStream(file);
+        out = new DataOutputStream(new BufferedOutputStream(fileOut));
+        out.writeInt(ColumnarCrawlFormat.MAGIC);
+        out.writeInt(ColumnarCrawlFormat.VERSION);
+    }
+
+    /**
+     * @param repository with a numeric id, the bytes of its languages must be integral {@code long}s, as GitHub reports
+     *                   them.
+     * @throws IOException
+     */
+    public void write(Repository repository) throws IOException {
+        Check.notNull(repository, "repository");
+        final long id = Long.parseLong(repository.getId());
+        final List<Language> languagesOfRepository = repository.getLanguages();
+        for (Language language : languagesOfRepository) {
+            Check.notNegative(language.getBytesAsLong(), "bytes of " + language.getName());
+        }
+
+        ensureRepositoryCapacity(repositories + 1);
+        repositoryIds[repositories] = id;
+        languageCounts[repositories] = languagesOfRepository.size();
+        repositories++;
+        ensureRowCapacity(rows + languagesOfRepository.size());
+        for (Language language : languagesOfRepository) {
+            languages[rows] = indexOf(language.getName());
+            bytes[rows] = language.getBytesAsLong();
+            rows++;
+        }
+        if (rows >= rowsPerBlock) {
+            writeBlock();
+        }
+    }
+
+    /**
+     * Writes every repository of the given iterator, e.g. of a crawl.
+     *
+     * @return number of repositories written.
+     * @throws IOException
+     */
+    public long writeAll(Iterator<Repository> repositories) throws IOException {
+        Check.notNull(repositories, "repositories");
+        long result = 0;
+        while (repositories.hasNext()) {
+            write(repositories.next());
+            result++;
+        }
+        return result;
+    }
+
+    /**
+     * Writes the repositories collected so far as a block, even if it is not full, and forces the file to the disk. A
+     * crash afterwards does not lose them.
+     *
+     * @throws IOException
+     */
+    @Override
+    public void flush() throws IOException {
+        if (repositories > 0) {
+            writeBlock();
+        }
+        out.flush();
+        fileOut.getChannel().force(false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (repositories > 0) {
+                writeBlock();
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private void writeBlock() throws IOException {
+        final ByteArrayOutputStream dictionaryColumn = new ByteArrayOutputStream();
+        ColumnarCrawlFormat.writeVarint(dictionaryColumn, newNames.size());
+        for (String name : newNames) {
+            final byte[] utf8 = name.getBytes(StandardCharsets.UTF_8);
+            ColumnarCrawlFormat.writeVarint(dictionaryColumn, utf8.length);
+            dictionaryColumn.write(utf8);
+        }
+
+        final ByteArrayOutputStream idColumn = new ByteArrayOutputStream();
+        final ByteArrayOutputStream countColumn = new ByteArrayOutputStream();
+        long previousId = 0;
+        for (int i = 0; i < repositories; i++) {
+            ColumnarCrawlFormat.writeSignedVarint(idColumn, repositoryIds[i] - previousId);
+            previousId = repositoryIds[i];
+            ColumnarCrawlFormat.writeVarint(countColumn, languageCounts[i]);
+        }
+
+        final ByteArrayOutputStream languageColumn = new ByteArrayOutputStream();
+        for (int i = 0; i < rows; i++) {
+            ColumnarCrawlFormat.writeVarint(languageColumn, languages[i]);
+        }
+
+        final long length = ColumnarCrawlFormat.BLOCK_HEADER_LENGTH + dictionaryColumn.size() + idColumn.size()
+                + countColumn.size() + languageColumn.size() + 8L * rows;
+        Check.stateIsTrue(length <= Integer.MAX_VALUE, "Block of %s rows is too large.", rows);
+        out.writeInt((int) length);
+        out.writeInt(repositories);
+        out.writeInt(rows);
+        out.writeInt(dictionaryColumn.size());
+        out.writeInt(idColumn.size());
+        out.writeInt(countColumn.size());
+        out.writeInt(languageColumn.size());
+        dictionaryColumn.writeTo(out);
+        idColumn.writeTo(out);
+        countColumn.writeTo(out);
+        languageColumn.writeTo(out);
+        for (int i = 0; i < rows; i++) {
+            out.writeLong(bytes[i]);
+        }
+
+        newNames.clear();
+        repositories = 0;
+        rows = 0;
+    }
+
+    private int indexOf(String name) {
+        final Integer index = dictionary.get(name);
+        if (index != null) {
+            return index;
+        }
+        final int newIndex = dictionary.size();
+        dictionary.put(name, newIndex);
+        newNames.add(name);
+        return newIndex;
+    }
+
+    private void ensureRepositoryCapacity(int capacity) {
+        if (capacity > repositoryIds.length) {
+            final int newLength = Math.max(capacity, 2 * repositoryIds.length);
+            repositoryIds = Arrays.copyOf(repositoryIds, newLength);
+            languageCounts = Arrays.copyOf(languageCounts, newLength);
+        }
+    }
+
+    private void ensureRowCapacity(int capacity) {
+        if (capacity > languages.length) {
+            final int newLength = Math.max(capacity, 2 * languages.length);
+            languages = Arrays.copyOf(languages, newLength);
+            bytes = Arrays.copyOf(bytes, newLength);
+        }
+    }
+}
@@ -2,84 +2,798 @@ package de.bschandera.githubapininja;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.CountingInputStream;
+import com.google.common.primitives.Ints;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.gson.JsonElement;
-import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
 import net.sf.qualitycheck.Check;
 import org.apache.http.Header;
 import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpGet;
-import org.apache.http.impl.client.HttpClientBuilder;
-import org.scribe.model.*;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.util.EntityUtils;
+import org.scribe.model.OAuthRequest;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 /**
  * <p>Helps you to do http calls. Does not know anything about GitHub besides the OAuth workflow.</p>
  * <p>Also this class does is providing oAuth mechanisms to sign api calls. This makes it possible to increase
- * the maximal number of calls drastically.</p>
+ * the maximal number of calls drastically. Requests are signed by Scribe, but sent by the http client, so signed and
+ * unsigned requests share its connections. The response entity is always consumed, so the connection goes back to the
+ * pool.</p>
+ * <p>Asynchronous requests go through a non-blocking http client that is started with the first of them. It keeps
+ * up to {@value #MAX_ASYNC_CONNECTIONS} connections alive and serves all of them with a few I/O threads, so many
+ * requests can be in flight without a thread each. {@linkplain #close()} stops it.</p>
+ * <p>Every call is signed with the token of a {@linkplain CredentialPool} that has the most calls left, and waits
+ * for its turn at the {@linkplain RateLimitScheduler} of that token. It paces the calls over the rate limit window and
+ * parks them until the window resets once it is used up. A request that is rejected by a rate limit is sent again
+ * after the pause, possibly with another token, up to {@value #MAX_RATE_LIMIT_RETRIES} times. Those retries are not
+ * attempts of the {@linkplain RetryPolicy}, a request is parked rather than dropped.</p>
+ * <p>Requests that fail with a connection error or a transient status code, e.g. {@code 502 Bad Gateway}, are sent
+ * again after a backoff, as far as the {@linkplain RetryPolicy} allows. While most requests fail, the
+ * {@linkplain CircuitBreaker} lets none through, they fail fast with an absent response. Synchronous requests wait
+ * for their backoff in the calling thread, which waits for the response anyway. Asynchronous requests wait for it in a
+ * timer thread, not in a thread of the caller.</p>
+ * <p>Calls are measured by {@linkplain Metrics}: their latency per endpoint, the time to parse their payloads, the
+ * bytes received, retries and errors. The calls left of the tokens and whether the circuit breaker is open are gauges
+ * of the helper created last.</p>
+ * <p>All methods are thread-safe, a single instance is meant to be shared by all threads of a crawl.</p>
  */
-public class CommunicationHelper {
-    private static final JsonParser PARSER = new JsonParser();
+public class CommunicationHelper extends ApiClient implements Closeable {
     private static final String HEADER_X_RATE_REMAINING = "X-RateLimit-Remaining";
+    private static final String HEADER_X_RATE_RESET = "X-RateLimit-Reset";
+    private static final String HEADER_AUTHORIZATION = "Authorization";
+    private static final int MAX_ASYNC_CONNECTIONS = 100;
+    private static final int MAX_RATE_LIMIT_RETRIES = 10;
+    private static final String METRIC_REQUEST_SECONDS = "github_request_seconds";
+    private static final String METRIC_REQUEST_SECONDS_HELP =
+            "Latency of api calls until their payload is parsed, by endpoint";
+    private static final String METRIC_ERRORS = "github_errors_total";
+    private static final String METRIC_ERRORS_HELP = "Api calls that failed, by reason";
+    private static final Metrics.Timer REQUESTS_REPOSITORIES =
+            Metrics.timer(METRIC_REQUEST_SECONDS, METRIC_REQUEST_SECONDS_HELP, "endpoint", "repositories");
+    private static final Metrics.Timer REQUESTS_LANGUAGES =
+            Metrics.timer(METRIC_REQUEST_SECONDS, METRIC_REQUEST_SECONDS_HELP, "endpoint", "languages");
+    private static final Metrics.Timer REQUESTS_GRAPHQL =
+            Metrics.timer(METRIC_REQUEST_SECONDS, METRIC_REQUEST_SECONDS_HELP, "endpoint", "graphql");
+    private static final Metrics.Timer REQUESTS_STATUS =
+            Metrics.timer(METRIC_REQUEST_SECONDS, METRIC_REQUEST_SECONDS_HELP, "endpoint", "status");
+    private static final Metrics.Timer REQUESTS_OTHER =
+            Metrics.timer(METRIC_REQUEST_SECONDS, METRIC_REQUEST_SECONDS_HELP, "endpoint", "other");
+    private static final Metrics.Timer PAYLOAD_PARSING = Metrics.timer("github_payload_parse_seconds",
+            "Time to parse payloads, while they are received");
+    private static final Metrics.Counter RECEIVED_BYTES = Metrics.counter("github_received_bytes_total",
+            "Bytes of parsed payloads");
+    private static final String METRIC_RETRIES = "github_retries_total";
+    private static final String METRIC_RETRIES_HELP = "Api calls that were sent again, by reason";
+    private static final Metrics.Counter RATE_LIMIT_RETRIES =
+            Metrics.counter(METRIC_RETRIES, METRIC_RETRIES_HELP, "reason", "rate_limit");
+    private static final Metrics.Counter STATUS_RETRIES =
+            Metrics.counter(METRIC_RETRIES, METRIC_RETRIES_HELP, "reason", "status");
+    private static final Metrics.Counter CONNECTION_RETRIES =
+            Metrics.counter(METRIC_RETRIES, METRIC_RETRIES_HELP, "reason", "connection");
+    private static final Metrics.Counter CONNECTION_ERRORS =
+            Metrics.counter(METRIC_ERRORS, METRIC_ERRORS_HELP, "reason", "connection");
+    private static final Metrics.Counter STATUS_ERRORS =
+            Metrics.counter(METRIC_ERRORS, METRIC_ERRORS_HELP, "reason", "status");
+    private static final Metrics.Counter CIRCUIT_OPEN_ERRORS =
+            Metrics.counter(METRIC_ERRORS, METRIC_ERRORS_HELP, "reason", "circuit_open");
 
     private final HttpClient httpClient;
-    private final OAuthHelper oAuthHelper;
-    private int apiCallsRemaining;
+    private final Optional<ConnectionPool> ownConnectionPool;
+    private final CredentialPool credentialPool;
+    private final RetryPolicy retryPolicy;
+    private final CircuitBreaker circuitBreaker;
+    private final Set<SettableFuture<?>> pendingRetries =
+            Collections.newSetFromMap(new ConcurrentHashMap<SettableFuture<?>, Boolean>());
+    private CloseableHttpAsyncClient asyncClient;
+    private ScheduledExecutorService retryTimer;
 
+    /**
+     * Requests go through a {@linkplain ConnectionPool} with default settings, which is closed by
+     * {@linkplain #close()}. They are signed with the tokens of the {@value CredentialPool#TOKENS_VARIABLE}
+     * environment variable or of {@linkplain TokenStore#inUserHome()}, or with a token that is asked for on the
+     * console if there are none, see {@linkplain CredentialPool#load(TokenStore)}.
+     */
     public CommunicationHelper() {
-        // if no X-RateLimit-Remaining header can be achieved, 50 should be enough
-        this(HttpClientBuilder.create().build());
+        this(new ConnectionPool(), true, defaultCredentials());
+    }
+
+    /**
+     * Requests go through the given pool, which is not closed by {@linkplain #close()}, so it can be shared by
+     * several helpers.
+     *
+     * @param connectionPool
+     */
+    public CommunicationHelper(ConnectionPool connectionPool) {
+        this(connectionPool, false, defaultCredentials());
+    }
+
+    /**
+     * Requests go through a {@linkplain ConnectionPool} with default settings and are signed with the given tokens.
+     *
+     * @param credentialPool
+     */
+    public CommunicationHelper(CredentialPool credentialPool) {
+        this(new ConnectionPool(), true, credentialPool);
+    }
+
+    public CommunicationHelper(ConnectionPool connectionPool, CredentialPool credentialPool) {
+        this(connectionPool, false, credentialPool);
+    }
+
+    /**
+     * @param connectionPool not closed by {@linkplain #close()}.
+     * @param credentialPool
+     * @param retryPolicy    instead of {@linkplain RetryPolicy#defaults()}.
+     * @param circuitBreaker instead of one with default settings, it may be shared by several helpers.
+     */
+    public CommunicationHelper(ConnectionPool connectionPool, CredentialPool credentialPool, RetryPolicy retryPolicy,
+                               CircuitBreaker circuitBreaker) {
+        this(connectionPool.getHttpClient(), credentialPool, Optional.<ConnectionPool>absent(), retryPolicy,
+                circuitBreaker);
     }
 
     public CommunicationHelper(HttpClient httpClient) {
+        this(httpClient, new OAuthHelper());
+    }
+
+    public CommunicationHelper(HttpClient httpClient, CredentialPool credentialPool) {
+        this(httpClient, credentialPool, RetryPolicy.defaults(), new CircuitBreaker());
+    }
+
+    public CommunicationHelper(HttpClient httpClient, CredentialPool credentialPool, RetryPolicy retryPolicy,
+                               CircuitBreaker circuitBreaker) {
+        this(httpClient, credentialPool, Optional.<ConnectionPool>absent(), retryPolicy, circuitBreaker);
+    }
+
+    @VisibleForTesting
+    CommunicationHelper(HttpClient httpClient, OAuthHelper oAuthHelper) {
+        this(httpClient, new CredentialPool(ImmutableList.of(new CredentialPool.Credential(oAuthHelper))));
+    }
+
+    @VisibleForTesting
+    CommunicationHelper(HttpClient httpClient, OAuthHelper oAuthHelper, RateLimitScheduler rateLimitScheduler) {
+        this(httpClient, new CredentialPool(ImmutableList.of(
+                new CredentialPool.Credential(oAuthHelper, rateLimitScheduler))));
+    }
+
+    private CommunicationHelper(ConnectionPool connectionPool, boolean ownsConnectionPool,
+                                CredentialPool credentialPool) {
+        this(connectionPool.getHttpClient(), credentialPool,
+                ownsConnectionPool ? Optional.of(connectionPool) : Optional.<ConnectionPool>absent(),
+                RetryPolicy.defaults(), new CircuitBreaker());
+    }
+
+    private CommunicationHelper(HttpClient httpClient, final CredentialPool credentialPool,
+                                Optional<ConnectionPool> ownConnectionPool, RetryPolicy retryPolicy,
+                                final CircuitBreaker circuitBreaker) {
         Check.notNull(httpClient, "httpClient");
+        Check.notNull(credentialPool, "credentialPool");
+        Check.notNull(retryPolicy, "retryPolicy");
+        Check.notNull(circuitBreaker, "circuitBreaker");
         this.httpClient = httpClient;
-        oAuthHelper = new OAuthHelper();
-        apiCallsRemaining = 50; // default number for protected GitHub resources
+        this.credentialPool = credentialPool;
+        this.ownConnectionPool = ownConnectionPool;
+        this.retryPolicy = retryPolicy;
+        this.circuitBreaker = circuitBreaker;
+        Metrics.gauge("github_rate_limit_remaining", "Calls all tokens have left in their current windows",
+                new Metrics.Gauge() {
+                    @Override
+                    public long getValue() {
+                        return credentialPool.getRemaining();
+                    }
+                });
+        Metrics.gauge("github_circuit_open", "1 while the circuit breaker lets no api call through",
+                new Metrics.Gauge() {
+                    @Override
+                    public long getValue() {
+                        return circuitBreaker.getState() == CircuitBreaker.State.OPEN ? 1 : 0;
+                    }
+                });
+    }
+
+    private static CredentialPool defaultCredentials() {
+        try {
+            return CredentialPool.load(TokenStore.inUserHome());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Requests are signed with a token. So all requests are less restricted. A {@code 304 Not Modified} answer to a
+     * conditional request does not count against the rate limit. Blocks while the rate limit does not allow a call.
+     *
+     * @param uri
+     * @param requestHeaders
+     * @return
+     */
+    @Override
+    public <T> Optional<ApiResponse<T>> getResponse(final String uri, final Map<String, String> requestHeaders,
+                                                    PayloadParser<T> parser) {
+        Check.notNull(requestHeaders, "requestHeaders");
+        Check.notNull(parser, "parser");
+        return send(uri, new RequestFactory() {
+            @Override
+            public HttpUriRequest create(CredentialPool.Credential credential) {
+                return toHttpGet(uri, requestHeaders, credential);
+            }
+        }, parser);
+    }
+
+    /**
+     * Same rate limits and retries as {@linkplain #getResponse(String, Map, PayloadParser)}. The token goes into the
+     * {@code Authorization} header.
+     *
+     * @param uri
+     * @param jsonBody
+     * @param parser
+     * @return
+     */
+    @Override
+    public <T> Optional<ApiResponse<T>> postResponse(final String uri, final String jsonBody,
+                                                     PayloadParser<T> parser) {
+        Check.notEmpty(uri, "uri");
+        Check.notNull(jsonBody, "jsonBody");
+        Check.notNull(parser, "parser");
+        return send(uri, new RequestFactory() {
+            @Override
+            public HttpUriRequest create(CredentialPool.Credential credential) {
+                final HttpPost result = new HttpPost(uri);
+                result.addHeader(HEADER_AUTHORIZATION, "bearer " + credential.getOAuthHelper().getAccessToken());
+                result.setEntity(new StringEntity(jsonBody, ContentType.APPLICATION_JSON));
+                return result;
+            }
+        }, parser);
     }
 
     /**
-     * Make REST call against the GitHub API. Parse result to JSON. Request will be signed with a token. So all requests
-     * are less restricted.
+     * Sends the request with the credential that has the most calls left. Sends it again if it is rejected by a rate
+     * limit, or after a backoff if it failed with a connection error or a transient status code.
+     */
+    private <T> Optional<ApiResponse<T>> send(String uri, RequestFactory requestFactory, PayloadParser<T> parser) {
+        final Metrics.Timer timer = requestTimer(uri);
+        final long firstAttemptMillis = System.currentTimeMillis();
+        int attempt = 1;
+        int rateLimitRetries = 0;
+        while (true) {
+            if (!circuitBreaker.tryAcquire()) {
+                return circuitOpen(uri);
+            }
+            final CredentialPool.Credential credential;
+            try {
+                credential = reserveApiCall();
+            } catch (RuntimeException e) {
+                circuitBreaker.release();
+                throw e;
+            }
+            final long start = timer.start();
+            final HttpResponse response;
+            try {
+                response = httpClient.execute(requestFactory.create(credential));
+            } catch (IOException | RuntimeException e) {
+                CONNECTION_ERRORS.increment();
+                credential.getBudget().cancel();
+                final Optional<Long> backoff = onConnectionError(e, attempt, firstAttemptMillis);
+                if (backoff.isPresent()) {
+                    sleep(backoff.get());
+                    attempt++;
+                    continue;
+                }
+                System.out.println("I'm facing some connection problems. Are you connected to this internet thingy?");
+                throw Throwables.propagate(e);
+            }
+            final Optional<Long> backoff;
+            try {
+                if (learnFromResponse(response, credential) && rateLimitRetries < MAX_RATE_LIMIT_RETRIES) {
+                    circuitBreaker.onSuccess();
+                    rateLimitRetries++;
+                    RATE_LIMIT_RETRIES.increment();
+                    adjustRateRemaining(response, credential.getBudget());
+                    continue;
+                }
+                backoff = onStatus(response, attempt, firstAttemptMillis);
+                if (!backoff.isPresent()) {
+                    return tryGetResponse(response, parser, credential.getBudget());
+                }
+                adjustRateRemaining(response, credential.getBudget());
+            } finally {
+                EntityUtils.consumeQuietly(response.getEntity());
+                timer.stop(start);
+            }
+            sleep(backoff.get());
+            attempt++;
+        }
+    }
+
+    private static <T> Optional<ApiResponse<T>> circuitOpen(String uri) {
+        CIRCUIT_OPEN_ERRORS.increment();
+        System.out.println("GitHub failed too often lately, not calling " + uri + " for now.");
+        return Optional.absent();
+    }
+
+    /**
+     * Tells the circuit breaker about the status code of the response.
+     *
+     * @return the backoff before the request is sent again, absent if the response is final.
+     */
+    private Optional<Long> onStatus(HttpResponse response, int attempt, long firstAttemptMillis) {
+        final int statusCode = response.getStatusLine().getStatusCode();
+        if (!retryPolicy.isRetryable(statusCode)) {
+            circuitBreaker.onSuccess();
+            return Optional.absent();
+        }
+        circuitBreaker.onFailure();
+        final Optional<Long> backoff = backoff(attempt, firstAttemptMillis);
+        if (backoff.isPresent()) {
+            STATUS_ERRORS.increment();
+            STATUS_RETRIES.increment();
+            System.out.println(statusCode + " status code, trying again in " + backoff.get() + " ms.");
+        }
+        return backoff;
+    }
+
+    /**
+     * Tells the circuit breaker about the error. Only an {@linkplain IOException} says something about GitHub,
+     * other errors are ours.
+     *
+     * @return the backoff before the request is sent again, absent if the error is final.
+     */
+    private Optional<Long> onConnectionError(Exception e, int attempt, long firstAttemptMillis) {
+        if (!(e instanceof IOException)) {
+            circuitBreaker.release();
+            return Optional.absent();
+        }
+        circuitBreaker.onFailure();
+        final Optional<Long> backoff = backoff(attempt, firstAttemptMillis);
+        if (backoff.isPresent()) {
+            CONNECTION_RETRIES.increment();
+            System.out.println(e + ", trying again in " + backoff.get() + " ms.");
+        }
+        return backoff;
+    }
+
+    private Optional<Long> backoff(int attempt, long firstAttemptMillis) {
+        final long backoffMillis = retryPolicy.backoffMillis(attempt, ThreadLocalRandom.current());
+        return retryPolicy.allowsRetry(attempt, System.currentTimeMillis() - firstAttemptMillis, backoffMillis)
+                ? Optional.of(backoffMillis)
+                : Optional.<Long>absent();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * By the last segment of the path, so there are only a few timers.
+     */
+    private static Metrics.Timer requestTimer(String uri) {
+        final int query = uri.indexOf('?');
+        final String path = query < 0 ? uri : uri.substring(0, query);
+        if (path.endsWith("/languages")) {
+            return REQUESTS_LANGUAGES;
+        } else if (path.endsWith("/repositories")) {
+            return REQUESTS_REPOSITORIES;
+        } else if (path.endsWith("/graphql")) {
+            return REQUESTS_GRAPHQL;
+        }
+        return REQUESTS_OTHER;
+    }
+
+    /**
+     * Same as {@linkplain #getResponse(String, Map, PayloadParser)}, but does not wait for the response. The body is
+     * received completely before the parser is called in one of the I/O threads. Only waiting for the rate limit is
+     * done by the calling thread. A request that is rejected by a rate limit is not sent again, but later calls wait
+     * for the limit to be lifted. A request that failed transiently is sent again by a timer thread once its backoff
+     * passed. The timer does not wait for the rate limit, it tries again once the call may be sent.
      *
      * @param uri
+     * @param requestHeaders
+     * @param parser
      * @return
      */
-    public Optional<JsonElement> getResponseAsJson(String uri) {
-        Check.stateIsTrue(hasStillApiCallsLeft(), "Wanted to call the API but no rate limit remaining anymore.");
-        return tryGetResponseAsJson(oAuthHelper.getoAuthSignedRequest(uri).send());
+    @Override
+    public <T> ListenableFuture<Optional<ApiResponse<T>>> getResponseAsync(String uri,
+                                                                         Map<String, String> requestHeaders,
+                                                                         final PayloadParser<T> parser) {
+        Check.notNull(requestHeaders, "requestHeaders");
+        Check.notNull(parser, "parser");
+        final SettableFuture<Optional<ApiResponse<T>>> result = SettableFuture.create();
+        if (!circuitBreaker.tryAcquire()) {
+            result.set(CommunicationHelper.<T>circuitOpen(uri));
+            return result;
+        }
+        final CredentialPool.Credential credential;
+        try {
+            credential = reserveApiCall();
+        } catch (RuntimeException e) {
+            circuitBreaker.release();
+            throw e;
+        }
+        sendAsync(uri, requestHeaders, parser, credential, 1, System.currentTimeMillis(), result);
+        return result;
+    }
+
+    /**
+     * Sends the request with the given credential, its call is reserved already and the circuit breaker let it
+     * through.
+     */
+    private <T> void sendAsync(final String uri, final Map<String, String> requestHeaders,
+                               final PayloadParser<T> parser, final CredentialPool.Credential credential,
+                               final int attempt, final long firstAttemptMillis,
+                               final SettableFuture<Optional<ApiResponse<T>>> result) {
+        final RateLimitBudget budget = credential.getBudget();
+        final Metrics.Timer timer = requestTimer(uri);
+        final long start = timer.start();
+        try {
+            getAsyncClient().execute(toHttpGet(uri, requestHeaders, credential), new FutureCallback<HttpResponse>() {
+                @Override
+                public void completed(HttpResponse response) {
+                    try {
+                        learnFromResponse(response, credential);
+                        final Optional<Long> backoff = onStatus(response, attempt, firstAttemptMillis);
+                        if (backoff.isPresent()) {
+                            adjustRateRemaining(response, budget);
+                            EntityUtils.consumeQuietly(response.getEntity());
+                            retryLater(uri, requestHeaders, parser, attempt, firstAttemptMillis, result,
+                                    backoff.get());
+                        } else {
+                            result.set(tryGetResponse(response, parser, budget));
+                        }
+                    } catch (RuntimeException e) {
+                        result.setException(e);
+                    } finally {
+                        timer.stop(start);
+                    }
+                }
+
+                @Override
+                public void failed(Exception e) {
+                    CONNECTION_ERRORS.increment();
+                    timer.stop(start);
+                    budget.cancel();
+                    try {
+                        final Optional<Long> backoff = onConnectionError(e, attempt, firstAttemptMillis);
+                        if (backoff.isPresent()) {
+                            retryLater(uri, requestHeaders, parser, attempt, firstAttemptMillis, result,
+                                    backoff.get());
+                            return;
+                        }
+                    } catch (RuntimeException retryFailed) {
+                        e = retryFailed;
+                    }
+                    result.setException(e);
+                }
+
+                @Override
+                public void cancelled() {
+                    budget.cancel();
+                    circuitBreaker.release();
+                    result.cancel(false);
+                }
+            });
+        } catch (RuntimeException e) {
+            budget.cancel();
+            circuitBreaker.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Sends the request again once the backoff passed, unless the caller cancelled it or the helper was closed
+     * meanwhile.
+     *
+     * @param attempt that failed.
+     */
+    private <T> void retryLater(String uri, Map<String, String> requestHeaders, PayloadParser<T> parser, int attempt,
+                                long firstAttemptMillis, SettableFuture<Optional<ApiResponse<T>>> result,
+                                long backoffMillis) {
+        scheduleRetry(uri, requestHeaders, parser, attempt + 1, firstAttemptMillis, result, backoffMillis);
+    }
+
+    /**
+     * Runs the given attempt on the timer thread once the delay passed. All retries share that thread, so it never
+     * waits: if the rate limit does not allow the call yet, the attempt is scheduled again for when it does.
+     */
+    private <T> void scheduleRetry(final String uri, final Map<String, String> requestHeaders,
+                                   final PayloadParser<T> parser, final int attempt, final long firstAttemptMillis,
+                                   final SettableFuture<Optional<ApiResponse<T>>> result, long delayMillis) {
+        pendingRetries.add(result);
+        getRetryTimer().schedule(new Runnable() {
+            @Override
+            public void run() {
+                pendingRetries.remove(result);
+                if (result.isDone()) {
+                    return;
+                }
+                try {
+                    retry(uri, requestHeaders, parser, attempt, firstAttemptMillis, result);
+                } catch (RuntimeException e) {
+                    result.setException(e);
+                }
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private <T> void retry(String uri, Map<String, String> requestHeaders, PayloadParser<T> parser, int attempt,
+                           long firstAttemptMillis, SettableFuture<Optional<ApiResponse<T>>> result) {
+        if (!circuitBreaker.tryAcquire()) {
+            result.set(CommunicationHelper.<T>circuitOpen(uri));
+            return;
+        }
+        final CredentialPool.Credential credential = credentialPool.select();
+        final long waitMillis;
+        try {
+            waitMillis = credential.getRateLimitScheduler().tryAcquire();
+            Check.stateIsTrue(waitMillis >= 0, "Wanted to call the API but no rate limit remaining anymore.");
+        } catch (RuntimeException e) {
+            circuitBreaker.release();
+            throw e;
+        }
+        if (waitMillis > 0) {
+            circuitBreaker.release();
+            scheduleRetry(uri, requestHeaders, parser, attempt, firstAttemptMillis, result, waitMillis);
+            return;
+        }
+        sendAsync(uri, requestHeaders, parser, credential, attempt, firstAttemptMillis, result);
+    }
+
+    /**
+     * The request is signed by Scribe, but sent by one of the http clients.
+     */
+    private static HttpGet toHttpGet(String uri, Map<String, String> requestHeaders,
+                                     CredentialPool.Credential credential) {
+        final OAuthRequest request = credential.getOAuthHelper().getoAuthSignedRequest(uri);
+        final HttpGet result = new HttpGet(request.getCompleteUrl());
+        for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+            result.addHeader(header.getKey(), header.getValue());
+        }
+        for (Map.Entry<String, String> header : requestHeaders.entrySet()) {
+            result.addHeader(header.getKey(), header.getValue());
+        }
+        return result;
+    }
+
+    /**
+     * Creates the request anew for every attempt, signed for the given credential.
+     */
+    private interface RequestFactory {
+        HttpUriRequest create(CredentialPool.Credential credential);
+    }
+
+    private synchronized CloseableHttpAsyncClient getAsyncClient() {
+        if (asyncClient == null) {
+            asyncClient = HttpAsyncClients.custom()
+                    .setMaxConnTotal(MAX_ASYNC_CONNECTIONS)
+                    .setMaxConnPerRoute(MAX_ASYNC_CONNECTIONS)
+                    .build();
+            asyncClient.start();
+        }
+        return asyncClient;
+    }
+
+    private synchronized ScheduledExecutorService getRetryTimer() {
+        if (retryTimer == null) {
+            retryTimer = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                    .setNameFormat("retry-timer-%d")
+                    .setDaemon(true)
+                    .build());
+        }
+        return retryTimer;
+    }
+
+    /**
+     * Stops the asynchronous http client and the timer of retries, if they were started, and closes the connection
+     * pool this helper created. Requests that are still in flight or wait for a retry fail.
+     *
+     * @throws IOException
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (asyncClient != null) {
+            asyncClient.close();
+            asyncClient = null;
+        }
+        if (retryTimer != null) {
+            retryTimer.shutdownNow();
+            retryTimer = null;
+        }
+        for (SettableFuture<?> retry : pendingRetries) {
+            retry.setException(new IllegalStateException("Closed while waiting to send the request again"));
+        }
+        if (ownConnectionPool.isPresent()) {
+            ownConnectionPool.get().close();
+        }
+    }
+
+    /**
+     * Picks the credential with the most calls left and waits until its scheduler allows the next call.
+     *
+     * @return the credential the call was reserved for.
+     * @throws net.sf.qualitycheck.exception.IllegalStateOfArgumentException if no call is left and the end of the
+     *                                                                       window is not known.
+     */
+    private CredentialPool.Credential reserveApiCall() {
+        final CredentialPool.Credential credential = credentialPool.select();
+        final boolean reserved;
+        try {
+            reserved = credential.getRateLimitScheduler().acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        Check.stateIsTrue(reserved, "Wanted to call the API but no rate limit remaining anymore.");
+        return credential;
+    }
+
+    /**
+     * Tells the credential about the response, before its outcome is told to the circuit breaker. If that fails, the
+     * call is released, so a probe is not held forever.
+     *
+     * @return {@code true} if the request was rejected by a rate limit.
+     */
+    private boolean learnFromResponse(HttpResponse response, CredentialPool.Credential credential) {
+        try {
+            checkAuthorized(response, credential);
+            return isRateLimited(response, credential);
+        } catch (RuntimeException e) {
+            circuitBreaker.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Tells the credential if GitHub rejected its token, so it is not used by later runs.
+     */
+    private static void checkAuthorized(HttpResponse response, CredentialPool.Credential credential) {
+        if (response.getStatusLine().getStatusCode() == HttpStatus.SC_UNAUTHORIZED) {
+            credential.getOAuthHelper().rejected();
+        }
+    }
+
+    private static boolean isRateLimited(HttpResponse response, CredentialPool.Credential credential) {
+        return credential.getRateLimitScheduler().onResponse(response.getStatusLine().getStatusCode(),
+                getHeaders(response));
     }
 
     @VisibleForTesting
-    Optional<JsonElement> tryGetResponseAsJson(Response response) {
-        if (response.isSuccessful()) {
-            adjustRateRemaining(response);
-            return Optional.of(PARSER.parse(response.getBody()));
+    Optional<JsonElement> tryGetResponseAsJson(HttpResponse response) {
+        final Optional<ApiResponse<JsonElement>> apiResponse = tryGetResponse(response, PayloadParser.JSON_TREE,
+                credentialPool.select().getBudget());
+        return apiResponse.isPresent() ? Optional.of(apiResponse.get().getPayload()) : Optional.<JsonElement>absent();
+    }
+
+    /**
+     * @param budget of the credential the request was signed with.
+     */
+    private static <T> Optional<ApiResponse<T>> tryGetResponse(HttpResponse response, PayloadParser<T> parser,
+                                                               RateLimitBudget budget) {
+        final int statusCode = response.getStatusLine().getStatusCode();
+        if (statusCode == HttpStatus.SC_NOT_MODIFIED) {
+            budget.cancel();
+            return Optional.of(ApiResponse.<T>notModified(getHeaders(response)));
+        }
+        adjustRateRemaining(response, budget);
+        if (statusCode >= 200 && statusCode < 300) {
+            try {
+                return Optional.of(parse(response.getEntity().getContent(), getHeaders(response), parser));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
         } else {
+            STATUS_ERRORS.increment();
             System.out.println("Request call was not successful.");
-            System.out.println(response.getCode() + " status code");
-            System.out.println("Body:\n" + response.getBody());
+            System.out.println(statusCode + " status code");
+            System.out.println("Body:\n" + getBody(response));
             System.out.println();
             return Optional.absent();
         }
     }
 
-    private void adjustRateRemaining(Object response) {
-        if (response instanceof Response) {
-            apiCallsRemaining = Integer.parseInt(((Response) response).getHeader(HEADER_X_RATE_REMAINING));
-        } else if (response instanceof HttpResponse) {
-            final Header rateLimitHeader = ((HttpResponse) response).getHeaders(HEADER_X_RATE_REMAINING)[0];
-            apiCallsRemaining = Integer.parseInt(rateLimitHeader.getValue());
+    private static String getBody(HttpResponse response) {
+        try {
+            return response.getEntity() == null ? "" : EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            return "";
+        }
+    }
+
+    /**
+     * The body is parsed while it is read from the connection. It is never held as a whole.
+     */
+    private static <T> ApiResponse<T> parse(InputStream stream, Map<String, String> headers,
+                                            PayloadParser<T> parser) {
+        final CountingInputStream body = new CountingInputStream(stream);
+        final long start = PAYLOAD_PARSING.start();
+        try (JsonReader reader = new JsonReader(new InputStreamReader(body, StandardCharsets.UTF_8))) {
+            final T payload = parser.parse(reader);
+            PAYLOAD_PARSING.stop(start);
+            RECEIVED_BYTES.add(body.getCount());
+            return new ApiResponse<>(payload, headers, Ints.saturatedCast(body.getCount()));
+        } catch (IOException e) {
+            CONNECTION_ERRORS.increment();
+            System.out.println("I could not read the response body. Did the connection break?");
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static Map<String, String> getHeaders(HttpResponse response) {
+        Map<String, String> result = new LinkedHashMap<>();
+        for (Header header : response.getAllHeaders()) {
+            if (!result.containsKey(header.getName())) {
+                result.put(header.getName(), header.getValue());
+            }
+        }
+        return result;
+    }
+
+    private static void adjustRateRemaining(HttpResponse response, RateLimitBudget budget) {
+        adjustRateRemaining(getHeader(response, HEADER_X_RATE_REMAINING), getHeader(response, HEADER_X_RATE_RESET),
+                budget);
+    }
+
+    private static void adjustRateRemaining(String remaining, String reset, RateLimitBudget budget) {
+        if (remaining == null) {
+            budget.complete();
+        } else {
+            budget.reconcile(Integer.parseInt(remaining), reset == null ? 0 : Long.parseLong(reset));
         }
     }
 
+    private static String getHeader(HttpResponse response, String name) {
+        final Header[] headers = response.getHeaders(name);
+        return headers == null || headers.length == 0 ? null : headers[0].getValue();
+    }
+
     /**
      * @return {@code true} if and only if there are still calls allowed against the api - according to either the
-     * constructor parameter or the {@linkplain #HEADER_X_RATE_REMAINING} header of done requests.
+     * constructor parameter or the {@linkplain #HEADER_X_RATE_REMAINING} header of done requests - or the time the
+     * window resets is known, so the next call waits for it. Calls of any of the tokens count.
      */
+    @Override
     public boolean hasStillApiCallsLeft() {
-        return apiCallsRemaining > 0;
+        return credentialPool.hasCallsLeft();
+    }
+
+    /**
+     * @return the tokens whose budgets are shared by all calls of this helper.
+     */
+    public CredentialPool getCredentialPool() {
+        return credentialPool;
     }
 
     /**
@@ -90,11 +804,27 @@ public class CommunicationHelper {
      * @param url
      * @return true if and only if the url can be requested and the response status code is 200.
      */
+    @Override
     public boolean urlIsAvailable(String url) {
         Check.notNull(url, "url");
-        Check.stateIsTrue(hasStillApiCallsLeft(), "Wanted to call the API but no rate limit remaining anymore.");
-        HttpResponse response = callUrlWithoutoAuth(url);
-        return response.getStatusLine().getStatusCode() == 200;
+        final RateLimitBudget budget = reserveApiCall().getBudget();
+        final long start = REQUESTS_STATUS.start();
+        HttpResponse response = callUrlWithoutoAuth(url, budget);
+        try {
+            return response.getStatusLine().getStatusCode() == 200;
+        } finally {
+            EntityUtils.consumeQuietly(response.getEntity());
+            REQUESTS_STATUS.stop(start);
+        }
+    }
+
+    /**
+     * @return connections of the pool this helper created, absent if it was given an http client or pool.
+     */
+    public Optional<PoolStats> getConnectionPoolStats() {
+        return ownConnectionPool.isPresent()
+                ? Optional.of(ownConnectionPool.get().getStats())
+                : Optional.<PoolStats>absent();
     }
 
     /**
@@ -102,12 +832,14 @@ public class CommunicationHelper {
      * @return
      * @throws java.io.IOException as RuntimeException if e.g., this machine is not connected to the internet.
      */
-    private HttpResponse callUrlWithoutoAuth(String url) {
+    private HttpResponse callUrlWithoutoAuth(String url, RateLimitBudget budget) {
         try {
             HttpResponse response = httpClient.execute(new HttpGet(url));
-            adjustRateRemaining(response);
+            adjustRateRemaining(response, budget);
             return response;
         } catch (IOException e) {
+            CONNECTION_ERRORS.increment();
+            budget.cancel();
             System.out.println("I'm facing some connection problems. Are you connected to this internet thingy?");
             throw new RuntimeException(e);
         }
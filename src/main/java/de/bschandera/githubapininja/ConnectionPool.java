@@ -0,0 +1,107 @@
+package de.bschandera.githubapininja;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import net.sf.qualitycheck.Check;
+import org.apache.http.client.HttpClient;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLContexts;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Keep-alive connections to the GitHub api, shared by all blocking requests of the {@linkplain HttpClient} it
+ * provides. All TLS connections are opened with the same {@code SSLContext}, so later handshakes resume the session of
+ * an earlier one.</p>
+ * <p>Connections that were idle for longer than the idle timeout are closed by a background thread, before the server
+ * closes them on its own. {@linkplain #close()} closes all connections and stops the thread.</p>
+ */
+public class ConnectionPool implements Closeable {
+    private static final int DEFAULT_MAX_TOTAL = 50;
+    private static final int DEFAULT_MAX_PER_ROUTE = 20;
+    private static final long DEFAULT_IDLE_TIMEOUT_SECONDS = 30;
+
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient httpClient;
+    private final ScheduledExecutorService evictor;
+
+    /**
+     * At most {@value #DEFAULT_MAX_PER_ROUTE} connections per host, {@value #DEFAULT_MAX_TOTAL} in total, which are
+     * closed after {@value #DEFAULT_IDLE_TIMEOUT_SECONDS} seconds without a request.
+     */
+    public ConnectionPool() {
+        this(DEFAULT_MAX_TOTAL, DEFAULT_MAX_PER_ROUTE, DEFAULT_IDLE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * @param maxTotal    maximal number of connections, must be greater than 0.
+     * @param maxPerRoute maximal number of connections to the same host, must be greater than 0.
+     * @param idleTimeout connections without a request for that long are closed, must be greater than 0.
+     * @param unit
+     */
+    public ConnectionPool(int maxTotal, int maxPerRoute, long idleTimeout, TimeUnit unit) {
+        Check.greaterThan(0, maxTotal, "maxTotal");
+        Check.greaterThan(0, maxPerRoute, "maxPerRoute");
+        Check.greaterThan(0L, idleTimeout, "idleTimeout");
+        Check.notNull(unit, "unit");
+
+        connectionManager = new PoolingHttpClientConnectionManager(RegistryBuilder.<ConnectionSocketFactory>create()
+                .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                .register("https", new SSLConnectionSocketFactory(SSLContexts.createDefault(),
+                        SSLConnectionSocketFactory.BROWSER_COMPATIBLE_HOSTNAME_VERIFIER))
+                .build());
+        connectionManager.setMaxTotal(maxTotal);
+        connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+        httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                // there are no client certificates, so every connection may be reused by every request
+                .disableConnectionState()
+                // failed requests are sent again by the retry policy of the CommunicationHelper
+                .disableAutomaticRetries()
+                .build();
+
+        evictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("connection-evictor-%d")
+                .setDaemon(true)
+                .build());
+        final long idleTimeoutMillis = unit.toMillis(idleTimeout);
+        evictor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                connectionManager.closeExpiredConnections();
+                connectionManager.closeIdleConnections(idleTimeoutMillis, TimeUnit.MILLISECONDS);
+            }
+        }, idleTimeoutMillis, Math.max(1, idleTimeoutMillis / 2), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return client that takes its connections from this pool. Connections only go back to the pool if the entity
+     * of the response is consumed.
+     */
+    public HttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    /**
+     * @return number of leased and available connections, and of requests waiting for one.
+     */
+    public PoolStats getStats() {
+        return connectionManager.getTotalStats();
+    }
+
+    @Override
+    public void close() throws IOException {
+        evictor.shutdownNow();
+        httpClient.close();
+    }
+}
@@ -0,0 +1,319 @@
+package de.bschandera.githubapininja;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import net.sf.qualitycheck.Check;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>Progress of a crawl, kept on disk so the next run goes on where the last one stopped. The file is an append-only
+ * log with one JSON line per crawled repository: its id and its languages. Lines are written right away, but only
+ * forced to the disk every {@code syncInterval} repositories, so a crash loses at most that many of them.</p>
+ * <p>Opening a checkpoint replays the log into the id to continue {@linkplain #getSinceId() since}, the number of
+ * {@linkplain #getRepositories() repositories} and the {@linkplain #snapshot() sums per language}. A long log is
+ * compacted into a single snapshot line, when it is opened and while repositories are recorded, so restarting costs
+ * the same no matter how long the crawl ran. A line that was torn by a crash is dropped.</p>
+ * <p>All methods are thread-safe.</p>
+ */
+public class CrawlCheckpoint implements Closeable {
+    private static final Gson GSON = new Gson();
+    private static final String TYPE_REPOSITORY = "repository";
+    private static final String TYPE_SNAPSHOT = "snapshot";
+    /**
+     * Lines after the last snapshot that make the log be compacted.
+     */
+    private static final int COMPACT_AFTER_LINES = 10000;
+
+    private final File file;
+    private final int syncInterval;
+    private final int compactAfterLines;
+    private LanguageAggregator aggregator = new LanguageAggregator();
+    private long sinceId;
+    private long repositories;
+    private FileOutputStream out;
+    private Writer writer;
+    private int unsynced;
+    private int linesAfterSnapshot;
+
+    private CrawlCheckpoint(File file, int syncInterval, int compactAfterLines) {
+        this.file = file;
+        this.syncInterval = syncInterval;
+        this.compactAfterLines = compactAfterLines;
+    }
+
+    /**
+     * Replays the given log, if it exists, and opens it for appending.
+     *
+     * @param file         where the log is stored.
+     * @param syncInterval number of repositories after which the log is forced to the disk, must be greater than 0.
+     * @return
+     * @throws IOException if the file exists but cannot be read, or cannot be written.
+     */
+    public static CrawlCheckpoint open(File file, int syncInterval) throws IOException {
+        return open(file, syncInterval, COMPACT_AFTER_LINES);
+    }
+
+    @VisibleForTesting
+    static CrawlCheckpoint open(File file, int syncInterval, int compactAfterLines) throws IOException {
+        Check.notNull(file, "file");
+        Check.greaterThan(0, syncInterval, "syncInterval");
+        Check.greaterThan(0, compactAfterLines, "compactAfterLines");
+        final CrawlCheckpoint result = new CrawlCheckpoint(file, syncInterval, compactAfterLines);
+        final boolean compact = file.exists() && result.replay();
+        if (compact) {
+            result.writeSnapshot();
+        }
+        result.openForAppending();
+        return result;
+    }
+
+    /**
+     * Appends a crawled repository to the log. Once the log is long, it is compacted the next time it is forced to the
+     * disk.
+     *
+     * @param repository with its languages.
+     * @throws IOException
+     */
+    public synchronized void record(Repository repository) throws IOException {
+        Check.notNull(repository, "repository");
+        Check.stateIsTrue(writer != null, "The checkpoint is closed.");
+        final Line line = new Line();
+        line.type = TYPE_REPOSITORY;
+        line.id = repository.getId();
+        line.languages = toMap(repository.getLanguages());
+        writer.write(GSON.toJson(line));
+        writer.write('\n');
+        apply(line);
+        linesAfterSnapshot++;
+        if (++unsynced >= syncInterval) {
+            sync();
+            if (linesAfterSnapshot > compactAfterLines) {
+                compact();
+            }
+        }
+    }
+
+    /**
+     * Forces all recorded repositories to the disk.
+     *
+     * @throws IOException
+     */
+    public synchronized void sync() throws IOException {
+        if (writer != null) {
+            writer.flush();
+            out.getChannel().force(false);
+            unsynced = 0;
+        }
+    }
+
+    /**
+     * Replaces the log with a single snapshot of the current progress.
+     *
+     * @throws IOException
+     */
+    public synchronized void compact() throws IOException {
+        closeWriter();
+        writeSnapshot();
+        openForAppending();
+    }
+
+    /**
+     * Forgets all progress, the next crawl starts from the beginning.
+     *
+     * @throws IOException
+     */
+    public synchronized void clear() throws IOException {
+        aggregator = new LanguageAggregator();
+        sinceId = 0;
+        repositories = 0;
+        compact();
+    }
+
+    /**
+     * @return the highest id of the recorded repositories, {@code 0} if none was recorded.
+     */
+    public synchronized long getSinceId() {
+        return sinceId;
+    }
+
+    public synchronized long getRepositories() {
+        return repositories;
+    }
+
+    /**
+     * @return statistics of all recorded repositories, including those of earlier runs.
+     */
+    public synchronized LanguageStatistics.Snapshot snapshot() {
+        return new LanguageStatistics.Snapshot(repositories, aggregator);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        closeWriter();
+    }
+
+    /**
+     * @return {@code true} if the log should be compacted, because it is long or its last line was torn.
+     */
+    private boolean replay() throws IOException {
+        boolean torn = false;
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String text;
+            while ((text = reader.readLine()) != null) {
+                if (text.isEmpty()) {
+                    continue;
+                }
+                final Line line;
+                try {
+                    line = GSON.fromJson(text, Line.class);
+                } catch (JsonParseException e) {
+                    // only the last line can be torn, everything after it was never written
+                    torn = true;
+                    break;
+                }
+                apply(line);
+                linesAfterSnapshot = TYPE_SNAPSHOT.equals(line.type) ? 0 : linesAfterSnapshot + 1;
+            }
+        }
+        return torn || !endsWithNewline() || linesAfterSnapshot > compactAfterLines;
+    }
+
+    private boolean endsWithNewline() throws IOException {
+        try (RandomAccessFile log = new RandomAccessFile(file, "r")) {
+            if (log.length() == 0) {
+                return true;
+            }
+            log.seek(log.length() - 1);
+            return log.read() == '\n';
+        }
+    }
+
+    private void apply(Line line) {
+        if (TYPE_SNAPSHOT.equals(line.type)) {
+            aggregator = new LanguageAggregator();
+            addSums(line);
+            sinceId = line.since;
+            repositories = line.repositories;
+        } else {
+            aggregator.add(new Repository(line.id, toLanguages(line.languages)));
+            sinceId = Math.max(sinceId, Long.parseLong(line.id));
+            repositories++;
+        }
+    }
+
+    private void addSums(Line snapshot) {
+        if (snapshot.languages == null) {
+            return;
+        }
+        for (Map.Entry<String, BigDecimal> language : snapshot.languages.entrySet()) {
+            final Long repositoriesOfLanguage = snapshot.repositoriesPerLanguage == null
+                    ? null : snapshot.repositoriesPerLanguage.get(language.getKey());
+            aggregator.addSum(new Language(language.getKey(), language.getValue()),
+                    repositoriesOfLanguage == null ? 1 : repositoriesOfLanguage,
+                    snapshot.shares == null ? null : snapshot.shares.get(language.getKey()));
+        }
+    }
+
+    private static List<Language> toLanguages(Map<String, BigDecimal> languages) {
+        List<Language> result = new ArrayList<>();
+        if (languages != null) {
+            for (Map.Entry<String, BigDecimal> language : languages.entrySet()) {
+                result.add(new Language(language.getKey(), language.getValue()));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Writes the snapshot next to the log and moves it over the log, so a crash while writing leaves the old log
+     * intact.
+     */
+    private void writeSnapshot() throws IOException {
+        final File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Cannot create directory " + parent);
+        }
+
+        final Line snapshot = new Line();
+        snapshot.type = TYPE_SNAPSHOT;
+        snapshot.since = sinceId;
+        snapshot.repositories = repositories;
+        snapshot.languages = toMap(aggregator.getLanguages());
+        snapshot.repositoriesPerLanguage = new LinkedHashMap<>();
+        snapshot.shares = new LinkedHashMap<>();
+        for (String name : snapshot.languages.keySet()) {
+            snapshot.repositoriesPerLanguage.put(name, aggregator.getRepositories(name));
+            final int[] shares = aggregator.getShares(name);
+            if (shares != null) {
+                snapshot.shares.put(name, shares);
+            }
+        }
+        final File temporary = new File(file.getPath() + ".tmp");
+        try (FileOutputStream stream = new FileOutputStream(temporary);
+             Writer snapshotWriter = new OutputStreamWriter(stream, StandardCharsets.UTF_8)) {
+            snapshotWriter.write(GSON.toJson(snapshot));
+            snapshotWriter.write('\n');
+            snapshotWriter.flush();
+            stream.getChannel().force(false);
+        }
+        Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        linesAfterSnapshot = 0;
+    }
+
+    private void openForAppending() throws IOException {
+        final File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Cannot create directory " + parent);
+        }
+        out = new FileOutputStream(file, true);
+        writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+    }
+
+    private void closeWriter() throws IOException {
+        if (writer != null) {
+            sync();
+            writer.close();
+            writer = null;
+            out = null;
+        }
+    }
+
+    private static LinkedHashMap<String, BigDecimal> toMap(List<Language> languages) {
+        LinkedHashMap<String, BigDecimal> result = new LinkedHashMap<>();
+        for (Language language : languages) {
+            result.put(language.getName(), language.getBytes());
+        }
+        return result;
+    }
+
+    /**
+     * Shape of a line in the log. Either a crawled repository, or a snapshot of all lines before it.
+     */
+    private static class Line {
+        private String type;
+        private String id;
+        private long since;
+        private long repositories;
+        private LinkedHashMap<String, BigDecimal> languages;
+        /**
+         * Of a snapshot only.
+         */
+        private LinkedHashMap<String, Long> repositoriesPerLanguage;
+        /**
+         * Of a snapshot only, see {@linkplain LanguageAggregator#getShares(String)}.
+         */
+        private LinkedHashMap<String, int[]> shares;
+    }
+}
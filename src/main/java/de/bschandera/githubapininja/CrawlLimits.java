@@ -0,0 +1,89 @@
+package de.bschandera.githubapininja;
+
+import net.sf.qualitycheck.Check;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Bounds of a crawl over the public repositories: the range of repository ids, the maximal number of repositories
+ * and the time the crawl may take. Instances are immutable, every {@code with...} method returns a copy.</p>
+ * <p>{@code CrawlLimits.unbounded().withMaxRepositories(500).withTimeBudget(10, TimeUnit.MINUTES)}</p>
+ */
+public class CrawlLimits {
+    private static final CrawlLimits UNBOUNDED = new CrawlLimits(0, Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE);
+
+    private final long sinceId;
+    private final long untilId;
+    private final long maxRepositories;
+    private final long timeBudgetNanos;
+
+    private CrawlLimits(long sinceId, long untilId, long maxRepositories, long timeBudgetNanos) {
+        this.sinceId = sinceId;
+        this.untilId = untilId;
+        this.maxRepositories = maxRepositories;
+        this.timeBudgetNanos = timeBudgetNanos;
+    }
+
+    /**
+     * @return limits that let the crawl go on until GitHub runs out of repositories or api calls.
+     */
+    public static CrawlLimits unbounded() {
+        return UNBOUNDED;
+    }
+
+    /**
+     * @param sinceId only repositories with an id greater than this are crawled.
+     */
+    public CrawlLimits withSinceId(long sinceId) {
+        Check.notNegative(sinceId, "sinceId");
+        return new CrawlLimits(sinceId, untilId, maxRepositories, timeBudgetNanos);
+    }
+
+    /**
+     * @param untilId only repositories with an id lower or equal to this are crawled.
+     */
+    public CrawlLimits withUntilId(long untilId) {
+        Check.notNegative(untilId, "untilId");
+        return new CrawlLimits(sinceId, untilId, maxRepositories, timeBudgetNanos);
+    }
+
+    public CrawlLimits withMaxRepositories(long maxRepositories) {
+        Check.notNegative(maxRepositories, "maxRepositories");
+        return new CrawlLimits(sinceId, untilId, maxRepositories, timeBudgetNanos);
+    }
+
+    /**
+     * No more repositories are handed out once the given time has passed since the crawl started.
+     */
+    public CrawlLimits withTimeBudget(long duration, TimeUnit unit) {
+        Check.notNegative(duration, "duration");
+        Check.notNull(unit, "unit");
+        return new CrawlLimits(sinceId, untilId, maxRepositories, unit.toNanos(duration));
+    }
+
+    public long getSinceId() {
+        return sinceId;
+    }
+
+    public long getUntilId() {
+        return untilId;
+    }
+
+    public long getMaxRepositories() {
+        return maxRepositories;
+    }
+
+    public long getTimeBudgetNanos() {
+        return timeBudgetNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "CrawlLimits{" +
+                "sinceId=" + sinceId +
+                ", untilId=" + untilId +
+                ", maxRepositories=" + maxRepositories +
+                ", timeBudgetNanos=" + timeBudgetNanos +
+                '}';
+    }
+}
@@ -0,0 +1,222 @@
+package de.bschandera.githubapininja;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import net.sf.qualitycheck.Check;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * <p>Access tokens of several GitHub accounts, each with its own rate limit. Every token gets its own
+ * {@linkplain RateLimitBudget} and {@linkplain RateLimitScheduler}, and {@linkplain #select()} hands out the one with
+ * the most calls left. So a crawl can do as many calls per hour as all accounts together.</p>
+ * <p>Tokens are read from the {@value #TOKENS_VARIABLE} environment variable or from a file, without asking anyone.
+ * Only {@linkplain #interactive()} asks for a token on the console, as a single account did before.
+ * {@linkplain #load(TokenStore)} tries them in this order and keeps a token that was asked for in a
+ * {@linkplain TokenStore}, so only the first run asks.</p>
+ * <p>All methods are thread-safe.</p>
+ */
+public class CredentialPool {
+    /**
+     * Environment variable with access tokens, separated by commas or whitespace.
+     */
+    public static final String TOKENS_VARIABLE = "GITHUB_TOKENS";
+    private static final int INITIAL_BUDGET = 50; // default number for protected GitHub resources
+    private static final Splitter TOKEN_SPLITTER = Splitter.onPattern("[,\\s]+").omitEmptyStrings().trimResults();
+
+    private final List<Credential> credentials;
+
+    /**
+     * @param accessTokens at least one, each of a different account.
+     */
+    public CredentialPool(Collection<String> accessTokens) {
+        this(toCredentials(accessTokens));
+    }
+
+    CredentialPool(List<Credential> credentials) {
+        Check.notEmpty(credentials, "credentials");
+        Check.noNullElements(credentials, "credentials");
+        this.credentials = ImmutableList.copyOf(credentials);
+    }
+
+    /**
+     * @return a pool of one token that is asked for on the console with the first request.
+     */
+    public static CredentialPool interactive() {
+        return new CredentialPool(ImmutableList.of(new Credential(new OAuthHelper())));
+    }
+
+    /**
+     * @param tokenStore the token is added to it once it is authorized.
+     * @return a pool of one token that is asked for on the console with the first request.
+     */
+    public static CredentialPool interactive(TokenStore tokenStore) {
+        return new CredentialPool(ImmutableList.of(new Credential(new OAuthHelper(tokenStore))));
+    }
+
+    /**
+     * Tokens of the {@value #TOKENS_VARIABLE} environment variable, otherwise of the token store. Only if there are
+     * none, a token is asked for on the console with the first request and added to the store. Nothing is sent to
+     * GitHub before that request.
+     *
+     * @param tokenStore
+     * @return
+     * @throws IOException if the store exists but cannot be read.
+     */
+    public static CredentialPool load(TokenStore tokenStore) throws IOException {
+        Optional<CredentialPool> credentials = fromEnvironment();
+        if (!credentials.isPresent()) {
+            credentials = fromStore(tokenStore);
+        }
+        return credentials.isPresent() ? credentials.get() : interactive(tokenStore);
+    }
+
+    /**
+     * @return tokens of the {@value #TOKENS_VARIABLE} environment variable, absent if it is not set or empty.
+     */
+    public static Optional<CredentialPool> fromEnvironment() {
+        final String tokens = System.getenv(TOKENS_VARIABLE);
+        final List<String> accessTokens = tokens == null
+                ? ImmutableList.<String>of()
+                : ImmutableList.copyOf(TOKEN_SPLITTER.split(tokens));
+        return accessTokens.isEmpty()
+                ? Optional.<CredentialPool>absent()
+                : Optional.of(new CredentialPool(accessTokens));
+    }
+
+    /**
+     * Reads a file with one token per line. Empty lines and lines that start with {@code #} are skipped.
+     *
+     * @param file
+     * @return absent if the file does not exist or holds no token.
+     * @throws IOException if the file exists but cannot be read.
+     */
+    public static Optional<CredentialPool> fromFile(File file) throws IOException {
+        Check.notNull(file, "file");
+        final List<String> accessTokens = new TokenStore(file).read();
+        return accessTokens.isEmpty()
+                ? Optional.<CredentialPool>absent()
+                : Optional.of(new CredentialPool(accessTokens));
+    }
+
+    /**
+     * Same as {@linkplain #fromFile(File)}, but tokens GitHub rejects are removed from the store.
+     *
+     * @param tokenStore
+     * @return absent if the store does not exist or holds no token.
+     * @throws IOException if the store exists but cannot be read.
+     */
+    public static Optional<CredentialPool> fromStore(TokenStore tokenStore) throws IOException {
+        Check.notNull(tokenStore, "tokenStore");
+        final List<Credential> credentials = new ArrayList<>();
+        for (String accessToken : tokenStore.read()) {
+            credentials.add(new Credential(new OAuthHelper(accessToken, tokenStore)));
+        }
+        return credentials.isEmpty()
+                ? Optional.<CredentialPool>absent()
+                : Optional.of(new CredentialPool(credentials));
+    }
+
+    /**
+     * @return the credential with the most calls left. If no credential has calls left, the one whose window resets
+     * first, so the next call waits the shortest time.
+     */
+    public Credential select() {
+        Credential best = credentials.get(0);
+        for (int i = 1; i < credentials.size(); i++) {
+            if (hasMoreHeadroom(credentials.get(i), best)) {
+                best = credentials.get(i);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return {@code true} if any of the credentials can do a call now or after waiting for its window to reset.
+     */
+    public boolean hasCallsLeft() {
+        for (Credential credential : credentials) {
+            if (credential.getRateLimitScheduler().hasCallsLeft()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return number of calls all credentials have left in their current windows.
+     */
+    public long getRemaining() {
+        long result = 0;
+        for (Credential credential : credentials) {
+            result += credential.getBudget().getRemaining();
+        }
+        return result;
+    }
+
+    /**
+     * @return Immutable list of the credentials, in the order they were given.
+     */
+    public List<Credential> getCredentials() {
+        return credentials;
+    }
+
+    private static boolean hasMoreHeadroom(Credential candidate, Credential than) {
+        final int remaining = candidate.getBudget().getRemaining();
+        final int otherRemaining = than.getBudget().getRemaining();
+        if (remaining != otherRemaining || remaining > 0) {
+            return remaining > otherRemaining;
+        }
+        return resetOf(candidate) < resetOf(than);
+    }
+
+    private static long resetOf(Credential credential) {
+        final long reset = credential.getBudget().getResetEpochSeconds();
+        return reset == 0 ? Long.MAX_VALUE : reset;
+    }
+
+    private static List<Credential> toCredentials(Collection<String> accessTokens) {
+        Check.notEmpty(accessTokens, "accessTokens");
+        final List<Credential> result = new ArrayList<>(accessTokens.size());
+        for (String accessToken : accessTokens) {
+            result.add(new Credential(new OAuthHelper(accessToken)));
+        }
+        return result;
+    }
+
+    /**
+     * An access token together with the rate limit of its account.
+     */
+    public static class Credential {
+        private final OAuthHelper oAuthHelper;
+        private final RateLimitScheduler rateLimitScheduler;
+
+        Credential(OAuthHelper oAuthHelper) {
+            this(oAuthHelper, new RateLimitScheduler(new RateLimitBudget(INITIAL_BUDGET)));
+        }
+
+        Credential(OAuthHelper oAuthHelper, RateLimitScheduler rateLimitScheduler) {
+            Check.notNull(oAuthHelper, "oAuthHelper");
+            Check.notNull(rateLimitScheduler, "rateLimitScheduler");
+            this.oAuthHelper = oAuthHelper;
+            this.rateLimitScheduler = rateLimitScheduler;
+        }
+
+        public OAuthHelper getOAuthHelper() {
+            return oAuthHelper;
+        }
+
+        public RateLimitScheduler getRateLimitScheduler() {
+            return rateLimitScheduler;
+        }
+
+        public RateLimitBudget getBudget() {
+            return rateLimitScheduler.getBudget();
+        }
+    }
+}
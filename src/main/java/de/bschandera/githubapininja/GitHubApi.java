@@ -1,11 +1,18 @@
 package de.bschandera.githubapininja;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Optional;
-import com.google.gson.JsonElement;
+import com.google.common.base.Ticker;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.util.concurrent.Uninterruptibles;
 import net.sf.qualitycheck.Check;
+import net.sf.qualitycheck.exception.IllegalStateOfArgumentException;
 
-import java.math.BigDecimal;
+import java.io.File;
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * <p>Provide a convenient way to handle the public GitHub REST api v3. Hide away HTTP calls and also the necessary JSON
@@ -15,12 +22,65 @@ import java.util.*;
  */
 public class GitHubApi {
     private static final String URL_API_GITHUB_COM = "https://api.github.com";
-    private static final String URL_REPOSITORIES = URL_API_GITHUB_COM + "/repositories";
+    private static final String PATH_REPOSITORIES = "/repositories";
+    private static final String PATH_GRAPHQL = "/graphql";
+    private static final String HEADER_ETAG = "ETag";
+    private static final String HEADER_LAST_MODIFIED = "Last-Modified";
+    private static final String METRIC_AGGREGATION_SECONDS = "aggregation_seconds";
+    private static final String METRIC_AGGREGATION_SECONDS_HELP = "Time to aggregate languages, by source";
+    private static final Metrics.Timer AGGREGATION_REPOSITORIES =
+            Metrics.timer(METRIC_AGGREGATION_SECONDS, METRIC_AGGREGATION_SECONDS_HELP, "source", "repositories");
+    private static final Metrics.Timer AGGREGATION_CRAWLS =
+            Metrics.timer(METRIC_AGGREGATION_SECONDS, METRIC_AGGREGATION_SECONDS_HELP, "source", "crawls");
+    private static final Metrics.Counter CRAWLED_REPOSITORIES = Metrics.counter("crawled_repositories_total",
+            "Repositories that were crawled together with their languages");
+    private static final Metrics.Counter LANGUAGES_NOT_MODIFIED = Metrics.counter("languages_not_modified_total",
+            "Cached languages that GitHub confirmed to be unchanged");
 
-    private CommunicationHelper communicationHelper;
+    private final ApiClient apiClient;
+    private final String urlApi;
+    private final String urlRepositories;
+    private final Optional<LanguagesCache> languagesCache;
 
     public GitHubApi() {
-        communicationHelper = new CommunicationHelper();
+        this(new CommunicationHelper(), URL_API_GITHUB_COM, Optional.<LanguagesCache>absent());
+    }
+
+    /**
+     * Languages of repositories that are in the given cache are revalidated with a conditional request instead of
+     * being downloaded again. Unchanged languages are served from the cache and do not count against the rate limit.
+     *
+     * @param languagesCache
+     */
+    public GitHubApi(LanguagesCache languagesCache) {
+        this(new CommunicationHelper(), languagesCache);
+    }
+
+    /**
+     * @param apiClient e.g., a {@linkplain CommunicationHelper} decorated with a {@linkplain CachingApiClient}.
+     */
+    public GitHubApi(ApiClient apiClient) {
+        this(apiClient, URL_API_GITHUB_COM, Optional.<LanguagesCache>absent());
+    }
+
+    public GitHubApi(ApiClient apiClient, LanguagesCache languagesCache) {
+        this(apiClient, URL_API_GITHUB_COM, Optional.of(languagesCache));
+    }
+
+    @VisibleForTesting
+    GitHubApi(ApiClient apiClient, String urlApi) {
+        this(apiClient, urlApi, Optional.<LanguagesCache>absent());
+    }
+
+    @VisibleForTesting
+    GitHubApi(ApiClient apiClient, String urlApi, Optional<LanguagesCache> languagesCache) {
+        Check.notNull(apiClient, "apiClient");
+        Check.notEmpty(urlApi, "urlApi");
+        Check.notNull(languagesCache, "languagesCache");
+        this.apiClient = apiClient;
+        this.urlApi = urlApi;
+        urlRepositories = urlApi + PATH_REPOSITORIES;
+        this.languagesCache = languagesCache;
     }
 
     /**
@@ -43,73 +103,367 @@ public class GitHubApi {
      */
     public static List<Language> aggregateLanguagesOfRepos(Collection<Repository> repositories) {
         Check.noNullElements(repositories, "repositories");
+        final long start = AGGREGATION_REPOSITORIES.start();
+        final List<Language> result = new LanguageAggregator().addAll(repositories).getLanguages();
+        AGGREGATION_REPOSITORIES.stop(start);
+        return result;
+    }
 
-        Map<String, BigDecimal> bytesPerLanguage = cumulateBytesPerLanguage(repositories);
+    /**
+     * Same as {@linkplain #aggregateLanguagesOfRepos(Collection)}, but slices of the repositories are aggregated in
+     * parallel on the given pool.
+     *
+     * @return
+     */
+    public static List<Language> aggregateLanguagesOfRepos(Collection<Repository> repositories, ForkJoinPool pool) {
+        final long start = AGGREGATION_REPOSITORIES.start();
+        final List<Language> result = LanguageAggregator.aggregateInParallel(repositories, pool).getLanguages();
+        AGGREGATION_REPOSITORIES.stop(start);
+        return result;
+    }
 
-        List<Language> result = new ArrayList<>();
-        for (String languageName : bytesPerLanguage.keySet()) {
-            result.add(new Language(languageName, bytesPerLanguage.get(languageName)));
+    /**
+     * Same as {@linkplain #aggregateLanguagesOfRepos(Collection)}, but for repositories that were stored by
+     * {@linkplain ColumnarCrawlWriter}. The files are mapped into memory and aggregated one after the other, no
+     * {@linkplain Repository} is made.
+     *
+     * @param crawls files of {@linkplain ColumnarCrawlWriter}.
+     * @return
+     * @throws IOException if a file cannot be read.
+     */
+    public static List<Language> aggregateLanguagesOfCrawls(Collection<File> crawls) throws IOException {
+        Check.noNullElements(crawls, "crawls");
+        final long start = AGGREGATION_CRAWLS.start();
+        final LanguageAggregator aggregator = new LanguageAggregator();
+        for (File crawl : crawls) {
+            try (ColumnarCrawlReader reader = ColumnarCrawlReader.open(crawl)) {
+                reader.aggregateInto(aggregator);
+            }
         }
+        final List<Language> result = aggregator.getLanguages();
+        AGGREGATION_CRAWLS.stop(start);
         return result;
     }
 
-    private static Map<String, BigDecimal> cumulateBytesPerLanguage(Collection<Repository> repositories) {
-        Map<String, BigDecimal> bytesPerLanguage = initializeWithZeros(repositories);
-        for (Repository repository : repositories) {
-            for (Language language : repository.getLanguages()) {
-                BigDecimal cumulate = bytesPerLanguage.get(language.getName()).add(language.getBytes());
-                bytesPerLanguage.put(language.getName(), cumulate);
+    /**
+     * Ask GitHub API for public repositories. A {@linkplain Repository} is less detailed view on
+     * the data provided by GitHub. Given an api call limit, this method only returns at most limit - 1 repos.
+     *
+     * @return
+     */
+    public List<Repository> getPublicRepositories() {
+        List<Repository> result = new ArrayList<>();
+        for (Repository repo : getPublicRepositoriesWithoutLanguages()) {
+            if (!apiClient.hasStillApiCallsLeft()) {
+                System.out.println("No more api calls are allowed (X-RateLimit-Remaining = 0)\n");
+                break;
+            }
+
+            final Optional<List<Language>> languages = fetchLanguages(repo);
+            if (!languages.isPresent()) {
+                break;
             }
+            result.add(new Repository(repo.getId(), repo.getNodeId(), repo.getLanguagesURL(), languages.get()));
         }
-        return bytesPerLanguage;
+        return result;
     }
 
-    private static Map<String, BigDecimal> initializeWithZeros(Collection<Repository> repositories) {
-        Map<String, BigDecimal> bytesPerLanguage = new HashMap<>();
-        for (Repository repository : repositories) {
-            for (Language language : repository.getLanguages()) {
-                bytesPerLanguage.put(language.getName(), BigDecimal.ZERO);
-            }
+    /**
+     * Same as {@linkplain #getPublicRepositories()} but asks for the languages of up to {@code concurrency}
+     * repositories at the same time. The order of the result is the order GitHub lists the repositories in. As soon as
+     * a languages request fails or the api call limit is reached, the remaining requests are cancelled and only the
+     * repositories before that one are returned.
+     *
+     * @param concurrency maximal number of languages requests in flight, must be greater than 0.
+     * @return
+     */
+    public List<Repository> getPublicRepositories(int concurrency) {
+        Check.greaterThan(0, concurrency, "concurrency");
+        List<Repository> reposWithoutLanguages = getPublicRepositoriesWithoutLanguages();
+        if (reposWithoutLanguages.isEmpty()) {
+            return reposWithoutLanguages;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(concurrency, reposWithoutLanguages.size()));
+        try {
+            return fetchLanguagesConcurrently(reposWithoutLanguages, executor, Long.MAX_VALUE);
+        } finally {
+            executor.shutdownNow();
         }
-        return bytesPerLanguage;
     }
 
     /**
-     * Ask GitHub API for public repositories. A {@linkplain Repository} is less detailed view on
-     * the data provided by GitHub. Given an api call limit, this method only returns at most limit - 1 repos.
+     * Same as {@linkplain #getPublicRepositories()} but the languages of {@code batchSize} repositories are asked for
+     * with a single GraphQL request, see {@linkplain BatchLanguagesFetcher}. Languages are not revalidated with the
+     * languages cache, a batch is cheaper than even the conditional requests for its repositories.
      *
+     * @param batchSize repositories per request, between 1 and {@value BatchLanguagesFetcher#MAX_BATCH_SIZE}.
      * @return
      */
-    public List<Repository> getPublicRepositories() {
-        // TODO make call easier (i.e., give json response into this method as a parameter)
-        final Optional<JsonElement> responseAsJson = communicationHelper.getResponseAsJson(URL_REPOSITORIES);
-        if (!responseAsJson.isPresent()) {
-            return Collections.emptyList();
+    public List<Repository> getPublicRepositoriesInBatches(int batchSize) {
+        final BatchLanguagesFetcher fetcher = new BatchLanguagesFetcher(apiClient, urlApi + PATH_GRAPHQL, batchSize);
+        return fetcher.fetchLanguages(getPublicRepositoriesWithoutLanguages());
+    }
+
+    /**
+     * <p>Same as {@linkplain #getPublicRepositories(int)} but every languages request is a task of its own on the given
+     * executor. With an executor that starts a thread per task, e.g. {@code Executors.newVirtualThreadPerTaskExecutor()}
+     * on Java 21, all requests are in flight at the same time.</p>
+     * <p>Besides a failed request and the api call limit, the deadline ends the crawl as well. Either way, the requests
+     * that did not start yet are cancelled, running ones are interrupted, and the call returns only after they
+     * finished, so no request outlives it.</p>
+     *
+     * @param executor runs the languages requests, it is not shut down.
+     * @param timeout  time until the deadline, measured from the call.
+     * @param unit
+     * @return the repositories whose languages arrived before the crawl ended, in the order GitHub lists them.
+     */
+    public List<Repository> getPublicRepositories(ExecutorService executor, long timeout, TimeUnit unit) {
+        Check.notNull(executor, "executor");
+        Check.notNegative(timeout, "timeout");
+        Check.notNull(unit, "unit");
+        final long deadlineNanos = System.nanoTime() + unit.toNanos(timeout);
+        return fetchLanguagesConcurrently(getPublicRepositoriesWithoutLanguages(), executor, deadlineNanos);
+    }
+
+    private List<Repository> fetchLanguagesConcurrently(List<Repository> repos, ExecutorService executor,
+                                                        long deadlineNanos) {
+        List<LanguagesRequest> requests = new ArrayList<>();
+        List<Future<Optional<List<Language>>>> pendingLanguages = new ArrayList<>();
+        for (Repository repo : repos) {
+            final LanguagesRequest request = new LanguagesRequest(repo);
+            requests.add(request);
+            pendingLanguages.add(executor.submit(request));
         }
 
-        List<Repository> reposWithoutLanguages = ModelFactory.parseRepos(responseAsJson.get().getAsJsonArray());
         List<Repository> result = new ArrayList<>();
-        for (Repository repo : reposWithoutLanguages) {
-            if (!communicationHelper.hasStillApiCallsLeft()) {
-                System.out.println("No more api calls are allowed (X-RateLimit-Remaining = 0)\n");
+        for (int i = 0; i < repos.size(); i++) {
+            final Optional<Optional<List<Language>>> languages = await(pendingLanguages.get(i), deadlineNanos);
+            if (!languages.isPresent()) {
+                System.out.println("The deadline has passed, the remaining requests are cancelled.\n");
+                cancelAll(requests.subList(i, requests.size()), pendingLanguages.subList(i, pendingLanguages.size()));
                 break;
             }
-
-            final Optional<JsonElement> languagesAsJson = communicationHelper.getResponseAsJson(repo.getLanguagesURL());
-            if (!languagesAsJson.isPresent()) {
+            if (!languages.get().isPresent()) {
+                if (!apiClient.hasStillApiCallsLeft()) {
+                    System.out.println("No more api calls are allowed (X-RateLimit-Remaining = 0)\n");
+                }
+                cancelAll(requests.subList(i + 1, requests.size()),
+                        pendingLanguages.subList(i + 1, pendingLanguages.size()));
                 break;
             }
-            List<Language> languages = ModelFactory.parseLanguages(languagesAsJson.get().getAsJsonObject());
-            repo.setLanguages(languages);
-            result.add(repo);
+            final Repository repo = repos.get(i);
+            result.add(new Repository(repo.getId(), repo.getNodeId(), repo.getLanguagesURL(), languages.get().get()));
         }
         return result;
     }
 
+    /**
+     * @return absent if the deadline passed before the result was there.
+     */
+    private static <T> Optional<T> await(Future<T> future, long deadlineNanos) {
+        try {
+            if (deadlineNanos == Long.MAX_VALUE) {
+                return Optional.of(future.get());
+            }
+            return Optional.of(future.get(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS));
+        } catch (TimeoutException e) {
+            return Optional.absent();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    private static void cancelAll(List<LanguagesRequest> requests, List<? extends Future<?>> futures) {
+        for (Future<?> future : futures) {
+            future.cancel(true);
+        }
+        for (LanguagesRequest request : requests) {
+            request.cancelAndAwait();
+        }
+    }
+
+    /**
+     * <p>Crawl through the public repositories of GitHub, following GitHub's pagination. Every {@linkplain Repository}
+     * comes with its languages. Pages and languages are only requested when the iterator is asked for the next
+     * repository, and only the current page is held in memory.</p>
+     * <p>The crawl ends when the given limits are reached, GitHub has no more repositories, the api call limit is
+     * reached or a request fails.</p>
+     *
+     * @param limits
+     * @return lazy iterator of repositories in the order of their ids.
+     */
+    public Iterator<Repository> crawlPublicRepositories(CrawlLimits limits) {
+        Check.notNull(limits, "limits");
+        return new RepositoriesWithLanguages(
+                new RepositoryCrawler(apiClient, urlRepositories, limits, Ticker.systemTicker()));
+    }
+
+    /**
+     * <p>Same as {@linkplain #crawlPublicRepositories(CrawlLimits)}, but goes on where the crawl of the given
+     * checkpoint stopped, and records every repository in the checkpoint before it is handed out. Repositories of the
+     * checkpoint count towards the maximal number of repositories of the limits.</p>
+     * <p>Recording may fail, e.g. when the disk is full. The iterator throws a {@linkplain RuntimeException} then,
+     * everything recorded before is kept.</p>
+     *
+     * @param limits
+     * @param checkpoint open, it is not closed at the end of the crawl.
+     * @return lazy iterator of the repositories that are not in the checkpoint, in the order of their ids.
+     */
+    public Iterator<Repository> crawlPublicRepositories(CrawlLimits limits, CrawlCheckpoint checkpoint) {
+        Check.notNull(limits, "limits");
+        Check.notNull(checkpoint, "checkpoint");
+        final long remaining = Math.max(0, limits.getMaxRepositories() - checkpoint.getRepositories());
+        final CrawlLimits resumed = limits
+                .withSinceId(Math.max(limits.getSinceId(), checkpoint.getSinceId()))
+                .withMaxRepositories(remaining);
+        return new CheckpointedRepositories(crawlPublicRepositories(resumed), checkpoint);
+    }
+
+    private List<Repository> getPublicRepositoriesWithoutLanguages() {
+        final Optional<ApiResponse<List<Repository>>> response =
+                apiClient.getResponse(urlRepositories, ModelFactory.REPOS_PARSER);
+        if (!response.isPresent()) {
+            return Collections.emptyList();
+        }
+        return response.get().getPayload();
+    }
+
     /**
      * @return true if and only if response status of GitHub api == 200
      */
     public boolean isAvailable() {
-        return communicationHelper.urlIsAvailable(URL_API_GITHUB_COM);
+        return apiClient.urlIsAvailable(urlApi);
+    }
+
+    /**
+     * Asks for the languages of a single repository. The result is absent if the request was not successful, there
+     * are no api calls left or it was cancelled before it started.
+     */
+    private class LanguagesRequest implements Callable<Optional<List<Language>>> {
+        private final Repository repository;
+        private final AtomicBoolean started = new AtomicBoolean();
+        private final CountDownLatch finished = new CountDownLatch(1);
+
+        LanguagesRequest(Repository repository) {
+            this.repository = repository;
+        }
+
+        @Override
+        public Optional<List<Language>> call() {
+            if (!started.compareAndSet(false, true)) {
+                return Optional.absent();
+            }
+            try {
+                return fetchLanguages(repository);
+            } finally {
+                finished.countDown();
+            }
+        }
+
+        /**
+         * Keeps the request from starting. If it started already, waits until it finished.
+         */
+        void cancelAndAwait() {
+            if (!started.compareAndSet(false, true)) {
+                Uninterruptibles.awaitUninterruptibly(finished);
+            }
+        }
+    }
+
+    /**
+     * Hands out the repositories of the given iterator together with their languages. Ends as soon as the languages of a
+     * repository cannot be fetched.
+     */
+    private class RepositoriesWithLanguages extends AbstractIterator<Repository> {
+        private final Iterator<Repository> repositories;
+
+        RepositoriesWithLanguages(Iterator<Repository> repositories) {
+            this.repositories = repositories;
+        }
+
+        @Override
+        protected Repository computeNext() {
+            if (!repositories.hasNext()) {
+                return endOfData();
+            }
+            final Repository repository = repositories.next();
+            final Optional<List<Language>> languages = fetchLanguages(repository);
+            if (!languages.isPresent()) {
+                return endOfData();
+            }
+            CRAWLED_REPOSITORIES.increment();
+            return new Repository(repository.getId(), repository.getNodeId(), repository.getLanguagesURL(),
+                    languages.get());
+        }
+    }
+
+    /**
+     * Records every repository of the given iterator in the checkpoint before handing it out.
+     */
+    private static class CheckpointedRepositories extends AbstractIterator<Repository> {
+        private final Iterator<Repository> repositories;
+        private final CrawlCheckpoint checkpoint;
+
+        CheckpointedRepositories(Iterator<Repository> repositories, CrawlCheckpoint checkpoint) {
+            this.repositories = repositories;
+            this.checkpoint = checkpoint;
+        }
+
+        @Override
+        protected Repository computeNext() {
+            if (!repositories.hasNext()) {
+                return endOfData();
+            }
+            final Repository repository = repositories.next();
+            try {
+                checkpoint.record(repository);
+            } catch (IOException e) {
+                throw new RuntimeException("Cannot record repository " + repository.getId() + " in the checkpoint", e);
+            }
+            return repository;
+        }
+    }
+
+    /**
+     * Asks GitHub for the languages of the given repository. If they are cached, GitHub is only asked whether they
+     * changed.
+     *
+     * @return absent if the request was not successful or there are no api calls left.
+     */
+    private Optional<List<Language>> fetchLanguages(Repository repository) {
+        if (!apiClient.hasStillApiCallsLeft()) {
+            return Optional.absent();
+        }
+
+        final String url = repository.getLanguagesURL();
+        final Optional<LanguagesCache.CachedLanguages> cached =
+                languagesCache.isPresent() ? languagesCache.get().get(url) : Optional.<LanguagesCache.CachedLanguages>absent();
+        final Optional<ApiResponse<List<Language>>> response;
+        try {
+            response = apiClient.getResponse(url, cached.isPresent()
+                    ? cached.get().conditionalRequestHeaders() : Collections.<String, String>emptyMap(),
+                    ModelFactory.LANGUAGES_PARSER);
+        } catch (IllegalStateOfArgumentException e) {
+            // another request used up the last api call in the meantime
+            return Optional.absent();
+        }
+        if (!response.isPresent()) {
+            return Optional.absent();
+        }
+        if (response.get().isNotModified()) {
+            LANGUAGES_NOT_MODIFIED.increment();
+            return cached.isPresent() ? Optional.of(cached.get().getLanguages()) : Optional.<List<Language>>absent();
+        }
+
+        final List<Language> languages = response.get().getPayload();
+        if (languagesCache.isPresent()) {
+            languagesCache.get().put(url, new LanguagesCache.CachedLanguages(languages,
+                    response.get().getHeader(HEADER_ETAG), response.get().getHeader(HEADER_LAST_MODIFIED)));
+        }
+        return Optional.of(languages);
     }
 }
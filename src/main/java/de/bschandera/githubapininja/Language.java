@@ -7,6 +7,7 @@ import java.math.BigDecimal;
 public class Language {
     private final String name;
     private final BigDecimal bytes;
+    private final long bytesAsLong;
 
     /**
      * @param name  must not be an empty String.
@@ -14,9 +15,21 @@ public class Language {
      */
     public Language(String name, BigDecimal bytes) {
         Check.notEmpty(name, "name");
-        Check.notNegative(bytes.longValue(), "bytes");
+        Check.notNegative(bytes.signum(), "bytes");
         this.name = name;
         this.bytes = bytes;
+        bytesAsLong = asLong(bytes);
+    }
+
+    private static long asLong(BigDecimal bytes) {
+        if (bytes.scale() != 0) {
+            return -1;
+        }
+        try {
+            return bytes.longValueExact();
+        } catch (ArithmeticException e) {
+            return -1;
+        }
     }
 
     public String getName() {
@@ -32,6 +45,13 @@ public class Language {
         return bytes;
     }
 
+    /**
+     * @return {@linkplain #getBytes()} if it is an integral {@code long} with scale {@code 0}, otherwise {@code -1}.
+     */
+    long getBytesAsLong() {
+        return bytesAsLong;
+    }
+
     /**
      * @param o given object to compare this to.
      * @return If and only if this.name and this.bytes equal the given ones.
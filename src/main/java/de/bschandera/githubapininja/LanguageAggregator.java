@@ -0,0 +1,387 @@
+package de.bschandera.githubapininja;
+
+import com.google.common.base.Optional;
+import net.sf.qualitycheck.Check;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * <p>Sums up the bytes per language of any number of repositories in a single pass. Language names are mapped to
+ * consecutive ids once, the bytes are added to a {@code long} counter per id. Only if a counter would overflow, or the
+ * bytes of a {@linkplain Language} are no integral {@code long}, the sum of that language is continued as
+ * {@linkplain BigDecimal}. Adding a repository does not allocate, unless it brings a language that was not seen
+ * before.</p>
+ * <p>Repositories can be taken out again with {@linkplain #subtract(Repository)}, a language whose every occurrence
+ * was subtracted is no longer listed.</p>
+ * <p>Besides the sums, the aggregator counts the {@linkplain #getRepositories(String) repositories} of every language
+ * and, for repositories that are added as a whole, keeps a histogram of the share the language has in them. The
+ * histogram has one bucket per percent, so {@linkplain #getSharePercentile(String, double) percentiles} of the share
+ * are off by half a percent at most.</p>
+ * <p>Not thread-safe. To aggregate in parallel, every thread fills its own aggregator and they are combined with
+ * {@linkplain #merge(LanguageAggregator)}, see {@linkplain #aggregateInParallel(Collection, ForkJoinPool)}. With
+ * Java 8 streams this reads {@code collect(LanguageAggregator::new, LanguageAggregator::add,
+ * LanguageAggregator::merge)}.</p>
+ */
+public class LanguageAggregator {
+    private static final int INITIAL_CAPACITY = 64;
+    /**
+     * Repositories that are aggregated by a single task at least, smaller slices do not pay off their scheduling.
+     */
+    private static final int MIN_REPOSITORIES_PER_TASK = 1024;
+    /**
+     * One bucket per percent of share, {@code 0} to {@code 100} included.
+     */
+    private static final int SHARE_BUCKETS = 101;
+
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> names = new ArrayList<>();
+    private long[] counters = new long[INITIAL_CAPACITY];
+    /**
+     * Part of the sum that does not fit into the counter, {@code null} as long as everything fits.
+     */
+    private BigDecimal[] overflows = new BigDecimal[INITIAL_CAPACITY];
+    /**
+     * How often a language was added minus how often it was subtracted.
+     */
+    private long[] occurrences = new long[INITIAL_CAPACITY];
+    /**
+     * Number of repositories per percent of share, {@code null} until a repository with the language was added.
+     */
+    private int[][] shares = new int[INITIAL_CAPACITY][];
+    private int present;
+
+    public LanguageAggregator addAll(Iterable<Repository> repositories) {
+        Check.notNull(repositories, "repositories");
+        for (Repository repository : repositories) {
+            add(repository);
+        }
+        return this;
+    }
+
+    public LanguageAggregator add(Repository repository) {
+        Check.notNull(repository, "repository");
+        final List<Language> languages = repository.languages();
+        final double percentsPerByte = percentsPerByte(languages);
+        for (int i = 0; i < languages.size(); i++) {
+            final int id = addLanguage(languages.get(i));
+            if (percentsPerByte > 0) {
+                addShare(id, languages.get(i), percentsPerByte, 1);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Adds a language on its own. It counts as one repository, but without a share.
+     */
+    public LanguageAggregator add(Language language) {
+        Check.notNull(language, "language");
+        addLanguage(language);
+        return this;
+    }
+
+    /**
+     * Takes the languages of a repository out of the sums, e.g. before adding it again with changed languages.
+     *
+     * @param repository must have been added with the same languages before.
+     * @return this aggregator.
+     * @throws net.sf.qualitycheck.exception.IllegalStateOfArgumentException if more bytes of a language would be
+     *                                                                       subtracted than were added.
+     */
+    public LanguageAggregator subtract(Repository repository) {
+        Check.notNull(repository, "repository");
+        final List<Language> languages = repository.languages();
+        final double percentsPerByte = percentsPerByte(languages);
+        for (int i = 0; i < languages.size(); i++) {
+            subtract(languages.get(i));
+            final int id = ids.get(languages.get(i).getName());
+            if (percentsPerByte > 0 && shares[id] != null) {
+                addShare(id, languages.get(i), percentsPerByte, -1);
+            }
+        }
+        return this;
+    }
+
+    public LanguageAggregator subtract(Language language) {
+        Check.notNull(language, "language");
+        final Integer id = ids.get(language.getName());
+        Check.stateIsTrue(id != null && occurrences[id] > 0, "%s was not added.", language.getName());
+
+        final long bytes = language.getBytesAsLong();
+        if (bytes >= 0 && counters[id] >= bytes) {
+            counters[id] -= bytes;
+        } else {
+            final BigDecimal remaining = getBytes(id).subtract(language.getBytes());
+            Check.stateIsTrue(remaining.signum() >= 0, "More bytes of %s subtracted than added.", language.getName());
+            counters[id] = 0;
+            overflows[id] = remaining;
+        }
+        addOccurrences(id, -1);
+        if (occurrences[id] == 0) {
+            counters[id] = 0;
+            overflows[id] = null;
+            shares[id] = null;
+        }
+        return this;
+    }
+
+    /**
+     * Adds the sums of another aggregator to this one. Merging is associative and commutative regarding the sums.
+     * Languages that are new to this aggregator are appended in the order of the other one, so merging the
+     * aggregators of consecutive slices from left to right keeps the order of a sequential run.
+     *
+     * @param other is not changed.
+     * @return this aggregator.
+     */
+    public LanguageAggregator merge(LanguageAggregator other) {
+        Check.notNull(other, "other");
+        for (int otherId = 0; otherId < other.names.size(); otherId++) {
+            final int id = idOf(other.names.get(otherId));
+            addToCounter(id, other.counters[otherId]);
+            if (other.overflows[otherId] != null) {
+                overflows[id] = sum(overflows[id], other.overflows[otherId]);
+            }
+            if (other.shares[otherId] != null) {
+                addShares(id, other.shares[otherId]);
+            }
+            addOccurrences(id, other.occurrences[otherId]);
+        }
+        return this;
+    }
+
+    /**
+     * Splits the repositories into slices, aggregates them on the given pool and merges the results. The result is
+     * the same as the one of a sequential run, the order of the languages included.
+     *
+     * @param repositories are not modified while they are aggregated.
+     * @param pool
+     * @return the merged aggregator.
+     */
+    public static LanguageAggregator aggregateInParallel(Collection<Repository> repositories, ForkJoinPool pool) {
+        Check.noNullElements(repositories, "repositories");
+        Check.notNull(pool, "pool");
+        final List<Repository> slicable = repositories instanceof RandomAccess
+                ? (List<Repository>) repositories
+                : new ArrayList<>(repositories);
+        final int threshold = Math.max(MIN_REPOSITORIES_PER_TASK, slicable.size() / (4 * pool.getParallelism()));
+        return pool.invoke(new AggregateTask(slicable, 0, slicable.size(), threshold));
+    }
+
+    /**
+     * Adds the sum of a language that was aggregated elsewhere, e.g. restored from a
+     * {@linkplain CrawlCheckpoint}.
+     *
+     * @param repositories number of repositories the sum is made of, greater than 0.
+     * @param shares       histogram of {@linkplain #getShares(String)}, {@code null} if unknown.
+     */
+    void addSum(Language language, long repositories, int[] shares) {
+        Check.notNull(language, "language");
+        Check.greaterThan(0, repositories, "repositories");
+        final int id = addLanguage(language);
+        addOccurrences(id, repositories - 1);
+        if (shares != null) {
+            Check.stateIsTrue(shares.length == SHARE_BUCKETS, "shares must have %s buckets", SHARE_BUCKETS);
+            addShares(id, shares);
+        }
+    }
+
+    /**
+     * @return number of repositories with the given language, {@code 0} if it was not added.
+     */
+    public long getRepositories(String name) {
+        Check.notNull(name, "name");
+        final Integer id = ids.get(name);
+        return id == null ? 0 : occurrences[id];
+    }
+
+    /**
+     * Share of the given language in the repositories that have it, at the given percentile. E.g. the 50th
+     * percentile is the share that half of the repositories do not exceed.
+     *
+     * @param name
+     * @param percentile between {@code 0} and {@code 100}.
+     * @return the share between {@code 0} and {@code 1} with two decimal places, absent if no repository with the
+     * language was added as a whole.
+     */
+    public Optional<BigDecimal> getSharePercentile(String name, double percentile) {
+        Check.notNull(name, "name");
+        Check.stateIsTrue(percentile >= 0 && percentile <= 100, "percentile must be between 0 and 100");
+        final Integer id = ids.get(name);
+        if (id == null || shares[id] == null) {
+            return Optional.absent();
+        }
+        long count = 0;
+        for (int repositories : shares[id]) {
+            count += repositories;
+        }
+        if (count == 0) {
+            return Optional.absent();
+        }
+        // nearest rank
+        final long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        int bucket = 0;
+        while (seen + shares[id][bucket] < rank) {
+            seen += shares[id][bucket];
+            bucket++;
+        }
+        return Optional.of(BigDecimal.valueOf(bucket, 2));
+    }
+
+    /**
+     * @return copy of the histogram of the shares of the given language, {@code null} if there is none.
+     */
+    int[] getShares(String name) {
+        final Integer id = ids.get(name);
+        return id == null || shares[id] == null ? null : shares[id].clone();
+    }
+
+    /**
+     * @return number of distinct languages.
+     */
+    public int size() {
+        return present;
+    }
+
+    /**
+     * @return every language only once, in the order they were seen first, with the sum of their bytes.
+     */
+    public List<Language> getLanguages() {
+        List<Language> result = new ArrayList<>(present);
+        for (int id = 0; id < names.size(); id++) {
+            if (occurrences[id] > 0) {
+                result.add(new Language(names.get(id), getBytes(id)));
+            }
+        }
+        return result;
+    }
+
+    private void addToCounter(int id, long bytes) {
+        final long sum = counters[id] + bytes;
+        if (sum < 0) {
+            // both summands are not negative, so the counter overflowed
+            overflows[id] = sum(overflows[id], BigDecimal.valueOf(counters[id]));
+            counters[id] = bytes;
+        } else {
+            counters[id] = sum;
+        }
+    }
+
+    private int addLanguage(Language language) {
+        final int id = idOf(language.getName());
+        final long bytes = language.getBytesAsLong();
+        if (bytes < 0) {
+            overflows[id] = sum(overflows[id], language.getBytes());
+        } else {
+            addToCounter(id, bytes);
+        }
+        addOccurrences(id, 1);
+        return id;
+    }
+
+    private void addShare(int id, Language language, double percentsPerByte, int delta) {
+        if (shares[id] == null) {
+            shares[id] = new int[SHARE_BUCKETS];
+        }
+        shares[id][(int) (bytesOf(language) * percentsPerByte + 0.5)] += delta;
+    }
+
+    private void addShares(int id, int[] otherShares) {
+        if (shares[id] == null) {
+            shares[id] = new int[SHARE_BUCKETS];
+        }
+        for (int bucket = 0; bucket < SHARE_BUCKETS; bucket++) {
+            shares[id][bucket] += otherShares[bucket];
+        }
+    }
+
+    /**
+     * @return factor from the bytes of a language to its share of the given languages in percent, {@code 0} if they
+     * have no bytes at all. It is computed once per repository, so a share costs a multiplication.
+     */
+    private static double percentsPerByte(List<Language> languages) {
+        double bytesOfRepository = 0;
+        for (int i = 0; i < languages.size(); i++) {
+            bytesOfRepository += bytesOf(languages.get(i));
+        }
+        return bytesOfRepository > 0 ? (SHARE_BUCKETS - 1) / bytesOfRepository : 0;
+    }
+
+    private static double bytesOf(Language language) {
+        final long bytes = language.getBytesAsLong();
+        return bytes < 0 ? language.getBytes().doubleValue() : bytes;
+    }
+
+    private void addOccurrences(int id, long delta) {
+        final boolean wasPresent = occurrences[id] > 0;
+        occurrences[id] += delta;
+        if (!wasPresent && occurrences[id] > 0) {
+            present++;
+        } else if (wasPresent && occurrences[id] == 0) {
+            present--;
+        }
+    }
+
+    private BigDecimal getBytes(int id) {
+        final BigDecimal counter = BigDecimal.valueOf(counters[id]);
+        return overflows[id] == null ? counter : counter.add(overflows[id]);
+    }
+
+    private int idOf(String name) {
+        final Integer id = ids.get(name);
+        if (id != null) {
+            return id;
+        }
+
+        final int newId = names.size();
+        if (newId == counters.length) {
+            counters = Arrays.copyOf(counters, 2 * newId);
+            overflows = Arrays.copyOf(overflows, 2 * newId);
+            occurrences = Arrays.copyOf(occurrences, 2 * newId);
+            shares = Arrays.copyOf(shares, 2 * newId);
+        }
+        ids.put(name, newId);
+        names.add(name);
+        return newId;
+    }
+
+    private static BigDecimal sum(BigDecimal sum, BigDecimal bytes) {
+        return sum == null ? bytes : sum.add(bytes);
+    }
+
+    private static class AggregateTask extends RecursiveTask<LanguageAggregator> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Repository> repositories;
+        private final int from;
+        private final int to;
+        private final int threshold;
+
+        AggregateTask(List<Repository> repositories, int from, int to, int threshold) {
+            this.repositories = repositories;
+            this.from = from;
+            this.to = to;
+            this.threshold = threshold;
+        }
+
+        @Override
+        protected LanguageAggregator compute() {
+            if (to - from <= threshold) {
+                LanguageAggregator result = new LanguageAggregator();
+                for (int i = from; i < to; i++) {
+                    result.add(repositories.get(i));
+                }
+                return result;
+            }
+
+            final int middle = (from + to) >>> 1;
+            final AggregateTask right = new AggregateTask(repositories, middle, to, threshold);
+            right.fork();
+            final LanguageAggregator left = new AggregateTask(repositories, from, middle, threshold).compute();
+            return left.merge(right.join());
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package de.bschandera.githubapininja;
+
+import net.sf.qualitycheck.Check;
+
+import java.util.*;
+
+/**
+ * Ranks languages by their bytes, e.g. the result of {@linkplain GitHubApi#aggregateLanguagesOfRepos(Collection)}.
+ */
+public final class LanguageRanking {
+    /**
+     * Most bytes first. Languages with the same bytes are ordered by name.
+     */
+    public static final Comparator<Language> BY_BYTES_DESCENDING = new Comparator<Language>() {
+        @Override
+        public int compare(Language first, Language second) {
+            final int byBytes = second.getBytes().compareTo(first.getBytes());
+            return byBytes != 0 ? byBytes : first.getName().compareTo(second.getName());
+        }
+    };
+
+    private LanguageRanking() {
+    }
+
+    /**
+     * The {@code k} languages with the most bytes. Only {@code k} languages are kept in a heap while the languages are
+     * looked at once, so it takes {@code O(n log k)} instead of sorting all of them.
+     *
+     * @param languages
+     * @param k         not negative.
+     * @return at most {@code k} languages, most bytes first.
+     */
+    public static List<Language> top(Iterable<Language> languages, int k) {
+        Check.notNull(languages, "languages");
+        Check.notNegative(k, "k");
+        if (k == 0) {
+            return Collections.emptyList();
+        }
+        // the head of the heap is the smallest of the best k so far
+        final PriorityQueue<Language> best = new PriorityQueue<>(k, Collections.reverseOrder(BY_BYTES_DESCENDING));
+        for (Language language : languages) {
+            if (best.size() < k) {
+                best.add(language);
+            } else if (BY_BYTES_DESCENDING.compare(language, best.peek()) < 0) {
+                best.poll();
+                best.add(language);
+            }
+        }
+
+        final Language[] result = new Language[best.size()];
+        for (int i = result.length - 1; i >= 0; i--) {
+            result[i] = best.poll();
+        }
+        return Arrays.asList(result);
+    }
+}
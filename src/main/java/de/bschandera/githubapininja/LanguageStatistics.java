@@ -0,0 +1,136 @@
+package de.bschandera.githubapininja;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import net.sf.qualitycheck.Check;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * <p>Language statistics that grow while repositories are fetched. Every repository is added as soon as its
+ * languages are known, a {@linkplain #snapshot()} of the statistics so far can be taken at any time. Only the sums
+ * per language are kept, not the repositories, so memory depends on the number of languages only.</p>
+ * <p>A repository whose languages changed is {@linkplain #replace(Repository, Repository) replaced}, the old languages
+ * are taken out of the sums. All methods are thread-safe.</p>
+ * <p>A snapshot answers questions like the top 20 languages, the number of repositories of a language or the median
+ * share of a language in its repositories, without sorting all languages.</p>
+ */
+public class LanguageStatistics {
+    private final LanguageAggregator aggregator = new LanguageAggregator();
+    private long repositories;
+
+    public synchronized void add(Repository repository) {
+        aggregator.add(repository);
+        repositories++;
+    }
+
+    /**
+     * @param repository must have been added with the same languages before.
+     * @throws net.sf.qualitycheck.exception.IllegalStateOfArgumentException if it was not.
+     */
+    public synchronized void retract(Repository repository) {
+        aggregator.subtract(repository);
+        repositories--;
+    }
+
+    /**
+     * @param previous the repository as it was added before.
+     * @param current  the same repository with its current languages.
+     */
+    public synchronized void replace(Repository previous, Repository current) {
+        Check.notNull(current, "current");
+        aggregator.subtract(previous);
+        aggregator.add(current);
+    }
+
+    public synchronized Snapshot snapshot() {
+        return new Snapshot(repositories, aggregator);
+    }
+
+    /**
+     * Statistics at the time of {@linkplain LanguageStatistics#snapshot()}, it does not change afterwards.
+     */
+    public static class Snapshot {
+        private static final int SCALE_OF_SHARE = 6;
+
+        private final long repositories;
+        private final List<Language> languages;
+        private final BigDecimal bytesTotal;
+        /**
+         * Copy for the questions about single languages, it is never changed.
+         */
+        private final LanguageAggregator aggregator;
+
+        /**
+         * @param aggregator is copied.
+         */
+        Snapshot(long repositories, LanguageAggregator aggregator) {
+            this.repositories = repositories;
+            this.aggregator = new LanguageAggregator().merge(aggregator);
+            this.languages = ImmutableList.copyOf(this.aggregator.getLanguages());
+            BigDecimal total = BigDecimal.ZERO;
+            for (Language language : languages) {
+                total = total.add(language.getBytes());
+            }
+            bytesTotal = total;
+        }
+
+        /**
+         * @return number of repositories the statistics are made of.
+         */
+        public long getRepositories() {
+            return repositories;
+        }
+
+        /**
+         * @return Immutable list of every {@linkplain Language} once, with the sum of its bytes.
+         */
+        public List<Language> getLanguages() {
+            return languages;
+        }
+
+        public BigDecimal getBytesTotal() {
+            return bytesTotal;
+        }
+
+        /**
+         * @param k not negative.
+         * @return the {@code k} languages with the most bytes, most bytes first, see
+         * {@linkplain LanguageRanking#top(Iterable, int)}.
+         */
+        public List<Language> top(int k) {
+            return LanguageRanking.top(languages, k);
+        }
+
+        /**
+         * @return number of repositories that have the given language.
+         */
+        public long getRepositories(Language language) {
+            Check.notNull(language, "language");
+            return aggregator.getRepositories(language.getName());
+        }
+
+        /**
+         * @return share of the language in its repositories at the given percentile, see
+         * {@linkplain LanguageAggregator#getSharePercentile(String, double)}.
+         */
+        public Optional<BigDecimal> getSharePercentile(Language language, double percentile) {
+            Check.notNull(language, "language");
+            return aggregator.getSharePercentile(language.getName(), percentile);
+        }
+
+        /**
+         * @param language one of {@linkplain #getLanguages()}.
+         * @return share of the language in {@linkplain #getBytesTotal()}, between {@code 0} and {@code 1} with six
+         * decimal places. {@code 0} if there are no bytes at all.
+         */
+        public BigDecimal getShare(Language language) {
+            Check.notNull(language, "language");
+            if (bytesTotal.signum() == 0) {
+                return BigDecimal.ZERO.setScale(SCALE_OF_SHARE);
+            }
+            return language.getBytes().divide(bytesTotal, SCALE_OF_SHARE, BigDecimal.ROUND_HALF_UP);
+        }
+    }
+}
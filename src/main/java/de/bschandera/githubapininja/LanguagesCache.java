@@ -0,0 +1,191 @@
+package de.bschandera.githubapininja;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import net.sf.qualitycheck.Check;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * <p>Languages of repositories, kept on disk between runs. Entries are keyed by
+ * {@linkplain Repository#getLanguagesURL()} and remember the {@code ETag} and {@code Last-Modified} headers of the
+ * response they came from, so they can be revalidated with a conditional request.</p>
+ * <p>The cache holds at most {@code maxEntries} entries and evicts the least recently used one first. It lives in
+ * memory and is written to its file by {@linkplain #save()} or {@linkplain #close()}, oldest entry first, so the
+ * recency survives restarts as well. All methods are thread-safe.</p>
+ */
+public class LanguagesCache implements Closeable {
+    private static final Gson GSON = new Gson();
+
+    private final File file;
+    private final int maxEntries;
+    private final LinkedHashMap<String, CachedLanguages> entries;
+
+    /**
+     * Loads the entries that are stored in the given file, if it exists.
+     *
+     * @param file       where the cache is stored.
+     * @param maxEntries must be greater than 0.
+     * @throws IOException if the file exists but cannot be read.
+     */
+    public LanguagesCache(File file, final int maxEntries) throws IOException {
+        Check.notNull(file, "file");
+        Check.greaterThan(0, maxEntries, "maxEntries");
+        this.file = file;
+        this.maxEntries = maxEntries;
+        entries = new LinkedHashMap<String, CachedLanguages>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedLanguages> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        if (file.exists()) {
+            load();
+        }
+    }
+
+    public synchronized Optional<CachedLanguages> get(String languagesUrl) {
+        return Optional.fromNullable(entries.get(languagesUrl));
+    }
+
+    public synchronized void put(String languagesUrl, CachedLanguages languages) {
+        Check.notEmpty(languagesUrl, "languagesUrl");
+        Check.notNull(languages, "languages");
+        entries.put(languagesUrl, languages);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * Write all entries to the file. The file is replaced as a whole, so a crash while saving leaves the previous
+     * version intact.
+     *
+     * @throws IOException
+     */
+    public synchronized void save() throws IOException {
+        final File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Cannot create directory " + parent);
+        }
+
+        List<StoredEntry> stored = new ArrayList<>();
+        for (Map.Entry<String, CachedLanguages> entry : entries.entrySet()) {
+            stored.add(StoredEntry.of(entry.getKey(), entry.getValue()));
+        }
+        final File temporary = new File(file.getPath() + ".tmp");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(temporary), StandardCharsets.UTF_8)) {
+            GSON.toJson(stored, writer);
+        }
+        Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Override
+    public void close() throws IOException {
+        save();
+    }
+
+    private void load() throws IOException {
+        final List<StoredEntry> stored;
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            stored = GSON.fromJson(reader, new TypeToken<List<StoredEntry>>() {
+            }.getType());
+        }
+        if (stored == null) {
+            return;
+        }
+        for (StoredEntry entry : stored) {
+            entries.put(entry.url, entry.toCachedLanguages());
+        }
+    }
+
+    /**
+     * Languages of a single repository together with the validators of the response they were parsed from.
+     */
+    public static class CachedLanguages {
+        private final List<Language> languages;
+        private final Optional<String> eTag;
+        private final Optional<String> lastModified;
+
+        public CachedLanguages(Collection<Language> languages, Optional<String> eTag, Optional<String> lastModified) {
+            Check.noNullElements(languages, "languages");
+            Check.notNull(eTag, "eTag");
+            Check.notNull(lastModified, "lastModified");
+            this.languages = ImmutableList.copyOf(languages);
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+        }
+
+        /**
+         * @return Immutable list of {@linkplain Language}.
+         */
+        public List<Language> getLanguages() {
+            return languages;
+        }
+
+        public Optional<String> getETag() {
+            return eTag;
+        }
+
+        public Optional<String> getLastModified() {
+            return lastModified;
+        }
+
+        /**
+         * @return {@code If-None-Match} and {@code If-Modified-Since} headers to revalidate this entry.
+         */
+        public Map<String, String> conditionalRequestHeaders() {
+            Map<String, String> result = new LinkedHashMap<>();
+            if (eTag.isPresent()) {
+                result.put("If-None-Match", eTag.get());
+            }
+            if (lastModified.isPresent()) {
+                result.put("If-Modified-Since", lastModified.get());
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Shape of an entry in the file.
+     */
+    private static class StoredEntry {
+        private String url;
+        private String eTag;
+        private String lastModified;
+        private LinkedHashMap<String, Long> languages;
+
+        static StoredEntry of(String url, CachedLanguages entry) {
+            StoredEntry result = new StoredEntry();
+            result.url = url;
+            result.eTag = entry.getETag().orNull();
+            result.lastModified = entry.getLastModified().orNull();
+            result.languages = new LinkedHashMap<>();
+            for (Language language : entry.getLanguages()) {
+                result.languages.put(language.getName(), language.getBytes().longValue());
+            }
+            return result;
+        }
+
+        CachedLanguages toCachedLanguages() {
+            List<Language> result = new ArrayList<>();
+            for (Map.Entry<String, Long> language : languages.entrySet()) {
+                result.add(new Language(language.getKey(), BigDecimal.valueOf(language.getValue())));
+            }
+            return new CachedLanguages(result, Optional.fromNullable(eTag), Optional.fromNullable(lastModified));
+        }
+    }
+}
@@ -0,0 +1,368 @@
+package de.bschandera.githubapininja;
+
+import com.google.common.collect.ImmutableMap;
+import net.sf.qualitycheck.Check;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.regex.Pattern;
+
+/**
+ * <p>Counters, timers and gauges of the hot paths, e.g. the latency of api calls per endpoint or the time it takes to
+ * parse their payloads. Instruments are created once, usually as constants, and shared by all threads:</p>
+ * <p>{@code long start = TIMER.start(); ... TIMER.stop(start);}</p>
+ * <p>Metrics are disabled until {@linkplain #setEnabled(boolean) enabled}. While disabled, an instrument does not
+ * read the clock nor touch shared memory, it only reads a volatile flag. They are exported in the text format of
+ * Prometheus, see {@linkplain #toPrometheusText()}, and {@linkplain #registerMXBean() as an MXBean}.</p>
+ * <p>An instrument is identified by its name and an optional label, e.g. {@code endpoint="languages"}. Instruments
+ * with the same name are of the same type and share their help text.</p>
+ */
+public final class Metrics {
+    /**
+     * Upper bounds of the buckets of every timer, in seconds.
+     */
+    private static final double[] BUCKETS_SECONDS = {0.00001, 0.0001, 0.0005, 0.001, 0.005, 0.01, 0.05, 0.1, 0.5, 1,
+            5, 10};
+    private static final long[] BUCKETS_NANOS = new long[BUCKETS_SECONDS.length];
+    private static final String OBJECT_NAME = "de.bschandera.githubapininja:type=Metrics";
+    private static final long NOT_STARTED = Long.MIN_VALUE;
+    private static final Pattern NAME = Pattern.compile("[a-zA-Z_:][a-zA-Z0-9_:]*");
+
+    static {
+        for (int i = 0; i < BUCKETS_SECONDS.length; i++) {
+            BUCKETS_NANOS[i] = (long) (BUCKETS_SECONDS[i] * TimeUnit.SECONDS.toNanos(1));
+        }
+    }
+
+    private static final ConcurrentMap<String, Family> FAMILIES = new ConcurrentSkipListMap<>();
+    private static volatile boolean enabled;
+
+    private Metrics() {
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Values that were recorded before are kept while metrics are disabled.
+     *
+     * @param enabled
+     */
+    public static void setEnabled(boolean enabled) {
+        Metrics.enabled = enabled;
+    }
+
+    /**
+     * @param name   e.g. {@code github_errors_total}.
+     * @param help   one line on what is counted.
+     * @param labels none, or a label name and its value, e.g. {@code "reason", "status"}.
+     * @return the counter of that name and label, it is created with the first call.
+     */
+    public static Counter counter(String name, String help, String... labels) {
+        return (Counter) family(name, help, Type.COUNTER).instrument(labels);
+    }
+
+    /**
+     * @param name   e.g. {@code github_request_seconds}.
+     * @param help   one line on what is timed.
+     * @param labels none, or a label name and its value, e.g. {@code "endpoint", "languages"}.
+     * @return the timer of that name and label, it is created with the first call.
+     */
+    public static Timer timer(String name, String help, String... labels) {
+        return (Timer) family(name, help, Type.HISTOGRAM).instrument(labels);
+    }
+
+    /**
+     * Replaces the gauge of the same name and label, if there is one. The gauge is read whenever the metrics are
+     * exported, also while they are disabled.
+     *
+     * @param name   e.g. {@code github_rate_limit_remaining}.
+     * @param help   one line on what is measured.
+     * @param gauge  reads the current value.
+     * @param labels none, or a label name and its value.
+     */
+    public static void gauge(String name, String help, Gauge gauge, String... labels) {
+        Check.notNull(gauge, "gauge");
+        family(name, help, Type.GAUGE).instruments.put(labels(labels), gauge);
+    }
+
+    private static Family family(String name, String help, Type type) {
+        Check.matchesPattern(NAME, name, "name");
+        Check.notNull(help, "help");
+        Family family = FAMILIES.get(name);
+        if (family == null) {
+            final Family created = new Family(help, type);
+            family = FAMILIES.putIfAbsent(name, created);
+            if (family == null) {
+                family = created;
+            }
+        }
+        Check.stateIsTrue(family.type == type, "%s is a %s, not a %s", name, family.type, type);
+        return family;
+    }
+
+    private static String labels(String... labels) {
+        Check.stateIsTrue(labels.length == 0 || labels.length == 2, "Expected a label name and its value");
+        return labels.length == 0 ? "" : labels[0] + "=\"" + labels[1].replace("\\", "\\\\").replace("\"", "\\\"")
+                + "\"";
+    }
+
+    /**
+     * @return all metrics in the text exposition format of Prometheus, version 0.0.4.
+     */
+    public static String toPrometheusText() {
+        final StringBuilder result = new StringBuilder();
+        for (Map.Entry<String, Family> entry : FAMILIES.entrySet()) {
+            final String name = entry.getKey();
+            final Family family = entry.getValue();
+            result.append("# HELP ").append(name).append(' ').append(family.help).append('\n');
+            result.append("# TYPE ").append(name).append(' ').append(family.type.prometheusName).append('\n');
+            for (Map.Entry<String, Object> instrument : family.instruments.entrySet()) {
+                final String labels = instrument.getKey();
+                if (family.type == Type.HISTOGRAM) {
+                    ((Timer) instrument.getValue()).appendPrometheusText(name, labels, result);
+                } else {
+                    result.append(name).append(braces(labels)).append(' ')
+                            .append(value(instrument.getValue())).append('\n');
+                }
+            }
+        }
+        return result.toString();
+    }
+
+    private static String braces(String labels) {
+        return labels.isEmpty() ? "" : "{" + labels + "}";
+    }
+
+    private static long value(Object counterOrGauge) {
+        return counterOrGauge instanceof Counter
+                ? ((Counter) counterOrGauge).get()
+                : ((Gauge) counterOrGauge).getValue();
+    }
+
+    /**
+     * Registers the metrics at the platform MBean server as {@value #OBJECT_NAME}, so they can be looked at with
+     * e.g. JConsole. Registering twice does nothing.
+     */
+    public static void registerMXBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new Bean(), new ObjectName(OBJECT_NAME));
+        } catch (InstanceAlreadyExistsException e) {
+            // registered before
+        } catch (JMException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @return counters and gauges by name and label, e.g. {@code github_errors_total{reason="status"}}.
+     */
+    private static Map<String, Long> values(Type type) {
+        final Map<String, Long> result = new TreeMap<>();
+        for (Map.Entry<String, Family> family : FAMILIES.entrySet()) {
+            if (family.getValue().type == type) {
+                for (Map.Entry<String, Object> instrument : family.getValue().instruments.entrySet()) {
+                    result.put(family.getKey() + braces(instrument.getKey()), value(instrument.getValue()));
+                }
+            }
+        }
+        return ImmutableMap.copyOf(result);
+    }
+
+    /**
+     * @return timers by name and label.
+     */
+    private static Map<String, Timer> timers() {
+        final Map<String, Timer> result = new TreeMap<>();
+        for (Map.Entry<String, Family> family : FAMILIES.entrySet()) {
+            if (family.getValue().type == Type.HISTOGRAM) {
+                for (Map.Entry<String, Object> instrument : family.getValue().instruments.entrySet()) {
+                    result.put(family.getKey() + braces(instrument.getKey()), (Timer) instrument.getValue());
+                }
+            }
+        }
+        return result;
+    }
+
+    public static final class Counter {
+        private final AtomicLong value = new AtomicLong();
+
+        private Counter() {
+        }
+
+        public void increment() {
+            add(1);
+        }
+
+        /**
+         * @param delta not negative.
+         */
+        public void add(long delta) {
+            if (enabled) {
+                value.addAndGet(delta);
+            }
+        }
+
+        public long get() {
+            return value.get();
+        }
+    }
+
+    /**
+     * Counts how long something took, in buckets of {@code 10 us} to {@code 10 s}.
+     */
+    public static final class Timer {
+        /**
+         * Not cumulative, the last one counts what took longer than the last bound.
+         */
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS_NANOS.length + 1);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+
+        private Timer() {
+        }
+
+        /**
+         * @return the time to pass to {@linkplain #stop(long)}.
+         */
+        public long start() {
+            return enabled ? System.nanoTime() : NOT_STARTED;
+        }
+
+        /**
+         * Records the time since the given start. Does nothing if metrics were disabled when it started.
+         *
+         * @param start as returned by {@linkplain #start()}.
+         */
+        public void stop(long start) {
+            if (start != NOT_STARTED) {
+                record(System.nanoTime() - start);
+            }
+        }
+
+        void record(long nanos) {
+            int bucket = 0;
+            while (bucket < BUCKETS_NANOS.length && nanos > BUCKETS_NANOS[bucket]) {
+                bucket++;
+            }
+            buckets.incrementAndGet(bucket);
+            count.incrementAndGet();
+            totalNanos.addAndGet(nanos);
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+
+        public long getTotalNanos() {
+            return totalNanos.get();
+        }
+
+        private void appendPrometheusText(String name, String labels, StringBuilder result) {
+            final String separator = labels.isEmpty() ? "" : ",";
+            long cumulative = 0;
+            for (int i = 0; i <= BUCKETS_NANOS.length; i++) {
+                cumulative += buckets.get(i);
+                result.append(name).append("_bucket{").append(labels).append(separator).append("le=\"")
+                        .append(i < BUCKETS_SECONDS.length ? String.valueOf(BUCKETS_SECONDS[i]) : "+Inf")
+                        .append("\"} ").append(cumulative).append('\n');
+            }
+            result.append(name).append("_sum").append(braces(labels)).append(' ')
+                    .append(totalNanos.get() / (double) TimeUnit.SECONDS.toNanos(1)).append('\n');
+            result.append(name).append("_count").append(braces(labels)).append(' ').append(count.get()).append('\n');
+        }
+    }
+
+    public interface Gauge {
+        long getValue();
+    }
+
+    private enum Type {
+        COUNTER("counter"), GAUGE("gauge"), HISTOGRAM("histogram");
+
+        private final String prometheusName;
+
+        Type(String prometheusName) {
+            this.prometheusName = prometheusName;
+        }
+    }
+
+    /**
+     * Instruments of the same name, by their labels.
+     */
+    private static class Family {
+        private final String help;
+        private final Type type;
+        private final ConcurrentMap<String, Object> instruments = new ConcurrentSkipListMap<>();
+
+        Family(String help, Type type) {
+            this.help = help;
+            this.type = type;
+        }
+
+        Object instrument(String... labels) {
+            final String key = labels(labels);
+            Object instrument = instruments.get(key);
+            if (instrument == null) {
+                final Object created = type == Type.COUNTER ? new Counter() : new Timer();
+                instrument = instruments.putIfAbsent(key, created);
+                if (instrument == null) {
+                    instrument = created;
+                }
+            }
+            return instrument;
+        }
+    }
+
+    private static class Bean implements MetricsMXBean {
+        @Override
+        public boolean isEnabled() {
+            return Metrics.isEnabled();
+        }
+
+        @Override
+        public void setEnabled(boolean enabled) {
+            Metrics.setEnabled(enabled);
+        }
+
+        @Override
+        public Map<String, Long> getCounters() {
+            return values(Type.COUNTER);
+        }
+
+        @Override
+        public Map<String, Long> getGauges() {
+            return values(Type.GAUGE);
+        }
+
+        @Override
+        public Map<String, Long> getTimerCounts() {
+            final Map<String, Long> result = new TreeMap<>();
+            for (Map.Entry<String, Timer> timer : timers().entrySet()) {
+                result.put(timer.getKey(), timer.getValue().getCount());
+            }
+            return result;
+        }
+
+        @Override
+        public Map<String, Double> getTimerMeanMillis() {
+            final Map<String, Double> result = new TreeMap<>();
+            for (Map.Entry<String, Timer> timer : timers().entrySet()) {
+                final long count = timer.getValue().getCount();
+                result.put(timer.getKey(), count == 0 ? 0
+                        : timer.getValue().getTotalNanos() / (double) count / TimeUnit.MILLISECONDS.toNanos(1));
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package de.bschandera.githubapininja;
+
+import java.util.Map;
+
+/**
+ * Management interface of {@linkplain Metrics}, see {@linkplain Metrics#registerMXBean()}. Instruments are keyed by
+ * their name and label, e.g. {@code github_request_seconds{endpoint="languages"}}.
+ */
+public interface MetricsMXBean {
+
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    Map<String, Long> getCounters();
+
+    Map<String, Long> getGauges();
+
+    Map<String, Long> getTimerCounts();
+
+    Map<String, Double> getTimerMeanMillis();
+}
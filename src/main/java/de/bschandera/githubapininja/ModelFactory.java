@@ -1,13 +1,19 @@
 package de.bschandera.githubapininja;
 
+import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import net.sf.qualitycheck.Check;
 
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -17,7 +23,64 @@ import java.util.Map;
  */
 public class ModelFactory {
     private static final String JSON_MEMBER_ID = "id";
+    private static final String JSON_MEMBER_NODE_ID = "node_id";
     private static final String JSON_MEMBER_LANGUAGES_URL = "languages_url";
+    private static final String JSON_MEMBER_DATA = "data";
+    private static final String JSON_MEMBER_NODES = "nodes";
+    private static final String JSON_MEMBER_LANGUAGES = "languages";
+    private static final String JSON_MEMBER_EDGES = "edges";
+    private static final String JSON_MEMBER_SIZE = "size";
+    private static final String JSON_MEMBER_NODE = "node";
+    private static final String JSON_MEMBER_NAME = "name";
+    private static final String METRIC_PARSE_SECONDS = "model_parse_seconds";
+    private static final String METRIC_PARSE_SECONDS_HELP = "Time to turn payloads into the model, by payload";
+    private static final Metrics.Timer PARSE_REPOSITORIES =
+            Metrics.timer(METRIC_PARSE_SECONDS, METRIC_PARSE_SECONDS_HELP, "payload", "repositories");
+    private static final Metrics.Timer PARSE_LANGUAGES =
+            Metrics.timer(METRIC_PARSE_SECONDS, METRIC_PARSE_SECONDS_HELP, "payload", "languages");
+    private static final Metrics.Timer PARSE_NODES =
+            Metrics.timer(METRIC_PARSE_SECONDS, METRIC_PARSE_SECONDS_HELP, "payload", "nodes");
+
+    /**
+     * Streaming version of {@linkplain #parseRepos(JsonArray)}, see {@linkplain #parseRepos(JsonReader)}. The
+     * parsers are timed by {@linkplain Metrics}.
+     */
+    public static final PayloadParser<List<Repository>> REPOS_PARSER = new PayloadParser<List<Repository>>() {
+        @Override
+        public List<Repository> parse(JsonReader payload) throws IOException {
+            final long start = PARSE_REPOSITORIES.start();
+            final List<Repository> result = parseRepos(payload);
+            PARSE_REPOSITORIES.stop(start);
+            return result;
+        }
+    };
+
+    /**
+     * Streaming version of {@linkplain #parseLanguages(JsonObject)}, see {@linkplain #parseLanguages(JsonReader)}.
+     */
+    public static final PayloadParser<List<Language>> LANGUAGES_PARSER = new PayloadParser<List<Language>>() {
+        @Override
+        public List<Language> parse(JsonReader payload) throws IOException {
+            final long start = PARSE_LANGUAGES.start();
+            final List<Language> result = parseLanguages(payload);
+            PARSE_LANGUAGES.stop(start);
+            return result;
+        }
+    };
+
+    /**
+     * Languages of a batch of repositories, see {@linkplain #parseLanguagesOfNodes(JsonReader)}.
+     */
+    public static final PayloadParser<Map<String, List<Language>>> NODES_LANGUAGES_PARSER =
+            new PayloadParser<Map<String, List<Language>>>() {
+                @Override
+                public Map<String, List<Language>> parse(JsonReader payload) throws IOException {
+                    final long start = PARSE_NODES.start();
+                    final Map<String, List<Language>> result = parseLanguagesOfNodes(payload);
+                    PARSE_NODES.stop(start);
+                    return result;
+                }
+            };
 
     /**
      * Parses a payload that holds multiple languages into regarding Language objects. See the example payload.
@@ -41,11 +104,145 @@ public class ModelFactory {
         return result.build();
     }
 
+    /**
+     * Same as {@linkplain #parseLanguages(JsonObject)} but reads the payload token by token instead of from a complete
+     * JSON tree.
+     *
+     * @param languagesPayload
+     * @return Immutable list of {@linkplain Language}.
+     * @throws IOException
+     */
+    public static List<Language> parseLanguages(JsonReader languagesPayload) throws IOException {
+        Check.notNull(languagesPayload, "languagesPayload");
+        ImmutableList.Builder<Language> result = new ImmutableList.Builder<>();
+        languagesPayload.beginObject();
+        while (languagesPayload.hasNext()) {
+            final String name = languagesPayload.nextName();
+            final BigDecimal bytes = BigDecimal.valueOf(languagesPayload.nextLong());
+            result.add(new Language(name, bytes));
+        }
+        languagesPayload.endObject();
+        return result.build();
+    }
+
+    /**
+     * Parses the answer to a GraphQL query for the languages of several repositories at once, i.e.,
+     * {@code nodes(ids: [...]) { ... on Repository { id languages { edges { size node { name } } } } }}. See the
+     * example payload. Repositories that do not exist anymore are {@code null} in the list of nodes, they are left out.
+     * <p>{"data": {"nodes": [
+     * {"id": "MDEwOlJlcG9zaXRvcnkx",
+     * "languages": {"edges": [{"size": 305360, "node": {"name": "Java"}}, ...]}},
+     * null,
+     * ...]}}
+     * </p>
+     *
+     * @param nodesPayload
+     * @return Immutable map from node id to the languages of the repository, in the order of the payload.
+     * @throws IOException
+     */
+    public static Map<String, List<Language>> parseLanguagesOfNodes(JsonReader nodesPayload) throws IOException {
+        Check.notNull(nodesPayload, "nodesPayload");
+        ImmutableMap.Builder<String, List<Language>> result = ImmutableMap.builder();
+        nodesPayload.beginObject();
+        while (nodesPayload.hasNext()) {
+            if (JSON_MEMBER_DATA.equals(nodesPayload.nextName()) && nodesPayload.peek() == JsonToken.BEGIN_OBJECT) {
+                nodesPayload.beginObject();
+                while (nodesPayload.hasNext()) {
+                    if (JSON_MEMBER_NODES.equals(nodesPayload.nextName())) {
+                        parseNodes(nodesPayload, result);
+                    } else {
+                        nodesPayload.skipValue();
+                    }
+                }
+                nodesPayload.endObject();
+            } else {
+                // e.g. errors
+                nodesPayload.skipValue();
+            }
+        }
+        nodesPayload.endObject();
+        return result.build();
+    }
+
+    private static void parseNodes(JsonReader nodesPayload, ImmutableMap.Builder<String, List<Language>> result)
+            throws IOException {
+        nodesPayload.beginArray();
+        while (nodesPayload.hasNext()) {
+            if (nodesPayload.peek() == JsonToken.NULL) {
+                nodesPayload.nextNull();
+                continue;
+            }
+            String id = null;
+            List<Language> languages = ImmutableList.of();
+            nodesPayload.beginObject();
+            while (nodesPayload.hasNext()) {
+                final String member = nodesPayload.nextName();
+                if (JSON_MEMBER_ID.equals(member)) {
+                    id = nodesPayload.nextString();
+                } else if (JSON_MEMBER_LANGUAGES.equals(member)) {
+                    languages = parseLanguageEdges(nodesPayload);
+                } else {
+                    nodesPayload.skipValue();
+                }
+            }
+            nodesPayload.endObject();
+            if (id != null) {
+                result.put(id, languages);
+            }
+        }
+        nodesPayload.endArray();
+    }
+
+    private static List<Language> parseLanguageEdges(JsonReader languagesPayload) throws IOException {
+        ImmutableList.Builder<Language> result = new ImmutableList.Builder<>();
+        languagesPayload.beginObject();
+        while (languagesPayload.hasNext()) {
+            if (!JSON_MEMBER_EDGES.equals(languagesPayload.nextName())) {
+                languagesPayload.skipValue();
+                continue;
+            }
+            languagesPayload.beginArray();
+            while (languagesPayload.hasNext()) {
+                result.add(parseLanguageEdge(languagesPayload));
+            }
+            languagesPayload.endArray();
+        }
+        languagesPayload.endObject();
+        return result.build();
+    }
+
+    private static Language parseLanguageEdge(JsonReader edgePayload) throws IOException {
+        String name = null;
+        BigDecimal bytes = null;
+        edgePayload.beginObject();
+        while (edgePayload.hasNext()) {
+            final String member = edgePayload.nextName();
+            if (JSON_MEMBER_SIZE.equals(member)) {
+                bytes = BigDecimal.valueOf(edgePayload.nextLong());
+            } else if (JSON_MEMBER_NODE.equals(member)) {
+                edgePayload.beginObject();
+                while (edgePayload.hasNext()) {
+                    if (JSON_MEMBER_NAME.equals(edgePayload.nextName())) {
+                        name = edgePayload.nextString();
+                    } else {
+                        edgePayload.skipValue();
+                    }
+                }
+                edgePayload.endObject();
+            } else {
+                edgePayload.skipValue();
+            }
+        }
+        edgePayload.endObject();
+        return new Language(name, bytes);
+    }
+
     /**
      * {@linkplain Repository}s that only have their name and their language id. No languages are contended, yet.
      * Please use {@linkplain #parseLanguages(com.google.gson.JsonObject)} for this task. See example payload.
      * <p>{
      * "id": 27962218,
+     * "node_id": "MDEwOlJlcG9zaXRvcnkyNzk2MjIxOA==",
      * "name": "github-api-ninja",
      * ...
      * "languages_url": "https://api.github.com/repos/Husterknupp/github-api-ninja/languages",
@@ -59,15 +256,64 @@ public class ModelFactory {
         Check.notNull(allReposPayload, "allReposPayload");
         List<Repository> result = new ArrayList<>();
         for (JsonElement repo : allReposPayload.getAsJsonArray()) {
-            result.add(new Repository(extractId(repo), extractLanguageURL(repo)));
+            result.add(new Repository(extractId(repo), extractNodeId(repo), extractLanguageURL(repo),
+                    Collections.<Language>emptyList()));
         }
         return result;
     }
 
+    /**
+     * Same as {@linkplain #parseRepos(JsonArray)} but reads the payload token by token. Only {@code id},
+     * {@code node_id} and {@code languages_url} are read, all other members of a repository are skipped without building objects for
+     * them.
+     *
+     * @param allReposPayload
+     * @return Repository that does not contain languages.
+     * @throws IOException
+     */
+    public static List<Repository> parseRepos(JsonReader allReposPayload) throws IOException {
+        Check.notNull(allReposPayload, "allReposPayload");
+        List<Repository> result = new ArrayList<>();
+        allReposPayload.beginArray();
+        while (allReposPayload.hasNext()) {
+            result.add(parseRepo(allReposPayload));
+        }
+        allReposPayload.endArray();
+        return result;
+    }
+
+    private static Repository parseRepo(JsonReader repoPayload) throws IOException {
+        String id = null;
+        Optional<String> nodeId = Optional.absent();
+        String languageURL = null;
+        repoPayload.beginObject();
+        while (repoPayload.hasNext()) {
+            final String member = repoPayload.nextName();
+            if (JSON_MEMBER_ID.equals(member)) {
+                id = repoPayload.nextString();
+            } else if (JSON_MEMBER_NODE_ID.equals(member) && repoPayload.peek() == JsonToken.STRING) {
+                nodeId = Optional.of(repoPayload.nextString());
+            } else if (JSON_MEMBER_LANGUAGES_URL.equals(member)) {
+                languageURL = repoPayload.nextString();
+            } else {
+                repoPayload.skipValue();
+            }
+        }
+        repoPayload.endObject();
+        return new Repository(id, nodeId, languageURL, Collections.<Language>emptyList());
+    }
+
     private static String extractId(JsonElement repoAsJson) {
         return repoAsJson.getAsJsonObject().getAsJsonPrimitive(JSON_MEMBER_ID).getAsString();
     }
 
+    private static Optional<String> extractNodeId(JsonElement repoAsJson) {
+        final JsonElement nodeId = repoAsJson.getAsJsonObject().get(JSON_MEMBER_NODE_ID);
+        return nodeId == null || nodeId.isJsonNull()
+                ? Optional.<String>absent()
+                : Optional.of(nodeId.getAsString());
+    }
+
     private static String extractLanguageURL(JsonElement repoAsJson) {
         return repoAsJson.getAsJsonObject().getAsJsonPrimitive(JSON_MEMBER_LANGUAGES_URL).getAsString();
     }
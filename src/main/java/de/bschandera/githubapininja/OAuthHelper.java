@@ -1,5 +1,8 @@
 package de.bschandera.githubapininja;
 
+import com.google.common.base.Optional;
+import com.google.common.base.Strings;
+import net.sf.qualitycheck.Check;
 import org.scribe.builder.ServiceBuilder;
 import org.scribe.builder.api.DefaultApi20;
 import org.scribe.model.*;
@@ -7,51 +10,176 @@ import org.scribe.oauth.OAuthService;
 import org.scribe.utils.OAuthEncoder;
 import org.scribe.utils.Preconditions;
 
+import java.io.IOException;
+import java.util.NoSuchElementException;
 import java.util.Scanner;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+/**
+ * <p>Signs requests with an OAuth access token. The token is asked for interactively with the first request, once,
+ * even if many threads ask at the same time. Afterwards signing is thread-safe and does not block.</p>
+ * <p>The API key and secret of the OAuth application and the authorization code are taken from the
+ * {@value #CLIENT_ID_VARIABLE}, {@value #CLIENT_SECRET_VARIABLE} and {@value #CODE_VARIABLE} environment variables,
+ * only the ones that are not set are asked for on the console. Without a console, e.g. in a batch job, the first
+ * request fails instead of waiting for input. An access token that was authorized this way is added to the
+ * {@linkplain TokenStore}, if there is one, so later runs do not need to authorize again.</p>
+ * <p>A token is not validated before it is used, the first request tells whether GitHub accepts it. A token that
+ * GitHub {@linkplain #rejected() rejected} is removed from the token store.</p>
+ */
 public class OAuthHelper {
+    public static final String CLIENT_ID_VARIABLE = "GITHUB_CLIENT_ID";
+    public static final String CLIENT_SECRET_VARIABLE = "GITHUB_CLIENT_SECRET";
+    public static final String CODE_VARIABLE = "GITHUB_OAUTH_CODE";
     private static final Token EMPTY_TOKEN = null;
     private static final String CALLBACK_URL = "https://github.com/login/oauth/authorize";
 
-    private OAuthService oAuthService;
+    private final Optional<TokenStore> tokenStore;
+    private final AtomicBoolean rejected = new AtomicBoolean();
+    private volatile OAuthService oAuthService;
     private String code;
-    private Token token;
+    private volatile Token token;
+
+    public OAuthHelper() {
+        tokenStore = Optional.absent();
+    }
+
+    /**
+     * Same as {@linkplain #OAuthHelper()}, but the token is added to the given store once it is authorized.
+     *
+     * @param tokenStore
+     */
+    public OAuthHelper(TokenStore tokenStore) {
+        this.tokenStore = Optional.of(Check.notNull(tokenStore, "tokenStore"));
+    }
+
+    /**
+     * Skips the interactive authorization. Requests are signed with the given access token right away, e.g. a personal
+     * access token.
+     *
+     * @param accessToken
+     */
+    public OAuthHelper(String accessToken) {
+        this(accessToken, Optional.<TokenStore>absent());
+    }
+
+    /**
+     * Same as {@linkplain #OAuthHelper(String)}, for a token of the given store. It is removed from the store if GitHub
+     * rejects it.
+     *
+     * @param accessToken
+     * @param tokenStore
+     */
+    public OAuthHelper(String accessToken, TokenStore tokenStore) {
+        this(accessToken, Optional.of(Check.notNull(tokenStore, "tokenStore")));
+    }
+
+    private OAuthHelper(String accessToken, Optional<TokenStore> tokenStore) {
+        Check.notEmpty(accessToken, "accessToken");
+        this.tokenStore = tokenStore;
+        oAuthService = getoAuthService("apiKey", "apiSecret");
+        token = new Token(accessToken, "");
+    }
 
     public OAuthRequest getoAuthSignedRequest(String uri) {
         if (!initialized()) {
-            init();
+            initOnce();
         }
         OAuthRequest request = new OAuthRequest(Verb.GET, uri);
         oAuthService.signRequest(token, request);
         return request;
     }
 
+    /**
+     * @return the access token, e.g. for an {@code Authorization} header. GitHub's GraphQL api does not take it as
+     * query parameter.
+     */
+    public String getAccessToken() {
+        if (!initialized()) {
+            initOnce();
+        }
+        return token.getToken();
+    }
+
     private boolean initialized() {
-        return oAuthService != null && code != null && token != null;
+        return oAuthService != null && token != null;
+    }
+
+    private synchronized void initOnce() {
+        if (!initialized()) {
+            init();
+        }
     }
 
     private void init() {
-        oAuthService = getoAuthService(readApiKey(), readApiSecret());
-        code = generateAuthCode();
-        token = generateToken(oAuthService, code);
+        // a single scanner, it may read ahead more than one line of the input
+        final Scanner console = new Scanner(System.in);
+        final OAuthService service = getoAuthService(readApiKey(console), readApiSecret(console));
+        oAuthService = service;
+        code = generateAuthCode(console);
+        final Token accessToken = generateToken(service, code);
+        store(accessToken.getToken());
+        // written last, initialized() checks it
+        token = accessToken;
     }
 
-    private static String readApiKey() {
-        System.out.println("API key - we need your API key.");
-        System.out.print(">>");
-        return new Scanner(System.in).nextLine();
+    private void store(String accessToken) {
+        if (tokenStore.isPresent()) {
+            try {
+                tokenStore.get().add(accessToken);
+                System.out.println("The access token is kept in " + tokenStore.get().getFile() + " for the next run.");
+            } catch (IOException e) {
+                System.out.println("I could not keep the access token in " + tokenStore.get().getFile() + ": " + e);
+            }
+        }
+    }
+
+    private static String readApiKey(Scanner console) {
+        return fromEnvironmentOrConsole(CLIENT_ID_VARIABLE, "API key - we need your API key.", console);
+    }
+
+    private static String readApiSecret(Scanner console) {
+        return fromEnvironmentOrConsole(CLIENT_SECRET_VARIABLE, "And your - API secret - surprise!", console);
     }
 
-    private static String readApiSecret() {
-        System.out.println("And your - API secret - surprise!");
+    private static String fromEnvironmentOrConsole(String variable, String prompt, Scanner console) {
+        final String value = System.getenv(variable);
+        if (!Strings.isNullOrEmpty(value)) {
+            return value.trim();
+        }
+        System.out.println(prompt);
         System.out.print(">>");
-        return new Scanner(System.in).nextLine();
+        try {
+            return console.nextLine();
+        } catch (NoSuchElementException e) {
+            throw new IllegalStateException("There is no console to ask for " + variable + ". Set "
+                    + CredentialPool.TOKENS_VARIABLE + " or " + variable + ", or put a token into the token store.", e);
+        }
+    }
+
+    /**
+     * GitHub answered {@code 401 Unauthorized} to a request that was signed with this token, e.g. because it was
+     * revoked. It is removed from the token store, once, so the next run does not use it again.
+     */
+    public void rejected() {
+        if (!rejected.compareAndSet(false, true)) {
+            return;
+        }
+        System.out.println("GitHub rejected the access token (401 Unauthorized).");
+        if (tokenStore.isPresent() && initialized()) {
+            try {
+                if (tokenStore.get().remove(token.getToken())) {
+                    System.out.println("It is removed from " + tokenStore.get().getFile() + ".");
+                }
+            } catch (IOException e) {
+                System.out.println("I could not remove it from " + tokenStore.get().getFile() + ": " + e);
+            }
+        }
     }
 
     private static OAuthService getoAuthService(String apiKey, String apiSecret) {
         // Replace these with your own api key and secret (found on https://github.com/settings/applications/155857)
         return new ServiceBuilder()
-                .provider(GitHubOAuthImpl.class)
+                .provider(new GitHubOAuthImpl())
                 .apiKey(apiKey)
                 .apiSecret(apiSecret)
                         // callback as described here https://developer.github.com/v3/oauth/#web-application-flow #1
@@ -59,15 +187,18 @@ public class OAuthHelper {
                 .build();
     }
 
-    private String generateAuthCode() {
+    private String generateAuthCode(Scanner console) {
+        final String fromEnvironment = System.getenv(CODE_VARIABLE);
+        if (!Strings.isNullOrEmpty(fromEnvironment)) {
+            return fromEnvironment.trim();
+        }
         String authorizationUrl = oAuthService.getAuthorizationUrl(EMPTY_TOKEN);
         System.out.println("Got the Authorization URL!");
         System.out.println("Now go and authorize Scribe here:");
         System.out.println(authorizationUrl);
         // I followed that link and found the code in the redirect url https://github.com/login/oauth/authorize?code=cf37d19cec7e91f0de33
-        System.out.println("And paste the authorization code here");
-        System.out.print(">>");
-        final String code = new Scanner(System.in).nextLine();
+        final String code = fromEnvironmentOrConsole(CODE_VARIABLE, "And paste the authorization code here",
+                console);
         System.out.println();
         return code;
     }
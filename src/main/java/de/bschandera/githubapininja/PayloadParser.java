@@ -0,0 +1,33 @@
+package de.bschandera.githubapininja;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+
+import java.io.IOException;
+
+/**
+ * Turns the JSON payload of a response into model objects while it is read from the network. Implementations pull
+ * only the tokens they need from the reader and skip the rest, so the payload is never held as a whole.
+ *
+ * @param <T> type of the parsed payload.
+ */
+public interface PayloadParser<T> {
+
+    /**
+     * Reads the payload as a complete {@linkplain JsonElement} tree.
+     */
+    PayloadParser<JsonElement> JSON_TREE = new PayloadParser<JsonElement>() {
+        @Override
+        public JsonElement parse(JsonReader payload) {
+            return new JsonParser().parse(payload);
+        }
+    };
+
+    /**
+     * @param payload positioned before the first token of the payload.
+     * @return
+     * @throws IOException if the payload cannot be read or is no valid JSON.
+     */
+    T parse(JsonReader payload) throws IOException;
+}
@@ -0,0 +1,146 @@
+package de.bschandera.githubapininja;
+
+import net.sf.qualitycheck.Check;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * <p>Number of api calls that may still be done until GitHub resets the rate limit window. Every call has to be
+ * reserved with {@linkplain #tryAcquire()} before it is sent. Once the response is there, its
+ * {@code X-RateLimit-Remaining} and {@code X-RateLimit-Reset} headers are handed to
+ * {@linkplain #reconcile(int, long)}.</p>
+ * <p>The budget is lock-free and safe to share between threads. Concurrent callers never get more reservations than
+ * there are calls remaining: within a window the budget only ever shrinks, it only grows again when a response reports
+ * a later reset time.</p>
+ */
+public class RateLimitBudget {
+    private static final long RESET_UNKNOWN = 0;
+
+    private final AtomicReference<Window> window;
+    private final AtomicInteger callsInFlight = new AtomicInteger();
+
+    /**
+     * @param remaining number of calls that may be done until the first response tells otherwise.
+     */
+    public RateLimitBudget(int remaining) {
+        Check.notNegative(remaining, "remaining");
+        window = new AtomicReference<>(new Window(remaining, RESET_UNKNOWN));
+    }
+
+    /**
+     * Reserve one api call.
+     *
+     * @return {@code false} if no call is left in the current window. Nothing is reserved in that case.
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            final Window current = window.get();
+            if (current.remaining <= 0) {
+                return false;
+            }
+            if (window.compareAndSet(current, new Window(current.remaining - 1, current.resetEpochSeconds))) {
+                callsInFlight.incrementAndGet();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Give back a reservation whose request has never been sent.
+     */
+    public void cancel() {
+        if (decrementCallsInFlight()) {
+            while (true) {
+                final Window current = window.get();
+                if (window.compareAndSet(current, new Window(current.remaining + 1, current.resetEpochSeconds))) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * A reserved request got a response without rate limit headers. The reservation is used up.
+     */
+    public void complete() {
+        decrementCallsInFlight();
+    }
+
+    /**
+     * A reserved request got a response with rate limit headers. Calls that are still in flight were counted locally
+     * but may not be counted by GitHub yet, so they are subtracted from the given number.
+     *
+     * @param remaining         value of the {@code X-RateLimit-Remaining} header.
+     * @param resetEpochSeconds value of the {@code X-RateLimit-Reset} header, {@code 0} if unknown.
+     */
+    public void reconcile(int remaining, long resetEpochSeconds) {
+        decrementCallsInFlight();
+        final int observed = Math.max(0, remaining - callsInFlight.get());
+        while (true) {
+            final Window current = window.get();
+            final Window next;
+            if (resetEpochSeconds > current.resetEpochSeconds) {
+                next = new Window(observed, resetEpochSeconds);
+            } else {
+                next = new Window(Math.min(current.remaining, observed), current.resetEpochSeconds);
+            }
+            if (window.compareAndSet(current, next)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * The reset time of a window has passed without a response from the new window yet. Opens the new window with the
+     * given number of calls, unless another thread has done so already or the window has calls left.
+     *
+     * @param remaining               number of calls in the new window, usually the {@code X-RateLimit-Limit}.
+     * @param passedResetEpochSeconds reset time of the window that has ended.
+     */
+    public void startNewWindow(int remaining, long passedResetEpochSeconds) {
+        Check.notNegative(remaining, "remaining");
+        final Window current = window.get();
+        if (current.remaining <= 0 && current.resetEpochSeconds == passedResetEpochSeconds) {
+            // the reset time is kept, so the first response of the new window is adopted by reconcile
+            window.compareAndSet(current, new Window(remaining, passedResetEpochSeconds));
+        }
+    }
+
+    public boolean hasRemaining() {
+        return window.get().remaining > 0;
+    }
+
+    public int getRemaining() {
+        return window.get().remaining;
+    }
+
+    /**
+     * @return the time the current window ends in seconds since the epoch, {@code 0} if no response has told yet.
+     */
+    public long getResetEpochSeconds() {
+        return window.get().resetEpochSeconds;
+    }
+
+    private boolean decrementCallsInFlight() {
+        while (true) {
+            final int current = callsInFlight.get();
+            if (current == 0) {
+                return false;
+            }
+            if (callsInFlight.compareAndSet(current, current - 1)) {
+                return true;
+            }
+        }
+    }
+
+    private static class Window {
+        private final int remaining;
+        private final long resetEpochSeconds;
+
+        Window(int remaining, long resetEpochSeconds) {
+            this.remaining = remaining;
+            this.resetEpochSeconds = resetEpochSeconds;
+        }
+    }
+}
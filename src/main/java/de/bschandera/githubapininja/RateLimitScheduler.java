@@ -0,0 +1,229 @@
+package de.bschandera.githubapininja;
+
+import com.google.common.annotations.VisibleForTesting;
+import net.sf.qualitycheck.Check;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Decides when the next api call may be sent, and reserves it in a {@linkplain RateLimitBudget}.</p>
+ * <ul>
+ * <li>Calls are paced by a token bucket. It holds up to {@code burst} calls and is refilled at the rate that spreads
+ * the remaining calls evenly until the window resets. Short crawls go out at once, long ones do not use up the window
+ * early and then stall.</li>
+ * <li>If the window is used up, calls wait until GitHub resets it, instead of being dropped.</li>
+ * <li>A response that was rejected by a rate limit, i.e., {@code 429} or {@code 403} with {@code Retry-After} or
+ * without remaining calls, pauses all calls, until the {@code Retry-After} time has passed or the window resets.
+ * Secondary rate limits without {@code Retry-After} pause for a minute, as GitHub recommends.</li>
+ * </ul>
+ * <p>The scheduler is thread-safe. Waiting is done by its {@linkplain Clock}, so tests can run it without real
+ * time.</p>
+ */
+public class RateLimitScheduler {
+    private static final String HEADER_LIMIT = "X-RateLimit-Limit";
+    private static final String HEADER_REMAINING = "X-RateLimit-Remaining";
+    private static final String HEADER_RESET = "X-RateLimit-Reset";
+    private static final String HEADER_RETRY_AFTER = "Retry-After";
+    private static final int STATUS_FORBIDDEN = 403;
+    private static final int STATUS_TOO_MANY_REQUESTS = 429;
+    private static final long SECONDARY_LIMIT_PAUSE_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    private static final int DEFAULT_BURST = 100;
+    private static final int LIMIT_UNKNOWN = 0;
+
+    private final RateLimitBudget budget;
+    private final int burst;
+    private final Clock clock;
+
+    private double tokens;
+    private long lastRefillMillis;
+    private long pausedUntilMillis;
+    private int limit = LIMIT_UNKNOWN;
+
+    public RateLimitScheduler(RateLimitBudget budget) {
+        this(budget, DEFAULT_BURST, Clock.SYSTEM);
+    }
+
+    /**
+     * @param budget
+     * @param burst  number of calls that may be sent without pacing, must be greater than 0.
+     * @param clock
+     */
+    @VisibleForTesting
+    RateLimitScheduler(RateLimitBudget budget, int burst, Clock clock) {
+        Check.notNull(budget, "budget");
+        Check.greaterThan(0, burst, "burst");
+        Check.notNull(clock, "clock");
+        this.budget = budget;
+        this.burst = burst;
+        this.clock = clock;
+        tokens = burst;
+        lastRefillMillis = clock.currentTimeMillis();
+    }
+
+    /**
+     * Waits until the next call may be sent and reserves it in the budget.
+     *
+     * @return {@code false} if no call is left and it is not known when the window resets, so waiting would not help.
+     * @throws InterruptedException
+     */
+    public boolean acquire() throws InterruptedException {
+        while (true) {
+            final long waitMillis = tryAcquire();
+            if (waitMillis == 0) {
+                return true;
+            } else if (waitMillis < 0) {
+                return false;
+            }
+            clock.sleep(waitMillis);
+        }
+    }
+
+    /**
+     * Same as {@linkplain #acquire()}, but does not wait, e.g. for a timer that must not be blocked.
+     *
+     * @return {@code 0} if the call was reserved. Otherwise how long to wait before trying again, or a negative number
+     * if no call is left and it is not known when the window resets.
+     */
+    public long tryAcquire() {
+        while (true) {
+            final long waitMillis = takeToken();
+            if (waitMillis > 0) {
+                return waitMillis;
+            }
+            if (budget.tryAcquire()) {
+                return 0;
+            }
+
+            final long resetEpochSeconds = budget.getResetEpochSeconds();
+            if (resetEpochSeconds == 0) {
+                return -1;
+            }
+            final long untilReset = TimeUnit.SECONDS.toMillis(resetEpochSeconds) - clock.currentTimeMillis();
+            if (untilReset > 0) {
+                return untilReset;
+            }
+            // the first response of the new window will tell the real numbers
+            budget.startNewWindow(limit == LIMIT_UNKNOWN ? 1 : limit, resetEpochSeconds);
+        }
+    }
+
+    /**
+     * Learns from the rate limit headers of a response.
+     *
+     * @param statusCode
+     * @param headers    of the response.
+     * @return {@code true} if the request was rejected because of a rate limit. It may be sent again, it will wait
+     * until the limit is lifted.
+     */
+    public boolean onResponse(int statusCode, Map<String, String> headers) {
+        Check.notNull(headers, "headers");
+        final Map<String, String> caseInsensitive = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            if (header.getKey() != null && header.getValue() != null) {
+                caseInsensitive.put(header.getKey(), header.getValue());
+            }
+        }
+
+        synchronized (this) {
+            final String limitHeader = caseInsensitive.get(HEADER_LIMIT);
+            if (limitHeader != null) {
+                limit = Integer.parseInt(limitHeader.trim());
+            }
+        }
+        if (statusCode != STATUS_FORBIDDEN && statusCode != STATUS_TOO_MANY_REQUESTS) {
+            return false;
+        }
+
+        final String retryAfter = caseInsensitive.get(HEADER_RETRY_AFTER);
+        final String remaining = caseInsensitive.get(HEADER_REMAINING);
+        final String reset = caseInsensitive.get(HEADER_RESET);
+        final long now = clock.currentTimeMillis();
+        if (retryAfter != null) {
+            pauseUntil(now + TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfter.trim())));
+        } else if ("0".equals(remaining) && reset != null) {
+            pauseUntil(TimeUnit.SECONDS.toMillis(Long.parseLong(reset.trim())));
+        } else if (statusCode == STATUS_TOO_MANY_REQUESTS) {
+            pauseUntil(now + SECONDARY_LIMIT_PAUSE_MILLIS);
+        } else {
+            // any other 403, e.g. a repository that is not accessible
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return {@code true} if a call can be sent now or after waiting for the window to reset.
+     */
+    public boolean hasCallsLeft() {
+        return budget.hasRemaining() || budget.getResetEpochSeconds() > 0;
+    }
+
+    public RateLimitBudget getBudget() {
+        return budget;
+    }
+
+    private synchronized void pauseUntil(long millis) {
+        pausedUntilMillis = Math.max(pausedUntilMillis, millis);
+    }
+
+    /**
+     * @return {@code 0} if a token was taken or no call is left in the window, so the budget makes the call wait for
+     * the reset. Otherwise how long to wait before trying again.
+     */
+    private synchronized long takeToken() {
+        final long now = clock.currentTimeMillis();
+        if (now < pausedUntilMillis) {
+            return pausedUntilMillis - now;
+        }
+
+        final double tokensPerMilli = refillRate(now);
+        if (tokensPerMilli == 0) {
+            // no token would ever be refilled before the reset
+            return 0;
+        }
+        tokens = Double.isInfinite(tokensPerMilli)
+                ? burst
+                : Math.min(burst, tokens + (now - lastRefillMillis) * tokensPerMilli);
+        lastRefillMillis = now;
+        if (tokens >= 1) {
+            tokens--;
+            return 0;
+        }
+        return Math.max(1, (long) Math.ceil((1 - tokens) / tokensPerMilli));
+    }
+
+    /**
+     * @return tokens per millisecond that spread the remaining calls until the reset, infinite if the reset is not
+     * known or passed.
+     */
+    private double refillRate(long now) {
+        final long untilReset = TimeUnit.SECONDS.toMillis(budget.getResetEpochSeconds()) - now;
+        if (untilReset <= 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return (double) budget.getRemaining() / untilReset;
+    }
+
+    /**
+     * Time source of the scheduler.
+     */
+    public abstract static class Clock {
+        public static final Clock SYSTEM = new Clock() {
+            @Override
+            public long currentTimeMillis() {
+                return System.currentTimeMillis();
+            }
+
+            @Override
+            public void sleep(long millis) throws InterruptedException {
+                Thread.sleep(millis);
+            }
+        };
+
+        public abstract long currentTimeMillis();
+
+        public abstract void sleep(long millis) throws InterruptedException;
+    }
+}
@@ -1,5 +1,6 @@
 package de.bschandera.githubapininja;
 
+import com.google.common.base.Optional;
 import com.google.common.collect.Lists;
 import net.sf.qualitycheck.Check;
 
@@ -10,6 +11,7 @@ import java.util.List;
 
 public class Repository {
     private final String id;
+    private final Optional<String> nodeId;
     private String languageURL;
     private List<Language> languages;
 
@@ -22,10 +24,19 @@ public class Repository {
     }
 
     public Repository(String id, String languageURL, Collection<Language> languages) {
+        this(id, Optional.<String>absent(), languageURL, languages);
+    }
+
+    /**
+     * @param nodeId id of the repository in GitHub's GraphQL api, e.g., {@code node_id} of the REST api.
+     */
+    public Repository(String id, Optional<String> nodeId, String languageURL, Collection<Language> languages) {
         Check.notNull(id, "id");
+        Check.notNull(nodeId, "nodeId");
         Check.notEmpty(languageURL, "languageURL");
 
         this.id = id;
+        this.nodeId = nodeId;
         this.languageURL = languageURL;
         this.languages = new ArrayList<>(languages);
     }
@@ -39,10 +50,24 @@ public class Repository {
         return Lists.newArrayList(languages);
     }
 
+    /**
+     * @return the languages without copying them, must not be modified.
+     */
+    List<Language> languages() {
+        return languages;
+    }
+
     public String getId() {
         return id;
     }
 
+    /**
+     * @return id of the repository in GitHub's GraphQL api, absent if it was not in the payload.
+     */
+    public Optional<String> getNodeId() {
+        return nodeId;
+    }
+
     public String getLanguagesURL() {
         return languageURL;
     }
@@ -51,6 +76,7 @@ public class Repository {
     public String toString() {
         return "Repository{" +
                 "id='" + id + '\'' +
+                ", nodeId=" + nodeId +
                 ", languageURL='" + languageURL + '\'' +
                 ", languages=" + languages +
                 '}';
@@ -0,0 +1,108 @@
+package de.bschandera.githubapininja;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Optional;
+import com.google.common.base.Ticker;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
+import net.sf.qualitycheck.Check;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * <p>Walks page by page through the public repositories of GitHub. The next page is taken from the
+ * {@code Link: <...>; rel="next"} header, or, if GitHub does not send one, from the {@code since} cursor set to the
+ * id of the last repository seen.</p>
+ * <p>Pages are requested lazily, when the repositories of the current page are used up. Only one page is held at a
+ * time, so memory stays the same no matter how long the crawl goes on. Languages are not requested.</p>
+ */
+class RepositoryCrawler extends AbstractIterator<Repository> {
+    private static final Pattern LINK_NEXT = Pattern.compile("<([^>]+)>\\s*;\\s*rel=\"next\"");
+    private static final String HEADER_LINK = "Link";
+
+    private final ApiClient apiClient;
+    private final String urlRepositories;
+    private final CrawlLimits limits;
+    private final Ticker ticker;
+    private final long startNanos;
+
+    private Iterator<Repository> page = Iterators.emptyIterator();
+    private Optional<String> nextPageUrl;
+    private long handedOut;
+
+    RepositoryCrawler(ApiClient apiClient, String urlRepositories, CrawlLimits limits,
+                      Ticker ticker) {
+        Check.notNull(apiClient, "apiClient");
+        Check.notEmpty(urlRepositories, "urlRepositories");
+        Check.notNull(limits, "limits");
+        Check.notNull(ticker, "ticker");
+
+        this.apiClient = apiClient;
+        this.urlRepositories = urlRepositories;
+        this.limits = limits;
+        this.ticker = ticker;
+        startNanos = ticker.read();
+        nextPageUrl = Optional.of(limits.getSinceId() > 0 ? urlSince(limits.getSinceId()) : urlRepositories);
+    }
+
+    @Override
+    protected Repository computeNext() {
+        if (handedOut >= limits.getMaxRepositories() || timeBudgetIsUsedUp()) {
+            return endOfData();
+        }
+        while (!page.hasNext()) {
+            if (!nextPageUrl.isPresent() || !apiClient.hasStillApiCallsLeft() || !fetchPage(nextPageUrl.get())) {
+                return endOfData();
+            }
+        }
+
+        final Repository repository = page.next();
+        if (Long.parseLong(repository.getId()) > limits.getUntilId()) {
+            return endOfData();
+        }
+        handedOut++;
+        return repository;
+    }
+
+    private boolean timeBudgetIsUsedUp() {
+        return ticker.read() - startNanos >= limits.getTimeBudgetNanos();
+    }
+
+    private boolean fetchPage(String url) {
+        final Optional<ApiResponse<List<Repository>>> response = apiClient.getResponse(url, ModelFactory.REPOS_PARSER);
+        if (!response.isPresent()) {
+            return false;
+        }
+
+        final List<Repository> repositories = response.get().getPayload();
+        page = repositories.iterator();
+        if (repositories.isEmpty()) {
+            nextPageUrl = Optional.absent();
+        } else {
+            final String lastId = repositories.get(repositories.size() - 1).getId();
+            nextPageUrl = Optional.of(parseNextLink(response.get().getHeader(HEADER_LINK))
+                    .or(urlSince(Long.parseLong(lastId))));
+        }
+        return true;
+    }
+
+    private String urlSince(long id) {
+        return urlRepositories + "?since=" + id;
+    }
+
+    /**
+     * @param linkHeader e.g. {@code <https://api.github.com/repositories?since=367>; rel="next", <...>; rel="first"}
+     * @return the url of the next page, if there is one.
+     */
+    @VisibleForTesting
+    static Optional<String> parseNextLink(Optional<String> linkHeader) {
+        if (!linkHeader.isPresent()) {
+            return Optional.absent();
+        }
+        final Matcher matcher = LINK_NEXT.matcher(linkHeader.get());
+        return matcher.find() ? Optional.of(matcher.group(1)) : Optional.<String>absent();
+    }
+}
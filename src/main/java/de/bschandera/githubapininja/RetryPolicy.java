@@ -0,0 +1,144 @@
+package de.bschandera.githubapininja;
+
+import com.google.common.collect.ImmutableSet;
+import net.sf.qualitycheck.Check;
+
+import java.util.Collection;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>When a failed api call is sent again, and how long to wait before. Connection errors and the status codes of
+ * {@linkplain #isRetryable(int) transient failures} are retried, e.g. {@code 502 Bad Gateway}. Other answers, e.g.
+ * {@code 404 Not Found}, are final.</p>
+ * <p>The wait grows exponentially with every attempt, up to a maximum, and a random part of it is left out (full
+ * jitter), so calls that failed at the same time are not sent again at the same time. No call is sent again after the
+ * maximal number of attempts or once the deadline of the first attempt would be passed.</p>
+ * <p>Instances are immutable, every {@code with...} method returns a copy:</p>
+ * <p>{@code RetryPolicy.defaults().withMaxAttempts(5).withDeadline(1, TimeUnit.MINUTES)}</p>
+ */
+public class RetryPolicy {
+    private static final Set<Integer> TRANSIENT_STATUS_CODES = ImmutableSet.of(500, 502, 503, 504);
+    private static final RetryPolicy DEFAULTS = new RetryPolicy(3, TimeUnit.MILLISECONDS.toMillis(200),
+            TimeUnit.SECONDS.toMillis(10), TimeUnit.MINUTES.toMillis(1), TRANSIENT_STATUS_CODES);
+
+    private final int maxAttempts;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final long deadlineMillis;
+    private final Set<Integer> retryableStatusCodes;
+
+    private RetryPolicy(int maxAttempts, long initialBackoffMillis, long maxBackoffMillis, long deadlineMillis,
+                        Set<Integer> retryableStatusCodes) {
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+        this.deadlineMillis = deadlineMillis;
+        this.retryableStatusCodes = retryableStatusCodes;
+    }
+
+    /**
+     * @return 3 attempts, waiting up to 200 ms after the first and at most 10 s, within a minute. Status codes
+     * {@code 500}, {@code 502}, {@code 503} and {@code 504} are retried.
+     */
+    public static RetryPolicy defaults() {
+        return DEFAULTS;
+    }
+
+    /**
+     * @param maxAttempts including the first one, {@code 1} means no call is sent again.
+     */
+    public RetryPolicy withMaxAttempts(int maxAttempts) {
+        Check.greaterThan(0, maxAttempts, "maxAttempts");
+        return new RetryPolicy(maxAttempts, initialBackoffMillis, maxBackoffMillis, deadlineMillis,
+                retryableStatusCodes);
+    }
+
+    /**
+     * @param initial longest wait after the first attempt, it doubles with every further attempt.
+     * @param max     longest wait after any attempt, not lower than {@code initial}.
+     * @param unit
+     */
+    public RetryPolicy withBackoff(long initial, long max, TimeUnit unit) {
+        Check.notNegative(initial, "initial");
+        Check.notNull(unit, "unit");
+        Check.stateIsTrue(max >= initial, "max must not be lower than initial");
+        return new RetryPolicy(maxAttempts, unit.toMillis(initial), unit.toMillis(max), deadlineMillis,
+                retryableStatusCodes);
+    }
+
+    /**
+     * @param duration since the first attempt, no call is sent again after it.
+     * @param unit
+     */
+    public RetryPolicy withDeadline(long duration, TimeUnit unit) {
+        Check.notNegative(duration, "duration");
+        Check.notNull(unit, "unit");
+        return new RetryPolicy(maxAttempts, initialBackoffMillis, maxBackoffMillis, unit.toMillis(duration),
+                retryableStatusCodes);
+    }
+
+    /**
+     * @param statusCodes of transient failures, instead of the default ones.
+     */
+    public RetryPolicy withRetryableStatusCodes(Collection<Integer> statusCodes) {
+        Check.noNullElements(statusCodes, "statusCodes");
+        return new RetryPolicy(maxAttempts, initialBackoffMillis, maxBackoffMillis, deadlineMillis,
+                ImmutableSet.copyOf(statusCodes));
+    }
+
+    /**
+     * @param statusCode of an answer that is neither successful nor rejected by a rate limit.
+     * @return {@code true} if the failure is transient, so sending the call again may succeed.
+     */
+    public boolean isRetryable(int statusCode) {
+        return retryableStatusCodes.contains(statusCode);
+    }
+
+    /**
+     * @param attempt that failed, starting at 1.
+     * @param random  source of the jitter.
+     * @return how long to wait before the next attempt, between {@code 0} and the exponential backoff.
+     */
+    public long backoffMillis(int attempt, Random random) {
+        Check.greaterThan(0, attempt, "attempt");
+        Check.notNull(random, "random");
+        final int doublings = attempt - 1;
+        final long backoff;
+        if (initialBackoffMillis == 0) {
+            backoff = 0;
+        } else if (doublings >= Long.numberOfLeadingZeros(initialBackoffMillis) - 1) {
+            // doubling that often would overflow
+            backoff = maxBackoffMillis;
+        } else {
+            backoff = Math.min(initialBackoffMillis << doublings, maxBackoffMillis);
+        }
+        return backoff == 0 ? 0 : (long) (random.nextDouble() * (backoff + 1));
+    }
+
+    /**
+     * @param attempt         that failed, starting at 1.
+     * @param elapsedMillis   since the first attempt was sent.
+     * @param backoffMillis   until the next attempt would be sent.
+     * @return {@code true} if another attempt is allowed.
+     */
+    public boolean allowsRetry(int attempt, long elapsedMillis, long backoffMillis) {
+        return attempt < maxAttempts && elapsedMillis + backoffMillis <= deadlineMillis;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    @Override
+    public String toString() {
+        return "RetryPolicy{" +
+                "maxAttempts=" + maxAttempts +
+                ", initialBackoffMillis=" + initialBackoffMillis +
+                ", maxBackoffMillis=" + maxBackoffMillis +
+                ", deadlineMillis=" + deadlineMillis +
+                ", retryableStatusCodes=" + retryableStatusCodes +
+                '}';
+    }
+}
@@ -0,0 +1,244 @@
+package de.bschandera.githubapininja;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import net.sf.qualitycheck.Check;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * <p>Serves language statistics over HTTP, e.g. to dashboards:</p>
+ * <ul>
+ * <li>{@code GET /statistics} all languages, most bytes first, with the number of repositories and bytes in total.</li>
+ * <li>{@code GET /statistics/{language}} a single language, the name is not case-sensitive.</li>
+ * <li>{@code GET /metrics} the {@linkplain Metrics} of this process for Prometheus, rendered for every request.</li>
+ * </ul>
+ * <p>Statistics are {@linkplain #publish(LanguageStatistics.Snapshot) published} by whoever computes them, e.g. a
+ * crawl in the background. Every response is rendered to JSON when the statistics are published, and the rendered
+ * responses are swapped at once. A request only looks up the bytes of its response, it never waits for GitHub or
+ * for the aggregation. Every publication has its own {@code ETag}, a request with a matching {@code If-None-Match} is
+ * answered with {@code 304 Not Modified}.</p>
+ * <p>Until the first publication, requests are answered with {@code 503 Service Unavailable}.</p>
+ */
+public class StatisticsServer implements Closeable {
+    public static final String PATH_STATISTICS = "/statistics";
+    public static final String PATH_METRICS = "/metrics";
+    private static final String CONTENT_TYPE_JSON = "application/json; charset=utf-8";
+    private static final String CONTENT_TYPE_PROMETHEUS = "text/plain; version=0.0.4; charset=utf-8";
+    private static final double MEDIAN = 50;
+    /**
+     * The JDK server writes headers and body separately. Without this, the body waits for the delayed ACK of the
+     * client, about 40 ms on Linux, and every keep-alive request takes that long.
+     */
+    private static final String PROPERTY_NO_DELAY = "sun.net.httpserver.nodelay";
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final AtomicReference<Responses> responses = new AtomicReference<>();
+    private final AtomicLong publications = new AtomicLong();
+    /**
+     * Part of every {@code ETag}, so the tags of a restarted server differ from those it answered before.
+     */
+    private final long started = System.currentTimeMillis();
+
+    private StatisticsServer(InetSocketAddress address, int threads) throws IOException {
+        server = HttpServer.create(address, 0);
+        executor = Executors.newFixedThreadPool(threads);
+        server.setExecutor(executor);
+        server.createContext(PATH_STATISTICS, new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                serve(exchange);
+            }
+        });
+        server.createContext(PATH_METRICS, new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                serveMetrics(exchange);
+            }
+        });
+        server.start();
+    }
+
+    /**
+     * @param address e.g. {@code new InetSocketAddress(8080)}, port {@code 0} picks a free one.
+     * @param threads that answer requests, greater than 0.
+     * @return a running server.
+     * @throws IOException if the address cannot be bound.
+     */
+    public static StatisticsServer start(InetSocketAddress address, int threads) throws IOException {
+        Check.notNull(address, "address");
+        Check.greaterThan(0, threads, "threads");
+        if (System.getProperty(PROPERTY_NO_DELAY) == null) {
+            System.setProperty(PROPERTY_NO_DELAY, "true");
+        }
+        return new StatisticsServer(address, threads);
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Renders the responses of the given statistics and serves them from now on. Requests that started before are
+     * answered with the previous statistics.
+     *
+     * @param snapshot
+     */
+    public synchronized void publish(LanguageStatistics.Snapshot snapshot) {
+        Check.notNull(snapshot, "snapshot");
+        responses.set(Responses.render(snapshot, started + "-" + publications.incrementAndGet()));
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Allow", "GET");
+                send(exchange, 405, message("Only GET is supported"));
+                return;
+            }
+            final Responses current = responses.get();
+            if (current == null) {
+                send(exchange, 503, message("The statistics are not computed yet"));
+                return;
+            }
+
+            final Optional<byte[]> body = current.forPath(exchange.getRequestURI().getPath());
+            if (!body.isPresent()) {
+                send(exchange, 404, message("Unknown language"));
+                return;
+            }
+            exchange.getResponseHeaders().set("ETag", current.eTag);
+            if (current.eTag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.sendResponseHeaders(304, -1);
+                return;
+            }
+            send(exchange, 200, body.get());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static void serveMetrics(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Allow", "GET");
+                send(exchange, 405, message("Only GET is supported"));
+                return;
+            }
+            if (!PATH_METRICS.equals(exchange.getRequestURI().getPath())) {
+                send(exchange, 404, message("Unknown path"));
+                return;
+            }
+            send(exchange, 200, CONTENT_TYPE_PROMETHEUS, Metrics.toPrometheusText().getBytes(StandardCharsets.UTF_8));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+        send(exchange, status, CONTENT_TYPE_JSON, body);
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static byte[] message(String message) {
+        final JsonObject result = new JsonObject();
+        result.addProperty("message", message);
+        return result.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Rendered responses of one publication, they are never changed.
+     */
+    private static class Responses {
+        private final byte[] statistics;
+        /**
+         * Per language, by its name in lower case.
+         */
+        private final Map<String, byte[]> languages;
+        private final String eTag;
+
+        private Responses(byte[] statistics, Map<String, byte[]> languages, String eTag) {
+            this.statistics = statistics;
+            this.languages = languages;
+            this.eTag = eTag;
+        }
+
+        static Responses render(LanguageStatistics.Snapshot snapshot, String publication) {
+            final List<Language> byBytes = new ArrayList<>(snapshot.getLanguages());
+            Collections.sort(byBytes, LanguageRanking.BY_BYTES_DESCENDING);
+
+            final JsonArray languagesJson = new JsonArray();
+            final Map<String, byte[]> languages = new HashMap<>();
+            for (Language language : byBytes) {
+                final JsonObject languageJson = render(snapshot, language);
+                languagesJson.add(languageJson);
+                final String key = language.getName().toLowerCase(Locale.ROOT);
+                if (!languages.containsKey(key)) {
+                    languages.put(key, languageJson.toString().getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            final JsonObject statistics = new JsonObject();
+            statistics.addProperty("repositories", snapshot.getRepositories());
+            statistics.addProperty("bytesTotal", snapshot.getBytesTotal());
+            statistics.add("languages", languagesJson);
+            return new Responses(statistics.toString().getBytes(StandardCharsets.UTF_8),
+                    ImmutableMap.copyOf(languages), "\"" + publication + "\"");
+        }
+
+        private static JsonObject render(LanguageStatistics.Snapshot snapshot, Language language) {
+            final JsonObject result = new JsonObject();
+            result.addProperty("name", language.getName());
+            result.addProperty("bytes", language.getBytes());
+            result.addProperty("share", snapshot.getShare(language));
+            result.addProperty("repositories", snapshot.getRepositories(language));
+            final Optional<BigDecimal> medianShare = snapshot.getSharePercentile(language, MEDIAN);
+            if (medianShare.isPresent()) {
+                result.addProperty("medianShare", medianShare.get());
+            }
+            return result;
+        }
+
+        /**
+         * @param path decoded, e.g. {@code /statistics/C++}.
+         */
+        Optional<byte[]> forPath(String path) {
+            if (path.equals(PATH_STATISTICS) || path.equals(PATH_STATISTICS + "/")) {
+                return Optional.of(statistics);
+            }
+            if (!path.startsWith(PATH_STATISTICS + "/")) {
+                return Optional.absent();
+            }
+            final String name = path.substring(PATH_STATISTICS.length() + 1);
+            return Optional.fromNullable(languages.get(name.toLowerCase(Locale.ROOT)));
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package de.bschandera.githubapininja;
+
+import com.google.common.collect.ImmutableList;
+import net.sf.qualitycheck.Check;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * <p>File with one access token per line, e.g. {@code ~/.github-api-ninja/tokens}. Empty lines and lines that start
+ * with {@code #} are skipped. Tokens that were authorized on the console are added to it, so later runs use them
+ * without asking, and tokens GitHub rejected are removed.</p>
+ * <p>The file is only readable by its owner. It is replaced atomically, so a crash while writing leaves the old one.
+ * A file that others may read is still used, but a warning is printed.</p>
+ * <p>All methods are thread-safe.</p>
+ */
+public class TokenStore {
+    private static final Set<PosixFilePermission> READABLE_BY_OTHERS = EnumSet.of(PosixFilePermission.GROUP_READ,
+            PosixFilePermission.OTHERS_READ);
+
+    private final File file;
+
+    public TokenStore(File file) {
+        Check.notNull(file, "file");
+        this.file = file;
+    }
+
+    /**
+     * @return the store in {@code ~/.github-api-ninja/tokens}.
+     */
+    public static TokenStore inUserHome() {
+        return new TokenStore(new File(System.getProperty("user.home"), ".github-api-ninja/tokens"));
+    }
+
+    /**
+     * @return the tokens in the order of the file, none if it does not exist.
+     * @throws IOException if the file exists but cannot be read.
+     */
+    public synchronized List<String> read() throws IOException {
+        if (!file.isFile()) {
+            return ImmutableList.of();
+        }
+        warnIfReadableByOthers();
+        final List<String> result = new ArrayList<>();
+        for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+            final String token = line.trim();
+            if (!token.isEmpty() && !token.startsWith("#")) {
+                result.add(token);
+            }
+        }
+        return ImmutableList.copyOf(result);
+    }
+
+    /**
+     * Adds the token as the last line, unless it is in the file already. The file and its directory are created if
+     * they do not exist.
+     *
+     * @param token
+     * @throws IOException
+     */
+    public synchronized void add(String token) throws IOException {
+        Check.notEmpty(token, "token");
+        final List<String> lines = lines();
+        for (String line : lines) {
+            if (line.trim().equals(token)) {
+                return;
+            }
+        }
+        lines.add(token);
+        write(lines);
+    }
+
+    /**
+     * Removes every line of the token, other lines are kept as they are.
+     *
+     * @param token
+     * @return {@code true} if the token was in the file.
+     * @throws IOException
+     */
+    public synchronized boolean remove(String token) throws IOException {
+        Check.notEmpty(token, "token");
+        final List<String> lines = lines();
+        final List<String> kept = new ArrayList<>(lines.size());
+        for (String line : lines) {
+            if (!line.trim().equals(token)) {
+                kept.add(line);
+            }
+        }
+        if (kept.size() == lines.size()) {
+            return false;
+        }
+        write(kept);
+        return true;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    private List<String> lines() throws IOException {
+        return file.isFile()
+                ? new ArrayList<>(Files.readAllLines(file.toPath(), StandardCharsets.UTF_8))
+                : new ArrayList<String>();
+    }
+
+    /**
+     * Writes a temporary file next to the store and moves it over the store. A temporary file is only readable by its
+     * owner on POSIX file systems, so the token is never readable by others, not even while it is written.
+     */
+    private void write(List<String> lines) throws IOException {
+        final File parent = file.getAbsoluteFile().getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Cannot create directory " + parent);
+        }
+        final Path temporary = Files.createTempFile(parent.toPath(), file.getName(), ".tmp");
+        try {
+            Files.write(temporary, lines, StandardCharsets.UTF_8);
+            Files.move(temporary, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private void warnIfReadableByOthers() {
+        try {
+            final Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(file.toPath());
+            if (!Collections.disjoint(permissions, READABLE_BY_OTHERS)) {
+                System.out.println("Warning: " + file + " is readable by others, better chmod 600 it.");
+            }
+        } catch (UnsupportedOperationException | IOException e) {
+            // not a POSIX file system, nothing to check
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "TokenStore{" +
+                "file=" + file +
+                '}';
+    }
+}
@@ -0,0 +1,68 @@
+package de.bschandera;
+
+import com.google.common.base.Optional;
+import de.bschandera.githubapininja.*;
+import net.sf.qualitycheck.exception.IllegalStateOfArgumentException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ApiNinjaTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testCrawlOnce_failingRequestsDoNotEndTheServer() throws IOException {
+        final AtomicInteger requests = new AtomicInteger();
+        final AtomicInteger availabilityChecks = new AtomicInteger();
+        GitHubApi gitHub = new GitHubApi(new ApiClient() {
+            @Override
+            public <T> Optional<ApiResponse<T>> getResponse(String uri, Map<String, String> requestHeaders,
+                                                            PayloadParser<T> parser) {
+                requests.incrementAndGet();
+                throw new IllegalStateOfArgumentException("Wanted to call the API but no rate limit remaining anymore.");
+            }
+
+            @Override
+            public <T> Optional<ApiResponse<T>> postResponse(String uri, String jsonBody, PayloadParser<T> parser) {
+                return getResponse(uri, Collections.<String, String>emptyMap(), parser);
+            }
+
+            @Override
+            public boolean hasStillApiCallsLeft() {
+                return true;
+            }
+
+            @Override
+            public boolean urlIsAvailable(String url) {
+                if (availabilityChecks.incrementAndGet() > 2) {
+                    throw new RuntimeException(new IOException("Connection refused"));
+                }
+                return true;
+            }
+        });
+        try (CrawlCheckpoint checkpoint = CrawlCheckpoint.open(temporaryFolder.newFile(), 25);
+             StatisticsServer server = StatisticsServer.start(new InetSocketAddress("localhost", 0), 1)) {
+            for (int i = 0; i < 3; i++) {
+                ApiNinja.crawlOnce(gitHub, checkpoint, server, temporaryFolder.getRoot());
+            }
+
+            assertThat(requests.get()).isEqualTo(2);
+            assertThat(availabilityChecks.get()).isEqualTo(3);
+            HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + server.getPort()
+                    + StatisticsServer.PATH_STATISTICS).openConnection();
+            assertThat(connection.getResponseCode()).isEqualTo(200);
+        }
+    }
+}
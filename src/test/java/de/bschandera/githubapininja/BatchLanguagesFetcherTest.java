@@ -0,0 +1,127 @@
+package de.bschandera.githubapininja;
+
+import com.google.common.base.Optional;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import net.sf.qualitycheck.exception.IllegalNotLesserThanException;
+import net.sf.qualitycheck.exception.IllegalStateOfArgumentException;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class BatchLanguagesFetcherTest {
+
+    @Test
+    public void testRequestBody() {
+        JsonObject body = new JsonParser().parse(BatchLanguagesFetcher.requestBody(repositories(2))).getAsJsonObject();
+
+        assertThat(body.get("query").getAsString()).contains("nodes(ids: $ids)");
+        assertThat(body.getAsJsonObject("variables").getAsJsonArray("ids").size()).isEqualTo(2);
+        assertThat(body.getAsJsonObject("variables").getAsJsonArray("ids").get(1).getAsString())
+                .isEqualTo("node1");
+    }
+
+    @Test
+    public void testFetchLanguages_inBatches() throws IOException {
+        try (StubServer server = StubServer.start()) {
+            final List<Repository> repositories = repositories(5);
+            server.stub("/graphql",
+                    StubServer.Reply.ok(nodesPayload(repositories.subList(0, 2))),
+                    StubServer.Reply.ok(nodesPayload(repositories.subList(2, 4))),
+                    StubServer.Reply.ok(nodesPayload(repositories.subList(4, 5))));
+            BatchLanguagesFetcher fetcher = new BatchLanguagesFetcher(GitHubApiTest.newCommunicationHelper(),
+                    server.url("/graphql"), 2);
+
+            List<Repository> result = fetcher.fetchLanguages(repositories);
+
+            assertThat(result).hasSize(5);
+            for (int i = 0; i < 5; i++) {
+                assertThat(result.get(i).getId()).isEqualTo(String.valueOf(i));
+                assertThat(result.get(i).getLanguages()).containsOnly(new Language("Java", BigDecimal.valueOf(i + 1)));
+            }
+            assertThat(server.hits("/graphql")).isEqualTo(3);
+            assertThat(server.lastRequestHeader("/graphql", "Authorization")).isEqualTo("bearer token");
+            assertThat(server.lastRequestBody("/graphql")).contains("node4");
+        }
+    }
+
+    @Test
+    public void testFetchLanguages_leavesOutUnknownAndStopsAtFailedBatch() throws IOException {
+        try (StubServer server = StubServer.start()) {
+            final List<Repository> repositories = repositories(4);
+            server.stub("/graphql",
+                    StubServer.Reply.ok(nodesPayload(repositories.subList(1, 2))),
+                    new StubServer.Reply(502, "{\"message\": \"Bad Gateway\"}"));
+            BatchLanguagesFetcher fetcher = new BatchLanguagesFetcher(GitHubApiTest.newCommunicationHelper(),
+                    server.url("/graphql"), 2);
+
+            List<Repository> result = fetcher.fetchLanguages(repositories);
+
+            assertThat(result).hasSize(1);
+            assertThat(result.get(0).getId()).isEqualTo("1");
+            assertThat(server.hits("/graphql")).isEqualTo(1 + GitHubApiTest.NO_BACKOFF.getMaxAttempts());
+        }
+    }
+
+    @Test
+    public void testGetPublicRepositoriesInBatches() throws IOException {
+        try (StubServer server = StubServer.start()) {
+            server.stub("/repositories", "[" +
+                    "{\"id\": 0, \"node_id\": \"node0\", \"languages_url\": \"" + server.url("/repos/r0/languages")
+                    + "\"}," +
+                    "{\"id\": 1, \"node_id\": \"node1\", \"languages_url\": \"" + server.url("/repos/r1/languages")
+                    + "\"}]");
+            server.stub("/graphql", nodesPayload(repositories(2)));
+
+            List<Repository> result = new GitHubApi(GitHubApiTest.newCommunicationHelper(), server.url(""))
+                    .getPublicRepositoriesInBatches(BatchLanguagesFetcher.MAX_BATCH_SIZE);
+
+            assertThat(result).hasSize(2);
+            assertThat(result.get(1).getLanguages()).containsOnly(new Language("Java", BigDecimal.valueOf(2)));
+            assertThat(server.hits("/graphql")).isEqualTo(1);
+            assertThat(server.hits("/repos/r0/languages")).isEqualTo(0);
+        }
+    }
+
+    @Test(expected = IllegalStateOfArgumentException.class)
+    public void testFetchLanguages_withoutNodeId() {
+        new BatchLanguagesFetcher(GitHubApiTest.newCommunicationHelper(), "http://localhost/graphql", 2)
+                .fetchLanguages(Collections.singletonList(new Repository("1", "r1/languages")));
+    }
+
+    @Test(expected = IllegalNotLesserThanException.class)
+    public void testBatchSizeAboveMaximum() {
+        new BatchLanguagesFetcher(GitHubApiTest.newCommunicationHelper(), "http://localhost/graphql",
+                BatchLanguagesFetcher.MAX_BATCH_SIZE + 1);
+    }
+
+    private static List<Repository> repositories(int count) {
+        List<Repository> result = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            result.add(new Repository(String.valueOf(i), Optional.of("node" + i), "r" + i + "/languages",
+                    Collections.<Language>emptyList()));
+        }
+        return result;
+    }
+
+    /**
+     * Every repository has {@code id + 1} bytes of Java.
+     */
+    private static String nodesPayload(List<Repository> repositories) {
+        StringBuilder nodes = new StringBuilder();
+        for (Repository repository : repositories) {
+            nodes.append(nodes.length() == 0 ? "" : ",")
+                    .append("{\"id\": \"").append(repository.getNodeId().get()).append("\", ")
+                    .append("\"languages\": {\"edges\": [{\"size\": ")
+                    .append(Integer.parseInt(repository.getId()) + 1)
+                    .append(", \"node\": {\"name\": \"Java\"}}]}}");
+        }
+        return "{\"data\": {\"nodes\": [" + nodes + "]}}";
+    }
+}
@@ -0,0 +1,175 @@
+package de.bschandera.githubapininja;
+
+import com.google.common.base.Optional;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMap;
+import com.google.gson.JsonElement;
+import com.google.gson.stream.JsonReader;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class CachingApiClientTest {
+
+    @Test
+    public void testServesRepeatedRequestsFromCache() {
+        CountingApiClient delegate = new CountingApiClient();
+        CachingApiClient cachingApiClient = CachingApiClient.withMaxEntries(delegate, 10, 1, TimeUnit.MINUTES);
+
+        assertThat(cachingApiClient.getResponseAsJson("/a").get().getAsJsonObject().get("uri").getAsString())
+                .isEqualTo("/a");
+        assertThat(cachingApiClient.getResponseAsJson("/a").isPresent()).isTrue();
+        assertThat(cachingApiClient.getResponseAsJson("/b").isPresent()).isTrue();
+
+        assertThat(delegate.calls.get()).isEqualTo(2);
+        assertThat(cachingApiClient.getStats().hitCount()).isEqualTo(1);
+        assertThat(cachingApiClient.getStats().missCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void testResponsesExpire() {
+        CountingApiClient delegate = new CountingApiClient();
+        RepositoryCrawlerTest.FakeTicker ticker = new RepositoryCrawlerTest.FakeTicker();
+        CachingApiClient cachingApiClient = new CachingApiClient(delegate,
+                CacheBuilder.newBuilder().expireAfterWrite(1, TimeUnit.MINUTES).ticker(ticker));
+
+        cachingApiClient.getResponse("/a");
+        ticker.advance(TimeUnit.SECONDS.toNanos(59));
+        cachingApiClient.getResponse("/a");
+        assertThat(delegate.calls.get()).isEqualTo(1);
+
+        ticker.advance(TimeUnit.SECONDS.toNanos(1));
+        cachingApiClient.getResponse("/a");
+        assertThat(delegate.calls.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void testEvictsWhenMaxEntriesAreReached() {
+        CachingApiClient cachingApiClient =
+                CachingApiClient.withMaxEntries(new CountingApiClient(), 2, 1, TimeUnit.MINUTES);
+        cachingApiClient.getResponse("/a");
+        cachingApiClient.getResponse("/b");
+        cachingApiClient.getResponse("/c");
+
+        assertThat(cachingApiClient.size()).isEqualTo(2);
+        assertThat(cachingApiClient.getStats().evictionCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testEvictsWhenMaxBytesAreReached() {
+        CachingApiClient cachingApiClient =
+                CachingApiClient.withMaxBytes(new CountingApiClient(), 100, 1, TimeUnit.MINUTES);
+        for (int i = 0; i < 10; i++) {
+            cachingApiClient.getResponse("/" + i);
+        }
+
+        // every entry weighs 2 (uri) + 11 (body) = 13
+        assertThat(cachingApiClient.size()).isLessThanOrEqualTo(7);
+        assertThat(cachingApiClient.getStats().evictionCount()).isGreaterThan(0);
+    }
+
+    @Test
+    public void testDoesNotCacheFailedRequests() {
+        CountingApiClient delegate = new CountingApiClient();
+        delegate.failing = true;
+        CachingApiClient cachingApiClient = CachingApiClient.withMaxEntries(delegate, 10, 1, TimeUnit.MINUTES);
+
+        assertThat(cachingApiClient.getResponse("/a").isPresent()).isFalse();
+        delegate.failing = false;
+        assertThat(cachingApiClient.getResponse("/a").isPresent()).isTrue();
+        assertThat(delegate.calls.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void testConditionalRequestsBypassCache() {
+        CountingApiClient delegate = new CountingApiClient();
+        CachingApiClient cachingApiClient = CachingApiClient.withMaxEntries(delegate, 10, 1, TimeUnit.MINUTES);
+        final Map<String, String> ifNoneMatch = ImmutableMap.of("If-None-Match", "\"abc\"");
+
+        cachingApiClient.getResponse("/a", ifNoneMatch);
+        cachingApiClient.getResponse("/a", ifNoneMatch);
+
+        assertThat(delegate.calls.get()).isEqualTo(2);
+        assertThat(cachingApiClient.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void testCoalescesConcurrentMisses() throws Exception {
+        final CountingApiClient delegate = new CountingApiClient();
+        delegate.latencyMillis = 100;
+        final CachingApiClient cachingApiClient =
+                CachingApiClient.withMaxEntries(delegate, 10, 1, TimeUnit.MINUTES);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Optional<ApiResponse<JsonElement>>>> responses = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            responses.add(executor.submit(new Callable<Optional<ApiResponse<JsonElement>>>() {
+                @Override
+                public Optional<ApiResponse<JsonElement>> call() {
+                    return cachingApiClient.getResponse("/a");
+                }
+            }));
+        }
+        for (Future<Optional<ApiResponse<JsonElement>>> response : responses) {
+            assertThat(response.get().isPresent()).isTrue();
+        }
+        executor.shutdown();
+
+        assertThat(delegate.calls.get()).isEqualTo(1);
+    }
+
+    /**
+     * Answers every uri with {@code {"uri": "<uri>"}}.
+     */
+    static class CountingApiClient extends ApiClient {
+        final AtomicInteger calls = new AtomicInteger();
+        volatile boolean failing;
+        volatile long latencyMillis;
+
+        @Override
+        public <T> Optional<ApiResponse<T>> getResponse(String uri, Map<String, String> requestHeaders,
+                                                        PayloadParser<T> parser) {
+            calls.incrementAndGet();
+            if (latencyMillis > 0) {
+                try {
+                    Thread.sleep(latencyMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (failing) {
+                return Optional.absent();
+            }
+            final String body = "{\"uri\": \"" + uri + "\"}";
+            try {
+                return Optional.of(new ApiResponse<>(parser.parse(new JsonReader(new StringReader(body))),
+                        Collections.<String, String>emptyMap(), body.length()));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override
+        public <T> Optional<ApiResponse<T>> postResponse(String uri, String jsonBody, PayloadParser<T> parser) {
+            return getResponse(uri, Collections.<String, String>emptyMap(), parser);
+        }
+
+        @Override
+        public boolean hasStillApiCallsLeft() {
+            return true;
+        }
+
+        @Override
+        public boolean urlIsAvailable(String url) {
+            return true;
+        }
+    }
+}
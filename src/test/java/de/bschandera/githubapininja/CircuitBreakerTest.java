@@ -0,0 +1,89 @@
+package de.bschandera.githubapininja;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class CircuitBreakerTest {
+    private final RateLimitSchedulerTest.FakeClock clock = new RateLimitSchedulerTest.FakeClock(0);
+    private final CircuitBreaker circuitBreaker = new CircuitBreaker(10, 4, 0.5, 30, TimeUnit.SECONDS, clock);
+
+    @Test
+    public void testStaysClosedBelowMinimumCallsAndFailureRate() {
+        fail(3);
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+
+        succeed(7);
+        fail(4);
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    public void testOpensAtFailureRateOfWindow() {
+        succeed(10);
+        fail(4);
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+
+        fail(1);
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThat(circuitBreaker.tryAcquire()).isFalse();
+        assertThat(circuitBreaker.getRejectedCalls()).isEqualTo(1);
+    }
+
+    @Test
+    public void testLetsSingleProbeThroughAfterOpenDuration() {
+        fail(4);
+        clock.sleep(TimeUnit.SECONDS.toMillis(30) - 1);
+        assertThat(circuitBreaker.tryAcquire()).isFalse();
+
+        clock.sleep(1);
+        assertThat(circuitBreaker.tryAcquire()).isTrue();
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+        assertThat(circuitBreaker.tryAcquire()).isFalse();
+
+        circuitBreaker.onSuccess();
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        fail(3);
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    public void testFailedProbeOpensAgain() {
+        fail(4);
+        clock.sleep(TimeUnit.SECONDS.toMillis(30));
+        assertThat(circuitBreaker.tryAcquire()).isTrue();
+
+        circuitBreaker.onFailure();
+
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThat(circuitBreaker.tryAcquire()).isFalse();
+    }
+
+    @Test
+    public void testReleasedProbeIsReplaced() {
+        fail(4);
+        clock.sleep(TimeUnit.SECONDS.toMillis(30));
+        assertThat(circuitBreaker.tryAcquire()).isTrue();
+
+        circuitBreaker.release();
+
+        assertThat(circuitBreaker.tryAcquire()).isTrue();
+        assertThat(circuitBreaker.tryAcquire()).isFalse();
+    }
+
+    private void fail(int calls) {
+        for (int i = 0; i < calls; i++) {
+            assertThat(circuitBreaker.tryAcquire()).isTrue();
+            circuitBreaker.onFailure();
+        }
+    }
+
+    private void succeed(int calls) {
+        for (int i = 0; i < calls; i++) {
+            assertThat(circuitBreaker.tryAcquire()).isTrue();
+            circuitBreaker.onSuccess();
+        }
+    }
+}
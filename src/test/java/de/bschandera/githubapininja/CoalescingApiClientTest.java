@@ -0,0 +1,213 @@
+package de.bschandera.githubapininja;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.gson.JsonElement;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class CoalescingApiClientTest {
+    private static final int THREADS = 200;
+    private static final int URIS = 4;
+
+    @Test
+    public void testOnlyOneOfConcurrentIdenticalRequestsGoesOnTheWire() throws Exception {
+        try (StubServer server = StubServer.start();
+             CommunicationHelper communicationHelper = GitHubApiTest.newCommunicationHelper()) {
+            final List<String> uris = new ArrayList<>();
+            for (int i = 0; i < URIS; i++) {
+                server.stub("/hot/" + i, "{\"hot\": " + i + "}");
+                uris.add(server.url("/hot/" + i));
+            }
+            server.setLatencyMillis(300);
+            final CoalescingApiClient apiClient = new CoalescingApiClient(communicationHelper);
+
+            final CountDownLatch start = new CountDownLatch(1);
+            ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+            List<Future<Optional<JsonElement>>> responses = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                final String uri = uris.get(i % URIS);
+                responses.add(executor.submit(new Callable<Optional<JsonElement>>() {
+                    @Override
+                    public Optional<JsonElement> call() throws InterruptedException {
+                        start.await();
+                        return apiClient.getResponseAsJson(uri);
+                    }
+                }));
+            }
+            start.countDown();
+            for (int i = 0; i < THREADS; i++) {
+                assertThat(responses.get(i).get().get().getAsJsonObject().get("hot").getAsInt()).isEqualTo(i % URIS);
+            }
+            executor.shutdown();
+
+            int hits = 0;
+            for (int i = 0; i < URIS; i++) {
+                final int hitsOfUri = server.hits("/hot/" + i);
+                assertThat(hitsOfUri).isLessThan(THREADS / URIS / 2);
+                hits += hitsOfUri;
+            }
+            assertThat(apiClient.getSentRequests()).isEqualTo(hits);
+            assertThat(apiClient.getCollapsedRequests()).isEqualTo(THREADS - hits);
+        }
+    }
+
+    @Test
+    public void testSendsAgainOnceTheResponseArrived() {
+        CachingApiClientTest.CountingApiClient delegate = new CachingApiClientTest.CountingApiClient();
+        CoalescingApiClient apiClient = new CoalescingApiClient(delegate);
+
+        apiClient.getResponse("/a");
+        apiClient.getResponse("/a");
+
+        assertThat(delegate.calls.get()).isEqualTo(2);
+        assertThat(apiClient.getCollapsedRequests()).isEqualTo(0);
+    }
+
+    @Test
+    public void testRequestsWithOtherHeadersAreNotCollapsed() throws Exception {
+        final CachingApiClientTest.CountingApiClient delegate = new CachingApiClientTest.CountingApiClient();
+        delegate.latencyMillis = 200;
+        final CoalescingApiClient apiClient = new CoalescingApiClient(delegate);
+
+        Future<Optional<ApiResponse<JsonElement>>> plain = getInBackground(apiClient,
+                Collections.<String, String>emptyMap());
+        Future<Optional<ApiResponse<JsonElement>>> conditional = getInBackground(apiClient,
+                ImmutableMap.of("If-None-Match", "\"abc\""));
+        plain.get();
+        conditional.get();
+
+        assertThat(delegate.calls.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void testFailureIsSharedByWaitingCallers() throws Exception {
+        final FailingApiClient delegate = new FailingApiClient();
+        final CoalescingApiClient apiClient = new CoalescingApiClient(delegate);
+
+        Future<Optional<ApiResponse<JsonElement>>> first = getInBackground(apiClient,
+                Collections.<String, String>emptyMap());
+        delegate.started.await();
+        Future<Optional<ApiResponse<JsonElement>>> second = getInBackground(apiClient,
+                Collections.<String, String>emptyMap());
+        while (apiClient.getCollapsedRequests() == 0) {
+            Thread.sleep(1);
+        }
+        delegate.release.countDown();
+
+        for (Future<Optional<ApiResponse<JsonElement>>> response : Arrays.asList(first, second)) {
+            try {
+                response.get();
+                fail("the failure of the request was not passed on");
+            } catch (ExecutionException e) {
+                assertThat(e.getCause()).isInstanceOf(IllegalStateException.class);
+            }
+        }
+        assertThat(delegate.calls).isEqualTo(1);
+    }
+
+    @Test
+    public void testAsynchronousRequestsAreCollapsed() throws Exception {
+        try (StubServer server = StubServer.start();
+             CommunicationHelper communicationHelper = GitHubApiTest.newCommunicationHelper()) {
+            server.stub("/a", "{\"a\": 1}");
+            server.setLatencyMillis(200);
+            CoalescingApiClient apiClient = new CoalescingApiClient(communicationHelper);
+
+            ListenableFuture<Optional<JsonElement>> first = apiClient.getResponseAsJsonAsync(server.url("/a"));
+            ListenableFuture<Optional<JsonElement>> second = apiClient.getResponseAsJsonAsync(server.url("/a"));
+            ListenableFuture<Optional<JsonElement>> cancelled = apiClient.getResponseAsJsonAsync(server.url("/a"));
+            cancelled.cancel(true);
+
+            assertThat(first.get().get().getAsJsonObject().get("a").getAsInt()).isEqualTo(1);
+            assertThat(second.get().get()).isEqualTo(first.get().get());
+            assertThat(server.hits("/a")).isEqualTo(1);
+            assertThat(apiClient.getCollapsedRequests()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    public void testAvailabilityChecksAreCollapsed() throws Exception {
+        try (final StubServer server = StubServer.start();
+             CommunicationHelper communicationHelper = GitHubApiTest.newCommunicationHelper()) {
+            server.stub("/", "{}");
+            server.setLatencyMillis(200);
+            final CoalescingApiClient apiClient = new CoalescingApiClient(communicationHelper);
+
+            ExecutorService executor = Executors.newFixedThreadPool(2);
+            List<Future<Boolean>> checks = new ArrayList<>();
+            for (int i = 0; i < 2; i++) {
+                checks.add(executor.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() {
+                        return apiClient.urlIsAvailable(server.url("/"));
+                    }
+                }));
+            }
+            for (Future<Boolean> check : checks) {
+                assertThat(check.get()).isTrue();
+            }
+            executor.shutdown();
+
+            assertThat(server.hits("/")).isEqualTo(1);
+        }
+    }
+
+    private static Future<Optional<ApiResponse<JsonElement>>> getInBackground(final ApiClient apiClient,
+                                                                             final Map<String, String> headers) {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            return executor.submit(new Callable<Optional<ApiResponse<JsonElement>>>() {
+                @Override
+                public Optional<ApiResponse<JsonElement>> call() {
+                    return apiClient.getResponse("/a", headers);
+                }
+            });
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Fails every request, but only once it is released.
+     */
+    private static class FailingApiClient extends ApiClient {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        volatile int calls;
+
+        @Override
+        public <T> Optional<ApiResponse<T>> getResponse(String uri, Map<String, String> requestHeaders,
+                                                        PayloadParser<T> parser) {
+            calls++;
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            throw new IllegalStateException("connection refused");
+        }
+
+        @Override
+        public <T> Optional<ApiResponse<T>> postResponse(String uri, String jsonBody, PayloadParser<T> parser) {
+            return getResponse(uri, Collections.<String, String>emptyMap(), parser);
+        }
+
+        @Override
+        public boolean hasStillApiCallsLeft() {
+            return true;
+        }
+
+        @Override
+        public boolean urlIsAvailable(String url) {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package de.bschandera.githubapininja;
+
+import net.sf.qualitycheck.exception.IllegalStateOfArgumentException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static de.bschandera.githubapininja.ModelFixtures.language;
+import static de.bschandera.githubapininja.ModelFixtures.repository;
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ColumnarCrawlReaderTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        File file = temporaryFolder.newFile();
+        final List<Repository> written = Arrays.asList(
+                repository(5, language("Java", 100), language("Scala", 7)),
+                repository(3),
+                repository(Long.MAX_VALUE, language("Kotlin", Long.MAX_VALUE), language("Java", 1)),
+                repository(1, language("\u00c9moji-Lang \u2615", 42)));
+        try (ColumnarCrawlWriter writer = new ColumnarCrawlWriter(file, 2)) {
+            assertThat(writer.writeAll(written.iterator())).isEqualTo(4);
+        }
+
+        try (ColumnarCrawlReader reader = ColumnarCrawlReader.open(file)) {
+            assertThat(reader.getRepositories()).isEqualTo(4);
+            assertThat(reader.getRows()).isEqualTo(5);
+            assertThat(reader.getLanguageNames()).containsExactly("Java", "Scala", "Kotlin", "\u00c9moji-Lang \u2615");
+            assertThat(rows(reader)).containsExactly("5 Java 100", "5 Scala 7", Long.MAX_VALUE + " Kotlin "
+                    + Long.MAX_VALUE, Long.MAX_VALUE + " Java 1", "1 \u00c9moji-Lang \u2615 42");
+        }
+    }
+
+    @Test
+    public void testFlush_writesPartialBlock() throws IOException {
+        File file = temporaryFolder.newFile();
+        try (ColumnarCrawlWriter writer = new ColumnarCrawlWriter(file)) {
+            writer.write(repository(1, language("Java", 100)));
+            writer.write(repository(2, language("Scala", 7)));
+            writer.flush();
+
+            try (ColumnarCrawlReader reader = ColumnarCrawlReader.open(file)) {
+                assertThat(rows(reader)).containsExactly("1 Java 100", "2 Scala 7");
+            }
+
+            writer.write(repository(3, language("Java", 1)));
+        }
+
+        try (ColumnarCrawlReader reader = ColumnarCrawlReader.open(file)) {
+            assertThat(reader.getLanguageNames()).containsExactly("Java", "Scala");
+            assertThat(rows(reader)).containsExactly("1 Java 100", "2 Scala 7", "3 Java 1");
+        }
+    }
+
+    @Test
+    public void testAggregateEqualsAggregationOfObjects() throws IOException {
+        File file = temporaryFolder.newFile();
+        List<Repository> repositories = new ArrayList<>();
+        for (int id = 1; id <= 1000; id++) {
+            repositories.add(repository(id, language("L" + id % 7, id), language("L" + id % 3, 2 * id)));
+        }
+        repositories.add(repository(1001, language("L0", Long.MAX_VALUE)));
+        try (ColumnarCrawlWriter writer = new ColumnarCrawlWriter(file, 100)) {
+            writer.writeAll(repositories.iterator());
+        }
+
+        try (ColumnarCrawlReader reader = ColumnarCrawlReader.open(file)) {
+            assertThat(reader.aggregate()).isEqualTo(new LanguageAggregator().addAll(repositories).getLanguages());
+        }
+    }
+
+    @Test
+    public void testMapsLargeFilesInChunks() throws IOException {
+        File file = temporaryFolder.newFile();
+        List<Repository> repositories = new ArrayList<>();
+        for (int id = 1; id <= 500; id++) {
+            repositories.add(repository(id, language("L" + id % 11, id), language("L" + id % 5, id)));
+        }
+        try (ColumnarCrawlWriter writer = new ColumnarCrawlWriter(file, 10)) {
+            writer.writeAll(repositories.iterator());
+        }
+
+        try (ColumnarCrawlReader whole = ColumnarCrawlReader.open(file);
+             ColumnarCrawlReader chunked = ColumnarCrawlReader.open(file, 1024)) {
+            assertThat(whole.getChunks()).isEqualTo(1);
+            assertThat(chunked.getChunks()).isGreaterThan(1);
+            assertThat(chunked.getRepositories()).isEqualTo(500);
+            assertThat(chunked.getLanguageNames()).isEqualTo(whole.getLanguageNames());
+            assertThat(rows(chunked)).isEqualTo(rows(whole));
+            assertThat(chunked.aggregate()).isEqualTo(new LanguageAggregator().addAll(repositories).getLanguages());
+        }
+    }
+
+    @Test(expected = IllegalStateOfArgumentException.class)
+    public void testRejectsBlockLargerThanChunk() throws IOException {
+        File file = temporaryFolder.newFile();
+        try (ColumnarCrawlWriter writer = new ColumnarCrawlWriter(file)) {
+            for (int id = 1; id <= 100; id++) {
+                writer.write(repository(id, language("Java", id)));
+            }
+        }
+
+        ColumnarCrawlReader.open(file, 64);
+    }
+
+    @Test
+    public void testIgnoresTornLastBlock() throws IOException {
+        File file = temporaryFolder.newFile();
+        try (ColumnarCrawlWriter writer = new ColumnarCrawlWriter(file, 1)) {
+            writer.write(repository(1, language("Java", 1)));
+            writer.write(repository(2, language("Go", 2)));
+        }
+        try (RandomAccessFile torn = new RandomAccessFile(file, "rw")) {
+            torn.setLength(torn.length() - 3);
+        }
+
+        try (ColumnarCrawlReader reader = ColumnarCrawlReader.open(file)) {
+            assertThat(reader.getRepositories()).isEqualTo(1);
+            assertThat(reader.aggregate()).containsOnly(language("Java", 1));
+        }
+    }
+
+    @Test
+    public void testEmptyFile() throws IOException {
+        File file = temporaryFolder.newFile();
+        new ColumnarCrawlWriter(file).close();
+
+        try (ColumnarCrawlReader reader = ColumnarCrawlReader.open(file)) {
+            assertThat(reader.getRepositories()).isEqualTo(0);
+            assertThat(reader.aggregate()).isEmpty();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testRejectsOtherFiles() throws IOException {
+        ColumnarCrawlReader.open(temporaryFolder.newFile());
+    }
+
+    private static List<String> rows(final ColumnarCrawlReader reader) {
+        final List<String> result = new ArrayList<>();
+        reader.scan(new ColumnarCrawlReader.RowVisitor() {
+            @Override
+            public void visit(long repositoryId, int language, long bytes) {
+                result.add(repositoryId + " " + reader.getLanguageNames().get(language) + " " + bytes);
+            }
+        });
+        return result;
+    }
+}
@@ -1,42 +1,62 @@
 package de.bschandera.githubapininja;
 
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.gson.JsonElement;
+import net.sf.qualitycheck.exception.IllegalStateOfArgumentException;
 import org.apache.http.Header;
 import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
 import org.apache.http.StatusLine;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpGet;
+import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.message.BasicHttpResponse;
 import org.junit.Ignore;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.scribe.model.OAuthRequest;
 import org.scribe.model.Response;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assert.fail;
 import static org.mockito.Mockito.*;
 
 public class CommunicationHelperTest {
 
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     @Test
     public void testGetResponseAsJson() throws Exception {
-        CommunicationHelper communicationHelper = new CommunicationHelper();
-        final Response response = mock(Response.class);
-        when(response.isSuccessful()).thenReturn(true);
-        when(response.getHeader("X-RateLimit-Remaining")).thenReturn("1");
-        when(response.getBody()).thenReturn(
+        CommunicationHelper communicationHelper = new CommunicationHelper(HttpClientBuilder.create().build());
+        final HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        response.addHeader("X-RateLimit-Remaining", "1");
+        response.setEntity(new StringEntity(
                 "{\n" +
                         "  \"Body\": 0123456789\n" +
-                        "}\n");
+                        "}\n", StandardCharsets.UTF_8));
 
         assertThat(communicationHelper.tryGetResponseAsJson(response).isPresent()).isTrue();
     }
 
     @Test
     public void testGetResponseAsJsonWhenRequestNotSuccessful() throws Exception {
-        CommunicationHelper communicationHelper = new CommunicationHelper();
-        final Response response = mock(Response.class);
-        when(response.isSuccessful()).thenReturn(false);
+        CommunicationHelper communicationHelper = new CommunicationHelper(HttpClientBuilder.create().build());
+        final HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 500, "Internal Server Error");
         assertThat(communicationHelper.tryGetResponseAsJson(response).isPresent()).isFalse();
     }
 
@@ -127,6 +147,288 @@ public class CommunicationHelperTest {
         assertThat(communicationHelper.hasStillApiCallsLeft()).isFalse();
     }
 
+    @Test
+    public void testGetResponseAsync_manyRequestsInFlight() throws Exception {
+        try (StubServer server = StubServer.start();
+             CommunicationHelper communicationHelper = newCommunicationHelper()) {
+            server.setLatencyMillis(300);
+            List<ListenableFuture<Optional<JsonElement>>> responses = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                server.stub("/repos/r" + i + "/languages", "{\"Java\": " + i + "}");
+                responses.add(communicationHelper.getResponseAsJsonAsync(server.url("/repos/r" + i + "/languages")));
+            }
+
+            List<Optional<JsonElement>> payloads = Futures.allAsList(responses).get(10, TimeUnit.SECONDS);
+
+            for (int i = 0; i < 40; i++) {
+                assertThat(payloads.get(i).get().getAsJsonObject().get("Java").getAsInt()).isEqualTo(i);
+            }
+            assertThat(server.maxConcurrentRequests()).isGreaterThan(30);
+            assertThat(communicationHelper.getCredentialPool().getRemaining()).isEqualTo(10);
+        }
+    }
+
+    @Test
+    public void testGetResponseAsync_notModifiedAndNotSuccessful() throws Exception {
+        try (StubServer server = StubServer.start();
+             CommunicationHelper communicationHelper = newCommunicationHelper()) {
+            server.stub("/repos/r0/languages", new StubServer.Reply(304, "").withHeader("ETag", "\"abc\""));
+
+            Optional<ApiResponse<JsonElement>> notModified = communicationHelper.getResponseAsync(
+                    server.url("/repos/r0/languages"), Collections.singletonMap("If-None-Match", "\"abc\""),
+                    PayloadParser.JSON_TREE).get(5, TimeUnit.SECONDS);
+            Optional<JsonElement> notFound = communicationHelper.getResponseAsJsonAsync(server.url("/missing"))
+                    .get(5, TimeUnit.SECONDS);
+
+            assertThat(notModified.get().isNotModified()).isTrue();
+            assertThat(notModified.get().getHeader("etag").get()).isEqualTo("\"abc\"");
+            assertThat(server.lastRequestHeader("/repos/r0/languages", "If-None-Match")).isEqualTo("\"abc\"");
+            assertThat(notFound.isPresent()).isFalse();
+        }
+    }
+
+    @Test
+    public void testGetResponse_retriesAfterSecondaryRateLimit() throws Exception {
+        RateLimitSchedulerTest.FakeClock clock = new RateLimitSchedulerTest.FakeClock(0);
+        try (StubServer server = StubServer.start()) {
+            server.stub("/repos/r0/languages",
+                    new StubServer.Reply(403, "{\"message\": \"secondary rate limit\"}").withHeader("Retry-After", "5"),
+                    StubServer.Reply.ok("{\"Java\": 1}"));
+            CommunicationHelper communicationHelper = new CommunicationHelper(HttpClientBuilder.create().build(),
+                    new OAuthHelper("token"), new RateLimitScheduler(new RateLimitBudget(50), 100, clock));
+
+            Optional<JsonElement> languages = communicationHelper.getResponseAsJson(server.url("/repos/r0/languages"));
+
+            assertThat(languages.get().getAsJsonObject().get("Java").getAsInt()).isEqualTo(1);
+            assertThat(server.hits("/repos/r0/languages")).isEqualTo(2);
+            assertThat(clock.currentTimeMillis()).isEqualTo(5000);
+        }
+    }
+
+    @Test
+    public void testGetResponse_rateLimitRetriesAreNoAttemptsOfRetryPolicy() throws Exception {
+        RateLimitSchedulerTest.FakeClock clock = new RateLimitSchedulerTest.FakeClock(0);
+        StubServer.Reply rateLimited = new StubServer.Reply(429, "{\"message\": \"secondary rate limit\"}")
+                .withHeader("Retry-After", "5");
+        try (StubServer server = StubServer.start()) {
+            server.stub("/repos/r0/languages", rateLimited, rateLimited, rateLimited,
+                    StubServer.Reply.ok("{\"Java\": 1}"));
+            CommunicationHelper communicationHelper = new CommunicationHelper(HttpClientBuilder.create().build(),
+                    new CredentialPool(ImmutableList.of(new CredentialPool.Credential(new OAuthHelper("token"),
+                            new RateLimitScheduler(new RateLimitBudget(50), 100, clock)))),
+                    GitHubApiTest.NO_BACKOFF.withMaxAttempts(1), new CircuitBreaker());
+
+            Optional<JsonElement> languages = communicationHelper.getResponseAsJson(server.url("/repos/r0/languages"));
+
+            assertThat(languages.get().getAsJsonObject().get("Java").getAsInt()).isEqualTo(1);
+            assertThat(server.hits("/repos/r0/languages")).isEqualTo(4);
+            assertThat(clock.currentTimeMillis()).isEqualTo(15000);
+        }
+    }
+
+    @Test
+    public void testGetResponse_spreadsCallsOverTokens() throws Exception {
+        try (StubServer server = StubServer.start()) {
+            server.stub("/repos/r0/languages", "{\"Java\": 1}");
+            CredentialPool credentialPool = new CredentialPool(Arrays.asList("first", "second"));
+            CommunicationHelper communicationHelper = new CommunicationHelper(HttpClientBuilder.create().build(),
+                    credentialPool);
+
+            for (int i = 0; i < 10; i++) {
+                assertThat(communicationHelper.getResponseAsJson(server.url("/repos/r0/languages")).isPresent())
+                        .isTrue();
+            }
+
+            assertThat(credentialPool.getCredentials().get(0).getBudget().getRemaining()).isEqualTo(45);
+            assertThat(credentialPool.getCredentials().get(1).getBudget().getRemaining()).isEqualTo(45);
+        }
+    }
+
+    @Test
+    public void testGetResponse_retriesTransientFailures() throws Exception {
+        try (StubServer server = StubServer.start();
+             CommunicationHelper communicationHelper = GitHubApiTest.newCommunicationHelper()) {
+            server.stub("/repos/r0/languages", new StubServer.Reply(502, "{\"message\": \"Bad Gateway\"}"),
+                    StubServer.Reply.disconnect(), StubServer.Reply.ok("{\"Java\": 1}"));
+            server.stub("/repos/r1/languages", new StubServer.Reply(404, "{\"message\": \"Not Found\"}"),
+                    StubServer.Reply.ok("{\"Java\": 1}"));
+
+            Optional<JsonElement> languages = communicationHelper.getResponseAsJson(server.url("/repos/r0/languages"));
+            Optional<JsonElement> notFound = communicationHelper.getResponseAsJson(server.url("/repos/r1/languages"));
+
+            assertThat(languages.get().getAsJsonObject().get("Java").getAsInt()).isEqualTo(1);
+            assertThat(server.hits("/repos/r0/languages")).isEqualTo(3);
+            assertThat(notFound.isPresent()).isFalse();
+            assertThat(server.hits("/repos/r1/languages")).isEqualTo(1);
+        }
+    }
+
+    @Test
+    public void testGetResponse_givesUpAtDeadline() throws Exception {
+        RetryPolicy retryPolicy = GitHubApiTest.NO_BACKOFF.withMaxAttempts(10)
+                .withDeadline(150, TimeUnit.MILLISECONDS);
+        try (StubServer server = StubServer.start();
+             CommunicationHelper communicationHelper = GitHubApiTest.newCommunicationHelper(retryPolicy,
+                     new CircuitBreaker())) {
+            server.stub("/repos/r0/languages", new StubServer.Reply(503, "{\"message\": \"Unavailable\"}"));
+            server.setLatencyMillis(100);
+
+            assertThat(communicationHelper.getResponseAsJson(server.url("/repos/r0/languages")).isPresent()).isFalse();
+
+            assertThat(server.hits("/repos/r0/languages")).isEqualTo(2);
+        }
+    }
+
+    @Test
+    public void testGetResponseAsync_retriesTransientFailures() throws Exception {
+        RetryPolicy retryPolicy = RetryPolicy.defaults().withBackoff(50, 50, TimeUnit.MILLISECONDS);
+        try (StubServer server = StubServer.start();
+             CommunicationHelper communicationHelper = GitHubApiTest.newCommunicationHelper(retryPolicy,
+                     new CircuitBreaker())) {
+            server.stub("/repos/r0/languages", StubServer.Reply.disconnect(),
+                    new StubServer.Reply(503, "{\"message\": \"Unavailable\"}"), StubServer.Reply.ok("{\"Java\": 1}"));
+            server.stub("/repos/r1/languages", new StubServer.Reply(500, "{\"message\": \"Server Error\"}"));
+
+            Optional<JsonElement> languages = communicationHelper
+                    .getResponseAsJsonAsync(server.url("/repos/r0/languages")).get(5, TimeUnit.SECONDS);
+            Optional<JsonElement> failed = communicationHelper
+                    .getResponseAsJsonAsync(server.url("/repos/r1/languages")).get(5, TimeUnit.SECONDS);
+
+            assertThat(languages.get().getAsJsonObject().get("Java").getAsInt()).isEqualTo(1);
+            assertThat(server.hits("/repos/r0/languages")).isEqualTo(3);
+            assertThat(failed.isPresent()).isFalse();
+            assertThat(server.hits("/repos/r1/languages")).isEqualTo(retryPolicy.getMaxAttempts());
+        }
+    }
+
+    @Test
+    public void testGetResponseAsync_pacedRetryDoesNotBlockTimer() throws Exception {
+        RateLimitSchedulerTest.FakeClock clock = new RateLimitSchedulerTest.FakeClock(0);
+        try (StubServer server = StubServer.start()) {
+            server.setRateLimitRemaining(1);
+            server.stub("/repos/r0/languages", new StubServer.Reply(503, "{\"message\": \"Unavailable\"}")
+                    .withHeader("X-RateLimit-Reset", "3600"));
+            CommunicationHelper communicationHelper = new CommunicationHelper(HttpClientBuilder.create().build(),
+                    new CredentialPool(ImmutableList.of(new CredentialPool.Credential(new OAuthHelper("token"),
+                            new RateLimitScheduler(new RateLimitBudget(50), 100, clock)))),
+                    GitHubApiTest.NO_BACKOFF, new CircuitBreaker());
+
+            ListenableFuture<Optional<JsonElement>> languages =
+                    communicationHelper.getResponseAsJsonAsync(server.url("/repos/r0/languages"));
+            Thread.sleep(200);
+
+            assertThat(languages.isDone()).isFalse();
+            assertThat(server.hits("/repos/r0/languages")).isEqualTo(1);
+            assertThat(clock.getLongestSleepMillis()).isEqualTo(0);
+
+            communicationHelper.close();
+            try {
+                languages.get(5, TimeUnit.SECONDS);
+                fail("closed while waiting for the retry");
+            } catch (ExecutionException e) {
+                assertThat(e.getCause()).isInstanceOf(IllegalStateException.class);
+            }
+        }
+    }
+
+    @Test
+    public void testGetResponse_circuitBreakerStopsCallsWhileGitHubFails() throws Exception {
+        RateLimitSchedulerTest.FakeClock clock = new RateLimitSchedulerTest.FakeClock(0);
+        CircuitBreaker circuitBreaker = new CircuitBreaker(4, 4, 0.5, 30, TimeUnit.SECONDS, clock);
+        try (StubServer server = StubServer.start();
+             CommunicationHelper communicationHelper = GitHubApiTest.newCommunicationHelper(
+                     GitHubApiTest.NO_BACKOFF.withMaxAttempts(1), circuitBreaker)) {
+            server.stub("/repos/r0/languages", new StubServer.Reply(502, "{\"message\": \"Bad Gateway\"}"));
+            for (int i = 0; i < 6; i++) {
+                communicationHelper.getResponseAsJson(server.url("/repos/r0/languages"));
+            }
+            Optional<JsonElement> rejectedAsync = communicationHelper
+                    .getResponseAsJsonAsync(server.url("/repos/r0/languages")).get(5, TimeUnit.SECONDS);
+
+            assertThat(server.hits("/repos/r0/languages")).isEqualTo(4);
+            assertThat(rejectedAsync.isPresent()).isFalse();
+            assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+            assertThat(circuitBreaker.getRejectedCalls()).isEqualTo(3);
+
+            clock.sleep(TimeUnit.SECONDS.toMillis(30));
+            server.stub("/repos/r0/languages", "{\"Java\": 1}");
+
+            assertThat(communicationHelper.getResponseAsJson(server.url("/repos/r0/languages")).isPresent()).isTrue();
+            assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        }
+    }
+
+    @Test
+    public void testGetResponse_releasesProbeWhenNoCallIsLeft() {
+        RateLimitSchedulerTest.FakeClock clock = new RateLimitSchedulerTest.FakeClock(0);
+        CircuitBreaker circuitBreaker = new CircuitBreaker(1, 1, 1, 0, TimeUnit.SECONDS, clock);
+        circuitBreaker.onFailure();
+        CommunicationHelper communicationHelper = new CommunicationHelper(HttpClientBuilder.create().build(),
+                new CredentialPool(ImmutableList.of(new CredentialPool.Credential(new OAuthHelper("token"),
+                        new RateLimitScheduler(new RateLimitBudget(0), 100, clock)))),
+                GitHubApiTest.NO_BACKOFF, circuitBreaker);
+
+        try {
+            communicationHelper.getResponseAsJson("http://localhost/repos/r0/languages");
+            fail("no call is left");
+        } catch (IllegalStateOfArgumentException e) {
+            // expected
+        }
+
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+        assertThat(circuitBreaker.tryAcquire()).isTrue();
+    }
+
+    @Test
+    public void testGetResponse_releasesProbeWhenResponseCannotBeRead() throws Exception {
+        RateLimitSchedulerTest.FakeClock clock = new RateLimitSchedulerTest.FakeClock(0);
+        CircuitBreaker circuitBreaker = new CircuitBreaker(1, 1, 1, 0, TimeUnit.SECONDS, clock);
+        circuitBreaker.onFailure();
+        try (StubServer server = StubServer.start();
+             CommunicationHelper communicationHelper = GitHubApiTest.newCommunicationHelper(
+                     GitHubApiTest.NO_BACKOFF, circuitBreaker)) {
+            server.stub("/repos/r0/languages", new StubServer.Reply(429, "{\"message\": \"slow down\"}")
+                    .withHeader("Retry-After", "soon"));
+
+            try {
+                communicationHelper.getResponseAsJson(server.url("/repos/r0/languages"));
+                fail("Retry-After is not a number");
+            } catch (NumberFormatException e) {
+                // expected
+            }
+            try {
+                communicationHelper.getResponseAsJsonAsync(server.url("/repos/r0/languages")).get(5, TimeUnit.SECONDS);
+                fail("Retry-After is not a number");
+            } catch (ExecutionException e) {
+                assertThat(e.getCause()).isInstanceOf(NumberFormatException.class);
+            }
+
+            assertThat(server.hits("/repos/r0/languages")).isEqualTo(2);
+            assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+            assertThat(circuitBreaker.tryAcquire()).isTrue();
+        }
+    }
+
+    @Test
+    public void testGetResponse_rejectedTokenIsRemovedFromStore() throws Exception {
+        TokenStore tokenStore = new TokenStore(temporaryFolder.newFile());
+        tokenStore.add("revoked");
+        try (StubServer server = StubServer.start();
+             CommunicationHelper communicationHelper = new CommunicationHelper(HttpClientBuilder.create().build(),
+                     CredentialPool.fromStore(tokenStore).get())) {
+            server.stub("/repos/r0/languages", new StubServer.Reply(401, "{\"message\": \"Bad credentials\"}"));
+
+            assertThat(communicationHelper.getResponseAsJson(server.url("/repos/r0/languages")).isPresent()).isFalse();
+
+            assertThat(server.hits("/repos/r0/languages")).isEqualTo(1);
+            assertThat(tokenStore.read()).isEmpty();
+        }
+    }
+
+    private static CommunicationHelper newCommunicationHelper() {
+        return new CommunicationHelper(HttpClientBuilder.create().build(), new OAuthHelper("token"));
+    }
+
     @Ignore
     @Test
     public void testGetResponseAsJson_failedMocking() {
@@ -0,0 +1,48 @@
+package de.bschandera.githubapininja;
+
+import org.apache.http.pool.PoolStats;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ConnectionPoolTest {
+
+    @Test
+    public void testConnectionsAreReturnedAndReused() throws Exception {
+        try (StubServer server = StubServer.start();
+             ConnectionPool pool = new ConnectionPool(10, 5, 30, TimeUnit.SECONDS)) {
+            server.stub("/repos/r0/languages", "{\"Java\": 1}");
+            CommunicationHelper communicationHelper = new CommunicationHelper(pool.getHttpClient(),
+                    new OAuthHelper("token"));
+
+            for (int i = 0; i < 5; i++) {
+                assertThat(communicationHelper.getResponseAsJson(server.url("/repos/r0/languages")).isPresent()).isTrue();
+                assertThat(communicationHelper.getResponseAsJson(server.url("/missing")).isPresent()).isFalse();
+                assertThat(communicationHelper.urlIsAvailable(server.url("/repos/r0/languages"))).isTrue();
+            }
+
+            PoolStats stats = pool.getStats();
+            assertThat(stats.getLeased()).isEqualTo(0);
+            assertThat(stats.getAvailable()).isEqualTo(1);
+            assertThat(stats.getPending()).isEqualTo(0);
+            assertThat(stats.getMax()).isEqualTo(10);
+        }
+    }
+
+    @Test
+    public void testIdleConnectionsAreClosed() throws Exception {
+        try (StubServer server = StubServer.start();
+             ConnectionPool pool = new ConnectionPool(10, 5, 100, TimeUnit.MILLISECONDS)) {
+            server.stub("/repos/r0/languages", "{\"Java\": 1}");
+            new CommunicationHelper(pool.getHttpClient(), new OAuthHelper("token"))
+                    .getResponseAsJson(server.url("/repos/r0/languages"));
+            assertThat(pool.getStats().getAvailable()).isEqualTo(1);
+
+            Thread.sleep(500);
+
+            assertThat(pool.getStats().getAvailable()).isEqualTo(0);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package de.bschandera.githubapininja;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class CrawlCheckpointTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testResumesAfterReopen() throws IOException {
+        File file = new File(temporaryFolder.getRoot(), "checkpoint/crawl.log");
+        try (CrawlCheckpoint checkpoint = CrawlCheckpoint.open(file, 10)) {
+            assertThat(checkpoint.getSinceId()).isEqualTo(0);
+            checkpoint.record(repository(3, 10));
+            checkpoint.record(repository(7, 5));
+        }
+
+        try (CrawlCheckpoint checkpoint = CrawlCheckpoint.open(file, 10)) {
+            assertThat(checkpoint.getSinceId()).isEqualTo(7);
+            assertThat(checkpoint.getRepositories()).isEqualTo(2);
+            assertThat(checkpoint.snapshot().getLanguages()).containsOnly(java(15));
+        }
+    }
+
+    @Test
+    public void testDropsTornLastLine() throws IOException {
+        File file = temporaryFolder.newFile();
+        try (CrawlCheckpoint checkpoint = CrawlCheckpoint.open(file, 1)) {
+            checkpoint.record(repository(1, 1));
+        }
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write("{\"type\":\"repository\",\"id\":\"2\",\"langu".getBytes(StandardCharsets.UTF_8));
+        }
+
+        try (CrawlCheckpoint checkpoint = CrawlCheckpoint.open(file, 1)) {
+            assertThat(checkpoint.getSinceId()).isEqualTo(1);
+            assertThat(checkpoint.getRepositories()).isEqualTo(1);
+            checkpoint.record(repository(2, 2));
+        }
+
+        try (CrawlCheckpoint checkpoint = CrawlCheckpoint.open(file, 1)) {
+            assertThat(checkpoint.getSinceId()).isEqualTo(2);
+            assertThat(checkpoint.snapshot().getLanguages()).containsOnly(java(3));
+        }
+    }
+
+    @Test
+    public void testCompactKeepsProgressInOneLine() throws IOException {
+        File file = temporaryFolder.newFile();
+        try (CrawlCheckpoint checkpoint = CrawlCheckpoint.open(file, 100)) {
+            for (int id = 1; id <= 5; id++) {
+                checkpoint.record(repository(id, id));
+            }
+            checkpoint.compact();
+            checkpoint.record(repository(6, 6));
+        }
+        assertThat(Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)).hasSize(2);
+
+        try (CrawlCheckpoint checkpoint = CrawlCheckpoint.open(file, 100)) {
+            assertThat(checkpoint.getSinceId()).isEqualTo(6);
+            assertThat(checkpoint.getRepositories()).isEqualTo(6);
+            assertThat(checkpoint.snapshot().getLanguages()).containsOnly(java(21));
+            assertThat(checkpoint.snapshot().getRepositories(java(21))).isEqualTo(6);
+            assertThat(checkpoint.snapshot().getSharePercentile(java(21), 50).get())
+                    .isEqualTo(new BigDecimal("1.00"));
+        }
+    }
+
+    @Test
+    public void testRecord_compactsLongLog() throws IOException {
+        File file = temporaryFolder.newFile();
+        try (CrawlCheckpoint checkpoint = CrawlCheckpoint.open(file, 10, 100)) {
+            for (int id = 1; id <= 1000; id++) {
+                checkpoint.record(repository(id, 1));
+            }
+        }
+        assertThat(Files.readAllLines(file.toPath(), StandardCharsets.UTF_8).size()).isLessThanOrEqualTo(1 + 100 + 10);
+
+        try (CrawlCheckpoint checkpoint = CrawlCheckpoint.open(file, 10, 100)) {
+            assertThat(checkpoint.getSinceId()).isEqualTo(1000);
+            assertThat(checkpoint.getRepositories()).isEqualTo(1000);
+            assertThat(checkpoint.snapshot().getLanguages()).containsOnly(java(1000));
+        }
+    }
+
+    @Test
+    public void testClear() throws IOException {
+        File file = temporaryFolder.newFile();
+        try (CrawlCheckpoint checkpoint = CrawlCheckpoint.open(file, 1)) {
+            checkpoint.record(repository(1, 1));
+            checkpoint.clear();
+        }
+
+        try (CrawlCheckpoint checkpoint = CrawlCheckpoint.open(file, 1)) {
+            assertThat(checkpoint.getSinceId()).isEqualTo(0);
+            assertThat(checkpoint.getRepositories()).isEqualTo(0);
+            assertThat(checkpoint.snapshot().getLanguages()).isEmpty();
+        }
+    }
+
+    @Test
+    public void testCrawlPublicRepositories_resumesWhereCheckpointStopped() throws IOException {
+        File file = temporaryFolder.newFile();
+        try (StubServer server = StubServer.start()) {
+            GitHubApiTest.stubPublicRepos(server, 3);
+            server.stub("/repositories?since=1", "[{\"id\": 2, \"languages_url\": \""
+                    + server.url("/repos/r2/languages") + "\"}]");
+            server.stub("/repositories?since=2", "[]");
+            GitHubApi gitHubApi = GitHubApiTest.gitHubApiFor(server);
+
+            try (CrawlCheckpoint checkpoint = CrawlCheckpoint.open(file, 10)) {
+                final CrawlLimits limits = CrawlLimits.unbounded().withMaxRepositories(2);
+                assertThat(count(gitHubApi.crawlPublicRepositories(limits, checkpoint))).isEqualTo(2);
+            }
+
+            try (CrawlCheckpoint checkpoint = CrawlCheckpoint.open(file, 10)) {
+                final CrawlLimits limits = CrawlLimits.unbounded().withMaxRepositories(3);
+                Iterator<Repository> repositories = gitHubApi.crawlPublicRepositories(limits, checkpoint);
+
+                assertThat(repositories.next().getId()).isEqualTo("2");
+                assertThat(repositories.hasNext()).isFalse();
+                assertThat(checkpoint.snapshot().getRepositories()).isEqualTo(3);
+                assertThat(checkpoint.snapshot().getLanguages()).containsOnly(java(6));
+            }
+            assertThat(server.hits("/repos/r0/languages")).isEqualTo(1);
+        }
+    }
+
+    private static int count(Iterator<Repository> repositories) {
+        int result = 0;
+        while (repositories.hasNext()) {
+            repositories.next();
+            result++;
+        }
+        return result;
+    }
+
+    private static Repository repository(int id, int bytesOfJava) {
+        return new Repository(String.valueOf(id), "r" + id + "/languages", Arrays.asList(java(bytesOfJava)));
+    }
+
+    private static Language java(int bytes) {
+        return new Language("Java", BigDecimal.valueOf(bytes));
+    }
+}
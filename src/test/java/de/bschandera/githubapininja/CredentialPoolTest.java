@@ -0,0 +1,77 @@
+package de.bschandera.githubapininja;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class CredentialPoolTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testFromFile() throws IOException {
+        File file = temporaryFolder.newFile();
+        Files.write(file.toPath(), Arrays.asList("# nightly job", "first", "", "  second  "), StandardCharsets.UTF_8);
+
+        assertThat(CredentialPool.fromFile(file).get().getCredentials()).hasSize(2);
+    }
+
+    @Test
+    public void testFromFile_missingOrEmpty() throws IOException {
+        File file = temporaryFolder.newFile();
+        Files.write(file.toPath(), Arrays.asList("# no tokens yet"), StandardCharsets.UTF_8);
+
+        assertThat(CredentialPool.fromFile(file).isPresent()).isFalse();
+        assertThat(CredentialPool.fromFile(new File(temporaryFolder.getRoot(), "missing")).isPresent()).isFalse();
+    }
+
+    @Test
+    public void testFromStore_rejectedTokenIsRemoved() throws IOException {
+        TokenStore tokenStore = new TokenStore(temporaryFolder.newFile());
+        tokenStore.add("first");
+        tokenStore.add("second");
+
+        CredentialPool pool = CredentialPool.fromStore(tokenStore).get();
+        pool.getCredentials().get(0).getOAuthHelper().rejected();
+
+        assertThat(pool.getCredentials()).hasSize(2);
+        assertThat(tokenStore.read()).containsExactly("second");
+        assertThat(CredentialPool.fromStore(new TokenStore(temporaryFolder.newFile())).isPresent()).isFalse();
+    }
+
+    @Test
+    public void testSelect_mostCallsLeft() {
+        CredentialPool pool = new CredentialPool(Arrays.asList("first", "second", "third"));
+        reconcile(pool.getCredentials().get(0), 100, 1000);
+        reconcile(pool.getCredentials().get(1), 4000, 1000);
+        reconcile(pool.getCredentials().get(2), 3000, 1000);
+
+        assertThat(pool.select()).isSameAs(pool.getCredentials().get(1));
+        assertThat(pool.getRemaining()).isEqualTo(7100);
+    }
+
+    @Test
+    public void testSelect_earliestResetIfAllAreUsedUp() {
+        CredentialPool pool = new CredentialPool(Arrays.asList("first", "second", "third"));
+        reconcile(pool.getCredentials().get(0), 0, 3000);
+        reconcile(pool.getCredentials().get(1), 0, 2000);
+        reconcile(pool.getCredentials().get(2), 0, 0);
+
+        assertThat(pool.select()).isSameAs(pool.getCredentials().get(1));
+        assertThat(pool.hasCallsLeft()).isTrue();
+    }
+
+    private static void reconcile(CredentialPool.Credential credential, int remaining, long resetEpochSeconds) {
+        credential.getBudget().tryAcquire();
+        credential.getBudget().reconcile(remaining, resetEpochSeconds);
+    }
+}
@@ -1,18 +1,35 @@
 package de.bschandera.githubapininja;
 
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
 import de.bschandera.githubapininja.GitHubApi;
 import de.bschandera.githubapininja.Language;
 import de.bschandera.githubapininja.Repository;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import java.io.File;
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.fest.assertions.Assertions.assertThat;
 
 public class GitHubApiTest {
+    static final RetryPolicy NO_BACKOFF = RetryPolicy.defaults().withBackoff(0, 0, TimeUnit.MILLISECONDS);
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
 
     @Test
     public void testAggregateLanguagesOfRepos() {
@@ -59,4 +76,217 @@ public class GitHubApiTest {
         assertThat(GitHubApi.aggregateLanguagesOfRepos(repositories)).containsOnly(new Language("Java", _200));
     }
 
+    @Test
+    public void testGetPublicRepositoriesConcurrently() throws IOException {
+        try (StubServer server = StubServer.start()) {
+            stubPublicRepos(server, 20);
+            server.setLatencyMillis(50);
+
+            List<Repository> repositories = gitHubApiFor(server).getPublicRepositories(5);
+
+            assertThat(repositories).hasSize(20);
+            for (int i = 0; i < 20; i++) {
+                assertThat(repositories.get(i).getId()).isEqualTo(String.valueOf(i));
+                assertThat(repositories.get(i).getLanguages()).containsOnly(new Language("Java", BigDecimal.valueOf(i + 1)));
+            }
+            assertThat(server.maxConcurrentRequests()).isGreaterThan(1).isLessThanOrEqualTo(5);
+        }
+    }
+
+    @Test
+    public void testGetPublicRepositoriesConcurrently_sendsFailedRequestsAgain() throws IOException {
+        try (StubServer server = StubServer.start();
+             CommunicationHelper communicationHelper = newCommunicationHelper(NO_BACKOFF.withMaxAttempts(8),
+                     new CircuitBreaker())) {
+            // retries are api calls as well, all of them fit into the 50 calls of a token
+            stubPublicRepos(server, 25);
+            server.injectFaults(0.2, new StubServer.Reply(502, "{\"message\": \"Server Error\"}"));
+
+            List<Repository> repositories = new GitHubApi(communicationHelper, server.url(""))
+                    .getPublicRepositories(5);
+
+            assertThat(repositories).hasSize(25);
+            for (int i = 0; i < 25; i++) {
+                assertThat(repositories.get(i).getLanguages()).containsOnly(new Language("Java", BigDecimal.valueOf(i + 1)));
+            }
+            assertThat(server.injectedFaults()).isGreaterThan(0);
+        }
+    }
+
+    @Test
+    public void testGetPublicRepositoriesConcurrently_stopsWhenNoApiCallsLeft() throws IOException {
+        try (StubServer server = StubServer.start()) {
+            stubPublicRepos(server, 20);
+            server.setLatencyMillis(20);
+            server.setRateLimitRemaining(6);
+
+            List<Repository> repositories = gitHubApiFor(server).getPublicRepositories(2);
+
+            assertThat(repositories.size()).isGreaterThan(0).isLessThan(20);
+            for (int i = 0; i < repositories.size(); i++) {
+                assertThat(repositories.get(i).getId()).isEqualTo(String.valueOf(i));
+            }
+        }
+    }
+
+    @Test
+    public void testAggregateLanguagesOfCrawls() throws IOException {
+        File first = temporaryFolder.newFile();
+        try (ColumnarCrawlWriter writer = new ColumnarCrawlWriter(first)) {
+            writer.write(new Repository("1", Arrays.asList(new Language("Java", BigDecimal.valueOf(100)))));
+        }
+        File second = temporaryFolder.newFile();
+        try (ColumnarCrawlWriter writer = new ColumnarCrawlWriter(second)) {
+            writer.write(new Repository("2", Arrays.asList(new Language("Go", BigDecimal.valueOf(5)),
+                    new Language("Java", BigDecimal.valueOf(50)))));
+        }
+
+        assertThat(GitHubApi.aggregateLanguagesOfCrawls(Arrays.asList(first, second))).containsExactly(
+                new Language("Java", BigDecimal.valueOf(150)), new Language("Go", BigDecimal.valueOf(5)));
+    }
+
+    @Test
+    public void testCrawlPublicRepositories() throws IOException {
+        try (StubServer server = StubServer.start()) {
+            stubPublicRepos(server, 3);
+            server.stub("/repositories?since=2", "[]");
+
+            Iterator<Repository> repositories = gitHubApiFor(server).crawlPublicRepositories(CrawlLimits.unbounded());
+
+            for (int i = 0; i < 3; i++) {
+                final Repository repository = repositories.next();
+                assertThat(repository.getId()).isEqualTo(String.valueOf(i));
+                assertThat(repository.getLanguages()).containsOnly(new Language("Java", BigDecimal.valueOf(i + 1)));
+            }
+            assertThat(repositories.hasNext()).isFalse();
+        }
+    }
+
+    @Test
+    public void testGetPublicRepositories_revalidatesCachedLanguages() throws IOException {
+        File cacheFile = temporaryFolder.newFile();
+        try (StubServer server = StubServer.start()) {
+            stubPublicRepos(server, 1);
+            server.stub("/repos/r0/languages",
+                    StubServer.Reply.ok("{\"Java\": 1}").withHeader("ETag", "\"abc\""),
+                    new StubServer.Reply(304, ""));
+
+            try (LanguagesCache languagesCache = new LanguagesCache(cacheFile, 10)) {
+                assertThat(gitHubApiFor(server, languagesCache).getPublicRepositories()).hasSize(1);
+            }
+            assertThat(server.lastRequestHeader("/repos/r0/languages", "If-None-Match")).isNull();
+
+            try (LanguagesCache languagesCache = new LanguagesCache(cacheFile, 10)) {
+                GitHubApi gitHubApi = gitHubApiFor(server, languagesCache);
+                List<Repository> repositories = gitHubApi.getPublicRepositories();
+
+                assertThat(repositories.get(0).getLanguages()).containsOnly(new Language("Java", BigDecimal.ONE));
+            }
+            assertThat(server.lastRequestHeader("/repos/r0/languages", "If-None-Match")).isEqualTo("\"abc\"");
+            assertThat(server.hits("/repos/r0/languages")).isEqualTo(2);
+        }
+    }
+
+    @Test
+    public void testGetPublicRepositoriesWithExecutor() throws IOException {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try (StubServer server = StubServer.start()) {
+            stubPublicRepos(server, 20);
+            server.setLatencyMillis(50);
+
+            List<Repository> repositories = gitHubApiFor(server).getPublicRepositories(executor, 10, TimeUnit.SECONDS);
+
+            assertThat(repositories).hasSize(20);
+            for (int i = 0; i < 20; i++) {
+                assertThat(repositories.get(i).getId()).isEqualTo(String.valueOf(i));
+            }
+            assertThat(server.maxConcurrentRequests()).isGreaterThan(10);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testGetPublicRepositoriesWithExecutor_deadlineCancelsAllRequests() throws IOException {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try (StubServer server = StubServer.start()) {
+            stubPublicRepos(server, 10);
+            final CommunicationHelper communicationHelper = newCommunicationHelper();
+            final AtomicInteger requestsInFlight = new AtomicInteger();
+            GitHubApi gitHubApi = new GitHubApi(new ApiClient() {
+                @Override
+                public <T> Optional<ApiResponse<T>> getResponse(String uri, Map<String, String> requestHeaders,
+                                                                PayloadParser<T> parser) {
+                    requestsInFlight.incrementAndGet();
+                    try {
+                        return communicationHelper.getResponse(uri, requestHeaders, parser);
+                    } finally {
+                        requestsInFlight.decrementAndGet();
+                    }
+                }
+
+                @Override
+                public <T> Optional<ApiResponse<T>> postResponse(String uri, String jsonBody,
+                                                                 PayloadParser<T> parser) {
+                    return communicationHelper.postResponse(uri, jsonBody, parser);
+                }
+
+                @Override
+                public boolean hasStillApiCallsLeft() {
+                    return communicationHelper.hasStillApiCallsLeft();
+                }
+
+                @Override
+                public boolean urlIsAvailable(String url) {
+                    return communicationHelper.urlIsAvailable(url);
+                }
+            }, server.url(""));
+            server.setLatencyMillis(300);
+
+            List<Repository> repositories = gitHubApi.getPublicRepositories(executor, 500, TimeUnit.MILLISECONDS);
+
+            assertThat(repositories).isEmpty();
+            assertThat(requestsInFlight.get()).isEqualTo(0);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    static GitHubApi gitHubApiFor(StubServer server, LanguagesCache languagesCache) {
+        return new GitHubApi(newCommunicationHelper(), server.url(""), Optional.of(languagesCache));
+    }
+
+    static GitHubApi gitHubApiFor(StubServer server) {
+        return new GitHubApi(newCommunicationHelper(), server.url(""));
+    }
+
+    /**
+     * Allows enough connections for all concurrent requests of the tests. Failed requests are sent again right away,
+     * only by the helper.
+     */
+    static CommunicationHelper newCommunicationHelper() {
+        return newCommunicationHelper(NO_BACKOFF, new CircuitBreaker());
+    }
+
+    static CommunicationHelper newCommunicationHelper(RetryPolicy retryPolicy, CircuitBreaker circuitBreaker) {
+        return new CommunicationHelper(HttpClientBuilder.create().setMaxConnPerRoute(100).setMaxConnTotal(100)
+                .disableAutomaticRetries().build(), new CredentialPool(ImmutableList.of("token")), retryPolicy,
+                circuitBreaker);
+    }
+
+    /**
+     * Repository {@code i} has the id {@code i} and consists of {@code i + 1} bytes of Java.
+     */
+    static void stubPublicRepos(StubServer server, int count) {
+        StringBuilder repos = new StringBuilder("[");
+        for (int i = 0; i < count; i++) {
+            final String languagesPath = "/repos/r" + i + "/languages";
+            server.stub(languagesPath, "{\"Java\": " + (i + 1) + "}");
+            repos.append(i == 0 ? "" : ",")
+                    .append("{\"id\": ").append(i)
+                    .append(", \"languages_url\": \"").append(server.url(languagesPath)).append("\"}");
+        }
+        server.stub("/repositories", repos.append("]").toString());
+    }
+
 }
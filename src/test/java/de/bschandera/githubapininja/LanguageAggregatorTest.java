@@ -0,0 +1,150 @@
+package de.bschandera.githubapininja;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static de.bschandera.githubapininja.ModelFixtures.language;
+import static org.fest.assertions.Assertions.assertThat;
+
+public class LanguageAggregatorTest {
+
+    @Test
+    public void testAdd() {
+        LanguageAggregator aggregator = new LanguageAggregator()
+                .add(new Repository("1", Arrays.asList(language("Java", 100), language("Scala", 50))))
+                .add(new Repository("2", Arrays.asList(language("Scala", 25), language("Haskell", 0))));
+
+        assertThat(aggregator.size()).isEqualTo(3);
+        assertThat(aggregator.getLanguages())
+                .containsExactly(language("Java", 100), language("Scala", 75), language("Haskell", 0));
+    }
+
+    @Test
+    public void testAdd_manyLanguages() {
+        LanguageAggregator aggregator = new LanguageAggregator();
+        for (int i = 0; i < 1000; i++) {
+            aggregator.add(language("Language-" + (i % 300), i));
+        }
+
+        assertThat(aggregator.size()).isEqualTo(300);
+        assertThat(aggregator.getLanguages().get(299)).isEqualTo(language("Language-299", 299 + 599 + 899));
+    }
+
+    @Test
+    public void testAdd_counterOverflowContinuesAsBigDecimal() {
+        LanguageAggregator aggregator = new LanguageAggregator()
+                .add(language("Java", Long.MAX_VALUE))
+                .add(language("Java", Long.MAX_VALUE))
+                .add(language("Java", 2));
+
+        final BigDecimal expected = BigDecimal.valueOf(Long.MAX_VALUE).multiply(BigDecimal.valueOf(2))
+                .add(BigDecimal.valueOf(2));
+        assertThat(aggregator.getLanguages()).containsExactly(new Language("Java", expected));
+    }
+
+    @Test
+    public void testAdd_bytesThatAreNoLong() {
+        final BigDecimal huge = BigDecimal.valueOf(Long.MAX_VALUE).add(BigDecimal.ONE);
+        LanguageAggregator aggregator = new LanguageAggregator()
+                .add(new Language("Java", huge))
+                .add(language("Java", 1))
+                .add(new Language("Ruby", new BigDecimal("1.50")))
+                .add(language("Ruby", 1));
+
+        assertThat(aggregator.getLanguages()).containsExactly(
+                new Language("Java", huge.add(BigDecimal.ONE)),
+                new Language("Ruby", new BigDecimal("2.50")));
+    }
+
+    @Test
+    public void testRepositoriesAndSharePercentiles() {
+        LanguageAggregator aggregator = new LanguageAggregator();
+        for (int javaBytes = 1; javaBytes <= 100; javaBytes++) {
+            aggregator.add(new Repository(String.valueOf(javaBytes),
+                    Arrays.asList(language("Java", javaBytes), language("Ruby", 100 - javaBytes))));
+        }
+        aggregator.add(language("Java", 5));
+
+        assertThat(aggregator.getRepositories("Java")).isEqualTo(101);
+        assertThat(aggregator.getRepositories("Ruby")).isEqualTo(100);
+        assertThat(aggregator.getRepositories("Go")).isEqualTo(0);
+        assertThat(aggregator.getSharePercentile("Java", 50).get()).isEqualTo(new BigDecimal("0.50"));
+        assertThat(aggregator.getSharePercentile("Java", 90).get()).isEqualTo(new BigDecimal("0.90"));
+        assertThat(aggregator.getSharePercentile("Java", 100).get()).isEqualTo(new BigDecimal("1.00"));
+        assertThat(aggregator.getSharePercentile("Ruby", 0).get()).isEqualTo(new BigDecimal("0.00"));
+        assertThat(aggregator.getSharePercentile("Go", 50).isPresent()).isFalse();
+    }
+
+    @Test
+    public void testSharesFollowSubtractAndMerge() {
+        Repository onlyJava = new Repository("1", Arrays.asList(language("Java", 10)));
+        Repository mostlyRuby = new Repository("2", Arrays.asList(language("Java", 1), language("Ruby", 3)));
+        LanguageAggregator left = new LanguageAggregator().add(onlyJava).add(mostlyRuby);
+        left.subtract(onlyJava);
+
+        assertThat(left.getRepositories("Java")).isEqualTo(1);
+        assertThat(left.getSharePercentile("Java", 100).get()).isEqualTo(new BigDecimal("0.25"));
+
+        LanguageAggregator merged = new LanguageAggregator().add(onlyJava).merge(left);
+        assertThat(merged.getRepositories("Java")).isEqualTo(2);
+        assertThat(merged.getSharePercentile("Java", 50).get()).isEqualTo(new BigDecimal("0.25"));
+        assertThat(merged.getSharePercentile("Java", 100).get()).isEqualTo(new BigDecimal("1.00"));
+    }
+
+    @Test
+    public void testMerge() {
+        LanguageAggregator left = new LanguageAggregator()
+                .add(language("Java", 100))
+                .add(language("Scala", Long.MAX_VALUE));
+        LanguageAggregator right = new LanguageAggregator()
+                .add(language("Haskell", 1))
+                .add(language("Scala", 10))
+                .add(new Language("Java", new BigDecimal("0.5")));
+
+        assertThat(left.merge(right).getLanguages()).containsExactly(
+                new Language("Java", new BigDecimal("100.5")),
+                new Language("Scala", BigDecimal.valueOf(Long.MAX_VALUE).add(BigDecimal.TEN)),
+                language("Haskell", 1));
+        assertThat(right.getLanguages()).hasSize(3);
+    }
+
+    @Test
+    public void testAggregateInParallel_sameResultAsSequential() {
+        List<Repository> repositories = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            repositories.add(new Repository(String.valueOf(i), Arrays.asList(
+                    language("Language-" + (i % 97), i), language("Language-" + (i % 13), 1))));
+        }
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            List<Language> parallel = LanguageAggregator.aggregateInParallel(repositories, pool).getLanguages();
+
+            assertThat(parallel).isEqualTo(new LanguageAggregator().addAll(repositories).getLanguages());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testSubtract() {
+        LanguageAggregator aggregator = new LanguageAggregator()
+                .add(language("Java", Long.MAX_VALUE))
+                .add(language("Java", 10))
+                .add(language("Ruby", 5));
+
+        aggregator.subtract(language("Java", Long.MAX_VALUE)).subtract(language("Ruby", 5));
+
+        assertThat(aggregator.size()).isEqualTo(1);
+        assertThat(aggregator.getLanguages()).containsExactly(language("Java", 10));
+    }
+
+    @Test
+    public void testGetLanguages_nothingAdded() {
+        assertThat(new LanguageAggregator().getLanguages()).isEmpty();
+    }
+}
@@ -0,0 +1,37 @@
+package de.bschandera.githubapininja;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static de.bschandera.githubapininja.ModelFixtures.language;
+import static org.fest.assertions.Assertions.assertThat;
+
+public class LanguageRankingTest {
+
+    @Test
+    public void testTop() {
+        List<Language> languages = Arrays.asList(language("Java", 300), language("Ruby", 700), language("Go", 50),
+                language("C", 300), language("Haskell", 10));
+
+        assertThat(LanguageRanking.top(languages, 3))
+                .containsExactly(language("Ruby", 700), language("C", 300), language("Java", 300));
+        assertThat(LanguageRanking.top(languages, 10)).hasSize(5);
+        assertThat(LanguageRanking.top(languages, 0)).isEmpty();
+    }
+
+    @Test
+    public void testTop_sameAsSorting() {
+        List<Language> languages = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            languages.add(language("L" + i, (i * 7919L) % 1009));
+        }
+        List<Language> sorted = new ArrayList<>(languages);
+        Collections.sort(sorted, LanguageRanking.BY_BYTES_DESCENDING);
+
+        assertThat(LanguageRanking.top(languages, 20)).isEqualTo(sorted.subList(0, 20));
+    }
+}
@@ -0,0 +1,103 @@
+package de.bschandera.githubapininja;
+
+import net.sf.qualitycheck.exception.IllegalStateOfArgumentException;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+import static de.bschandera.githubapininja.ModelFixtures.language;
+import static org.fest.assertions.Assertions.assertThat;
+
+public class LanguageStatisticsTest {
+
+    @Test
+    public void testSnapshot() {
+        LanguageStatistics statistics = new LanguageStatistics();
+        statistics.add(new Repository("1", Arrays.asList(language("Java", 300), language("Ruby", 100))));
+        LanguageStatistics.Snapshot first = statistics.snapshot();
+        statistics.add(new Repository("2", Arrays.asList(language("Ruby", 600))));
+        LanguageStatistics.Snapshot second = statistics.snapshot();
+
+        assertThat(first.getRepositories()).isEqualTo(1);
+        assertThat(first.getBytesTotal()).isEqualTo(BigDecimal.valueOf(400));
+        assertThat(first.getShare(language("Java", 300))).isEqualTo(new BigDecimal("0.750000"));
+        assertThat(second.getRepositories()).isEqualTo(2);
+        assertThat(second.getLanguages()).containsExactly(language("Java", 300), language("Ruby", 700));
+        assertThat(second.getShare(language("Ruby", 700))).isEqualTo(new BigDecimal("0.700000"));
+    }
+
+    @Test
+    public void testSnapshot_sameAsBatchAggregation() {
+        Repository[] repositories = {
+                new Repository("1", Arrays.asList(language("Java", 100), language("Scala", 100))),
+                new Repository("2", Arrays.asList(language("Scala", 100), language("Haskell", 100))),
+                new Repository("3", Arrays.asList(language("Haskell", 200), language("Java", 300)))};
+        LanguageStatistics statistics = new LanguageStatistics();
+        for (Repository repository : repositories) {
+            statistics.add(repository);
+        }
+
+        assertThat(statistics.snapshot().getLanguages())
+                .isEqualTo(GitHubApi.aggregateLanguagesOfRepos(Arrays.asList(repositories)));
+    }
+
+    @Test
+    public void testSnapshot_topRepositoriesAndMedianShare() {
+        LanguageStatistics statistics = new LanguageStatistics();
+        statistics.add(new Repository("1", Arrays.asList(language("Java", 300), language("Ruby", 100))));
+        statistics.add(new Repository("2", Arrays.asList(language("Ruby", 600), language("Go", 200))));
+        statistics.add(new Repository("3", Arrays.asList(language("Go", 50))));
+
+        LanguageStatistics.Snapshot snapshot = statistics.snapshot();
+
+        assertThat(snapshot.top(2)).containsExactly(language("Ruby", 700), language("Java", 300));
+        assertThat(snapshot.getRepositories(language("Go", 250))).isEqualTo(2);
+        assertThat(snapshot.getSharePercentile(language("Ruby", 700), 50).get()).isEqualTo(new BigDecimal("0.25"));
+        assertThat(snapshot.getSharePercentile(language("Go", 250), 100).get()).isEqualTo(new BigDecimal("1.00"));
+    }
+
+    @Test
+    public void testReplace() {
+        Repository previous = new Repository("1", Arrays.asList(language("Java", 300), language("Ruby", 100)));
+        LanguageStatistics statistics = new LanguageStatistics();
+        statistics.add(previous);
+        statistics.add(new Repository("2", Arrays.asList(language("Java", 50))));
+
+        statistics.replace(previous, new Repository("1", Arrays.asList(language("Java", 500))));
+
+        LanguageStatistics.Snapshot snapshot = statistics.snapshot();
+        assertThat(snapshot.getRepositories()).isEqualTo(2);
+        assertThat(snapshot.getLanguages()).containsExactly(language("Java", 550));
+        assertThat(snapshot.getBytesTotal()).isEqualTo(BigDecimal.valueOf(550));
+    }
+
+    @Test
+    public void testRetract() {
+        Repository repository = new Repository("1", Arrays.asList(language("Java", 300)));
+        LanguageStatistics statistics = new LanguageStatistics();
+        statistics.add(repository);
+
+        statistics.retract(repository);
+
+        assertThat(statistics.snapshot().getRepositories()).isEqualTo(0);
+        assertThat(statistics.snapshot().getLanguages()).isEmpty();
+        assertThat(statistics.snapshot().getBytesTotal()).isEqualTo(BigDecimal.ZERO);
+    }
+
+    @Test(expected = IllegalStateOfArgumentException.class)
+    public void testRetract_repositoryThatWasNotAdded() {
+        LanguageStatistics statistics = new LanguageStatistics();
+        statistics.add(new Repository("1", Arrays.asList(language("Java", 300))));
+
+        statistics.retract(new Repository("2", Arrays.asList(language("Java", 301))));
+    }
+
+    @Test
+    public void testGetShare_noBytesAtAll() {
+        LanguageStatistics statistics = new LanguageStatistics();
+        statistics.add(new Repository("1", Arrays.asList(language("Java", 0))));
+
+        assertThat(statistics.snapshot().getShare(language("Java", 0))).isEqualTo(new BigDecimal("0.000000"));
+    }
+}
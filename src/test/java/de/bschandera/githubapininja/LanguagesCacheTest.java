@@ -0,0 +1,85 @@
+package de.bschandera.githubapininja;
+
+import com.google.common.base.Optional;
+import org.fest.assertions.MapAssert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class LanguagesCacheTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testPutAndGet() throws IOException {
+        LanguagesCache cache = new LanguagesCache(new File(temporaryFolder.getRoot(), "cache.json"), 10);
+        cache.put("a/languages", entry("\"a\"", 100));
+
+        assertThat(cache.get("a/languages").get().getLanguages()).containsOnly(java(100));
+        assertThat(cache.get("a/languages").get().getETag().get()).isEqualTo("\"a\"");
+        assertThat(cache.get("b/languages").isPresent()).isFalse();
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() throws IOException {
+        LanguagesCache cache = new LanguagesCache(new File(temporaryFolder.getRoot(), "cache.json"), 2);
+        cache.put("a/languages", entry("\"a\"", 1));
+        cache.put("b/languages", entry("\"b\"", 2));
+        cache.get("a/languages");
+        cache.put("c/languages", entry("\"c\"", 3));
+
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.get("a/languages").isPresent()).isTrue();
+        assertThat(cache.get("b/languages").isPresent()).isFalse();
+        assertThat(cache.get("c/languages").isPresent()).isTrue();
+    }
+
+    @Test
+    public void testSurvivesRestart() throws IOException {
+        File file = new File(temporaryFolder.getRoot(), "cache/languages.json");
+        try (LanguagesCache cache = new LanguagesCache(file, 2)) {
+            cache.put("a/languages", entry("\"a\"", 1));
+            cache.put("b/languages", new LanguagesCache.CachedLanguages(Arrays.asList(java(2)),
+                    Optional.<String>absent(), Optional.of("Thu, 05 Jul 2012 15:31:30 GMT")));
+            cache.get("a/languages");
+        }
+
+        LanguagesCache cache = new LanguagesCache(file, 2);
+        assertThat(cache.get("a/languages").get().getLanguages()).containsOnly(java(1));
+        assertThat(cache.get("b/languages").get().conditionalRequestHeaders())
+                .hasSize(1)
+                .includes(MapAssert.entry("If-Modified-Since", "Thu, 05 Jul 2012 15:31:30 GMT"));
+    }
+
+    @Test
+    public void testSurvivesRestart_keepsRecency() throws IOException {
+        File file = new File(temporaryFolder.getRoot(), "cache.json");
+        try (LanguagesCache cache = new LanguagesCache(file, 2)) {
+            cache.put("a/languages", entry("\"a\"", 1));
+            cache.put("b/languages", entry("\"b\"", 2));
+            cache.get("a/languages");
+        }
+
+        LanguagesCache cache = new LanguagesCache(file, 2);
+        cache.put("c/languages", entry("\"c\"", 3));
+
+        assertThat(cache.get("b/languages").isPresent()).isFalse();
+        assertThat(cache.get("a/languages").isPresent()).isTrue();
+    }
+
+    private static LanguagesCache.CachedLanguages entry(String eTag, long javaBytes) {
+        return new LanguagesCache.CachedLanguages(Arrays.asList(java(javaBytes)), Optional.of(eTag), Optional.<String>absent());
+    }
+
+    private static Language java(long bytes) {
+        return new Language("Java", BigDecimal.valueOf(bytes));
+    }
+}
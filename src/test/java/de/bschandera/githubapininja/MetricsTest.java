@@ -0,0 +1,134 @@
+package de.bschandera.githubapininja;
+
+import net.sf.qualitycheck.exception.IllegalStateOfArgumentException;
+import org.junit.After;
+import org.junit.Test;
+
+import javax.management.Attribute;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+/**
+ * Metrics are global, so every test uses its own names.
+ */
+public class MetricsTest {
+
+    @After
+    public void tearDown() {
+        Metrics.setEnabled(false);
+    }
+
+    @Test
+    public void testRecordsNothingWhileDisabled() {
+        Metrics.Counter counter = Metrics.counter("test_disabled_total", "help");
+        Metrics.Timer timer = Metrics.timer("test_disabled_seconds", "help");
+
+        counter.increment();
+        timer.stop(timer.start());
+
+        assertThat(counter.get()).isEqualTo(0);
+        assertThat(timer.getCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void testTimerStartedWhileDisabledIsNotRecorded() {
+        Metrics.Timer timer = Metrics.timer("test_started_disabled_seconds", "help");
+        long start = timer.start();
+        Metrics.setEnabled(true);
+        timer.stop(start);
+
+        assertThat(timer.getCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void testSameNameAndLabelIsSameInstrument() {
+        Metrics.setEnabled(true);
+        Metrics.counter("test_same_total", "help", "reason", "a").add(2);
+        Metrics.counter("test_same_total", "help", "reason", "a").increment();
+        Metrics.counter("test_same_total", "help", "reason", "b").increment();
+
+        assertThat(Metrics.counter("test_same_total", "help", "reason", "a").get()).isEqualTo(3);
+        assertThat(Metrics.counter("test_same_total", "help", "reason", "b").get()).isEqualTo(1);
+    }
+
+    @Test(expected = IllegalStateOfArgumentException.class)
+    public void testNameHasOneType() {
+        Metrics.counter("test_typed", "help");
+        Metrics.timer("test_typed", "help");
+    }
+
+    @Test
+    public void testPrometheusText() {
+        Metrics.setEnabled(true);
+        Metrics.counter("test_text_total", "Things that happened", "reason", "say \"hi\"").add(3);
+        Metrics.gauge("test_text_remaining", "Things that are left", new Metrics.Gauge() {
+            @Override
+            public long getValue() {
+                return 42;
+            }
+        });
+        Metrics.Timer timer = Metrics.timer("test_text_seconds", "How long things took", "endpoint", "languages");
+        timer.record(2000);
+        timer.record(2000000);
+        timer.record(20000000000L);
+
+        String text = Metrics.toPrometheusText();
+        assertThat(text).contains("# HELP test_text_total Things that happened\n"
+                + "# TYPE test_text_total counter\n"
+                + "test_text_total{reason=\"say \\\"hi\\\"\"} 3\n");
+        assertThat(text).contains("# TYPE test_text_remaining gauge\ntest_text_remaining 42\n");
+        assertThat(text).contains("# TYPE test_text_seconds histogram\n"
+                + "test_text_seconds_bucket{endpoint=\"languages\",le=\"1.0E-5\"} 1\n");
+        assertThat(text).contains("test_text_seconds_bucket{endpoint=\"languages\",le=\"0.001\"} 1\n"
+                + "test_text_seconds_bucket{endpoint=\"languages\",le=\"0.005\"} 2\n");
+        assertThat(text).contains("test_text_seconds_bucket{endpoint=\"languages\",le=\"10.0\"} 2\n"
+                + "test_text_seconds_bucket{endpoint=\"languages\",le=\"+Inf\"} 3\n"
+                + "test_text_seconds_sum{endpoint=\"languages\"} 20.002002\n"
+                + "test_text_seconds_count{endpoint=\"languages\"} 3\n");
+    }
+
+    @Test
+    public void testMXBean() throws Exception {
+        Metrics.registerMXBean();
+        Metrics.registerMXBean();
+        Metrics.counter("test_bean_total", "help");
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("de.bschandera.githubapininja:type=Metrics");
+
+        server.setAttribute(name, new Attribute("Enabled", true));
+        assertThat(Metrics.isEnabled()).isTrue();
+        Metrics.counter("test_bean_total", "help").add(7);
+
+        TabularData counters = (TabularData) server.getAttribute(name, "Counters");
+        CompositeData counter = counters.get(new Object[]{"test_bean_total"});
+        assertThat(counter.get("value")).isEqualTo(7L);
+    }
+
+    @Test
+    public void testInstrumentsCommunicationHelper() throws IOException {
+        Metrics.setEnabled(true);
+        Metrics.Timer languages = Metrics.timer("github_request_seconds", "", "endpoint", "languages");
+        Metrics.Counter bytes = Metrics.counter("github_received_bytes_total", "");
+        Metrics.Counter statusErrors = Metrics.counter("github_errors_total", "", "reason", "status");
+        long languagesBefore = languages.getCount();
+        long bytesBefore = bytes.get();
+        long statusErrorsBefore = statusErrors.get();
+
+        try (StubServer server = StubServer.start();
+             CommunicationHelper communicationHelper = GitHubApiTest.newCommunicationHelper()) {
+            server.stub("/repos/a/languages", "{\"Java\": 1}");
+            communicationHelper.getResponse(server.url("/repos/a/languages"), ModelFactory.LANGUAGES_PARSER);
+            communicationHelper.getResponse(server.url("/missing"));
+        }
+
+        assertThat(languages.getCount() - languagesBefore).isEqualTo(1);
+        assertThat(bytes.get() - bytesBefore).isEqualTo("{\"Java\": 1}".length());
+        assertThat(statusErrors.get() - statusErrorsBefore).isEqualTo(1);
+    }
+}
@@ -1,15 +1,19 @@
 package de.bschandera.githubapininja;
 
+import com.google.common.base.Optional;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
 import de.bschandera.githubapininja.Language;
 import de.bschandera.githubapininja.ModelFactory;
 import de.bschandera.githubapininja.Repository;
 import org.junit.Test;
 
+import java.io.StringReader;
 import java.math.BigDecimal;
 import java.util.List;
+import java.util.Map;
 
 import static org.fest.assertions.Assertions.assertThat;
 
@@ -24,9 +28,11 @@ public class ModelFactoryTest {
         assertThat(repositories.get(0).getId()).isEqualTo("1");
         assertThat(repositories.get(0).getLanguages()).hasSize(0);
         assertThat(repositories.get(0).getLanguagesURL()).isEqualTo("https://api.github.com/repos/mojombo/grit/languages");
+        assertThat(repositories.get(0).getNodeId()).isEqualTo(Optional.of("MDEwOlJlcG9zaXRvcnkx"));
         assertThat(repositories.get(1).getId()).isEqualTo("26");
         assertThat(repositories.get(1).getLanguages()).hasSize(0);
         assertThat(repositories.get(1).getLanguagesURL()).isEqualTo("https://api.github.com/repos/wycats/merb-core/languages");
+        assertThat(repositories.get(1).getNodeId()).isEqualTo(Optional.<String>absent());
     }
 
     @Test
@@ -41,6 +47,64 @@ public class ModelFactoryTest {
         assertThat(languages.get(1).getBytes()).isEqualTo(BigDecimal.valueOf(948883));
     }
 
+    @Test
+    public void testParseReposWhileStreaming() throws Exception {
+        List<Repository> repositories = ModelFactory.parseRepos(new JsonReader(new StringReader(repoPayload_firstTwoRepos())));
+
+        assertThat(repositories).hasSize(2);
+        assertThat(repositories.get(0).getId()).isEqualTo("1");
+        assertThat(repositories.get(0).getLanguages()).hasSize(0);
+        assertThat(repositories.get(0).getLanguagesURL()).isEqualTo("https://api.github.com/repos/mojombo/grit/languages");
+        assertThat(repositories.get(0).getNodeId()).isEqualTo(Optional.of("MDEwOlJlcG9zaXRvcnkx"));
+        assertThat(repositories.get(1).getId()).isEqualTo("26");
+        assertThat(repositories.get(1).getLanguagesURL()).isEqualTo("https://api.github.com/repos/wycats/merb-core/languages");
+        assertThat(repositories.get(1).getNodeId()).isEqualTo(Optional.<String>absent());
+    }
+
+    @Test
+    public void testParseLanguagesWhileStreaming() throws Exception {
+        List<Language> languages = ModelFactory.parseLanguages(new JsonReader(new StringReader(languagePayload())));
+
+        assertThat(languages).hasSize(2);
+        assertThat(languages.get(0).getName()).isEqualTo("JavaScript");
+        assertThat(languages.get(0).getBytes()).isEqualTo(BigDecimal.valueOf(8925));
+        assertThat(languages.get(1).getName()).isEqualTo("Ruby");
+        assertThat(languages.get(1).getBytes()).isEqualTo(BigDecimal.valueOf(948883));
+    }
+
+    @Test
+    public void testParseLanguagesOfNodes() throws Exception {
+        Map<String, List<Language>> languages =
+                ModelFactory.parseLanguagesOfNodes(new JsonReader(new StringReader(nodesPayload())));
+
+        assertThat(languages).hasSize(2);
+        assertThat(languages.get("MDEwOlJlcG9zaXRvcnkyNg==")).containsExactly(
+                new Language("Ruby", BigDecimal.valueOf(948883)), new Language("JavaScript", BigDecimal.valueOf(8925)));
+        assertThat(languages.get("MDEwOlJlcG9zaXRvcnkx")).isEmpty();
+    }
+
+    private static String nodesPayload() {
+        // POST https://api.github.com/graphql, the second id is not known anymore
+        return "{\n" +
+                "  \"data\": {\n" +
+                "    \"nodes\": [\n" +
+                "      {\n" +
+                "        \"id\": \"MDEwOlJlcG9zaXRvcnkyNg==\",\n" +
+                "        \"languages\": {\n" +
+                "          \"edges\": [\n" +
+                "            {\"size\": 948883, \"node\": {\"name\": \"Ruby\"}},\n" +
+                "            {\"size\": 8925, \"node\": {\"name\": \"JavaScript\"}}\n" +
+                "          ]\n" +
+                "        }\n" +
+                "      },\n" +
+                "      null,\n" +
+                "      {\"id\": \"MDEwOlJlcG9zaXRvcnkx\", \"languages\": {\"edges\": []}}\n" +
+                "    ]\n" +
+                "  },\n" +
+                "  \"errors\": [{\"type\": \"NOT_FOUND\", \"path\": [\"nodes\", 1]}]\n" +
+                "}\n";
+    }
+
     private static String languagePayload() {
         // https://api.github.com/repos/wycats/merb-core/languages (id=26 see below)
         return "{\n" +
@@ -54,6 +118,7 @@ public class ModelFactoryTest {
         return "[\n" +
                 "  {\n" +
                 "    \"id\": 1,\n" +
+                "    \"node_id\": \"MDEwOlJlcG9zaXRvcnkx\",\n" +
                 "    \"name\": \"grit\",\n" +
                 "    \"full_name\": \"mojombo/grit\",\n" +
                 "    \"owner\": {\n" +
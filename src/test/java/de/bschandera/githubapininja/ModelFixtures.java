@@ -0,0 +1,26 @@
+package de.bschandera.githubapininja;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * Short factories for the model, shared by the tests.
+ */
+final class ModelFixtures {
+
+    private ModelFixtures() {
+    }
+
+    static Language language(String name, long bytes) {
+        return new Language(name, BigDecimal.valueOf(bytes));
+    }
+
+    /**
+     * @return repository with the id {@code id} whose languages url is {@code r<id>/languages}.
+     */
+    static Repository repository(long id, Language... languages) {
+        return new Repository(String.valueOf(id), "r" + id + "/languages",
+                languages.length == 0 ? Collections.<Language>emptyList() : Arrays.asList(languages));
+    }
+}
@@ -0,0 +1,101 @@
+package de.bschandera.githubapininja;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class RateLimitBudgetTest {
+
+    @Test
+    public void testTryAcquire() {
+        RateLimitBudget budget = new RateLimitBudget(2);
+        assertThat(budget.tryAcquire()).isTrue();
+        assertThat(budget.tryAcquire()).isTrue();
+        assertThat(budget.tryAcquire()).isFalse();
+        assertThat(budget.hasRemaining()).isFalse();
+    }
+
+    @Test
+    public void testCancelGivesReservationBack() {
+        RateLimitBudget budget = new RateLimitBudget(1);
+        assertThat(budget.tryAcquire()).isTrue();
+        budget.cancel();
+        assertThat(budget.getRemaining()).isEqualTo(1);
+    }
+
+    @Test
+    public void testReconcile_sameWindowOnlyShrinks() {
+        RateLimitBudget budget = new RateLimitBudget(50);
+        budget.tryAcquire();
+        budget.reconcile(4999, 1000);
+        assertThat(budget.getRemaining()).isEqualTo(4999);
+
+        budget.tryAcquire();
+        budget.reconcile(5000, 1000);
+        assertThat(budget.getRemaining()).isEqualTo(4998);
+
+        budget.tryAcquire();
+        budget.reconcile(10, 1000);
+        assertThat(budget.getRemaining()).isEqualTo(10);
+    }
+
+    @Test
+    public void testReconcile_laterResetStartsNewWindow() {
+        RateLimitBudget budget = new RateLimitBudget(50);
+        budget.tryAcquire();
+        budget.reconcile(0, 1000);
+        assertThat(budget.hasRemaining()).isFalse();
+
+        budget.reconcile(4999, 4600);
+        assertThat(budget.getRemaining()).isEqualTo(4999);
+        assertThat(budget.getResetEpochSeconds()).isEqualTo(4600);
+    }
+
+    @Test
+    public void testReconcile_subtractsCallsInFlight() {
+        RateLimitBudget budget = new RateLimitBudget(50);
+        budget.tryAcquire();
+        budget.tryAcquire();
+        budget.tryAcquire();
+
+        budget.reconcile(10, 1000);
+
+        assertThat(budget.getRemaining()).isEqualTo(8);
+    }
+
+    @Test
+    public void testTryAcquire_concurrentCallersNeverOvershoot() throws Exception {
+        final RateLimitBudget budget = new RateLimitBudget(1000);
+        final AtomicInteger acquired = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> workers = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            workers.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    start.await();
+                    for (int j = 0; j < 500; j++) {
+                        if (budget.tryAcquire()) {
+                            acquired.incrementAndGet();
+                        }
+                    }
+                    return null;
+                }
+            }));
+        }
+        start.countDown();
+        for (Future<?> worker : workers) {
+            worker.get();
+        }
+        executor.shutdown();
+
+        assertThat(acquired.get()).isEqualTo(1000);
+        assertThat(budget.getRemaining()).isEqualTo(0);
+    }
+}
@@ -0,0 +1,163 @@
+package de.bschandera.githubapininja;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Map;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class RateLimitSchedulerTest {
+    private static final long NOW_MILLIS = 1000000;
+    private static final long RESET_EPOCH_SECONDS = 1100;
+
+    @Test
+    public void testAcquire_burstThenPaced() throws InterruptedException {
+        FakeClock clock = new FakeClock(NOW_MILLIS);
+        RateLimitBudget budget = windowWith(10);
+        RateLimitScheduler scheduler = new RateLimitScheduler(budget, 2, clock);
+
+        assertThat(scheduler.acquire()).isTrue();
+        assertThat(scheduler.acquire()).isTrue();
+        assertThat(clock.currentTimeMillis()).isEqualTo(NOW_MILLIS);
+
+        assertThat(scheduler.acquire()).isTrue();
+        // the 8 remaining calls are spread over the 100 seconds until the reset
+        assertThat(clock.currentTimeMillis() - NOW_MILLIS).isGreaterThanOrEqualTo(12500).isLessThanOrEqualTo(12501);
+        assertThat(budget.getRemaining()).isEqualTo(7);
+    }
+
+    @Test
+    public void testAcquire_waitsForResetWhenWindowIsUsedUp() throws InterruptedException {
+        FakeClock clock = new FakeClock(NOW_MILLIS);
+        RateLimitBudget budget = windowWith(1);
+        RateLimitScheduler scheduler = new RateLimitScheduler(budget, 100, clock);
+        scheduler.onResponse(200, ImmutableMap.of("X-RateLimit-Limit", "60"));
+
+        assertThat(scheduler.acquire()).isTrue();
+        assertThat(scheduler.hasCallsLeft()).isTrue();
+        assertThat(scheduler.acquire()).isTrue();
+
+        assertThat(clock.currentTimeMillis()).isEqualTo(RESET_EPOCH_SECONDS * 1000);
+        assertThat(budget.getRemaining()).isEqualTo(59);
+    }
+
+    @Test
+    public void testAcquire_waitsForResetWhenServerReportsNoneRemainingMidWindow() throws InterruptedException {
+        FakeClock clock = new FakeClock(NOW_MILLIS);
+        RateLimitBudget budget = windowWith(5000);
+        RateLimitScheduler scheduler = new RateLimitScheduler(budget, 2, clock);
+        assertThat(scheduler.acquire()).isTrue();
+        assertThat(scheduler.acquire()).isTrue();
+
+        // e.g. another client shares the token
+        budget.reconcile(0, RESET_EPOCH_SECONDS);
+
+        assertThat(scheduler.acquire()).isTrue();
+        assertThat(clock.getLongestSleepMillis()).isEqualTo(RESET_EPOCH_SECONDS * 1000 - NOW_MILLIS);
+        assertThat(clock.currentTimeMillis()).isEqualTo(RESET_EPOCH_SECONDS * 1000);
+    }
+
+    @Test
+    public void testAcquire_unknownResetDoesNotWait() throws InterruptedException {
+        FakeClock clock = new FakeClock(NOW_MILLIS);
+        RateLimitScheduler scheduler = new RateLimitScheduler(new RateLimitBudget(1), 100, clock);
+
+        assertThat(scheduler.acquire()).isTrue();
+        assertThat(scheduler.hasCallsLeft()).isFalse();
+        assertThat(scheduler.acquire()).isFalse();
+        assertThat(clock.currentTimeMillis()).isEqualTo(NOW_MILLIS);
+    }
+
+    @Test
+    public void testTryAcquire_tellsWaitInsteadOfWaiting() {
+        FakeClock clock = new FakeClock(NOW_MILLIS);
+        RateLimitScheduler scheduler = new RateLimitScheduler(windowWith(1), 100, clock);
+
+        assertThat(scheduler.tryAcquire()).isEqualTo(0);
+        assertThat(scheduler.tryAcquire()).isEqualTo(RESET_EPOCH_SECONDS * 1000 - NOW_MILLIS);
+        assertThat(scheduler.tryAcquire()).isEqualTo(RESET_EPOCH_SECONDS * 1000 - NOW_MILLIS);
+        assertThat(clock.currentTimeMillis()).isEqualTo(NOW_MILLIS);
+        assertThat(new RateLimitScheduler(new RateLimitBudget(0), 100, clock).tryAcquire()).isLessThan(0);
+    }
+
+    @Test
+    public void testOnResponse_retryAfterPausesAllCalls() throws InterruptedException {
+        FakeClock clock = new FakeClock(NOW_MILLIS);
+        RateLimitScheduler scheduler = new RateLimitScheduler(new RateLimitBudget(50), 100, clock);
+
+        assertThat(scheduler.onResponse(403, ImmutableMap.of("retry-after", "30"))).isTrue();
+        assertThat(scheduler.acquire()).isTrue();
+
+        assertThat(clock.currentTimeMillis()).isEqualTo(NOW_MILLIS + 30000);
+    }
+
+    @Test
+    public void testOnResponse_primaryLimitPausesUntilReset() throws InterruptedException {
+        FakeClock clock = new FakeClock(NOW_MILLIS);
+        RateLimitScheduler scheduler = new RateLimitScheduler(new RateLimitBudget(50), 100, clock);
+
+        assertThat(scheduler.onResponse(403, ImmutableMap.of(
+                "X-RateLimit-Remaining", "0",
+                "X-RateLimit-Reset", String.valueOf(RESET_EPOCH_SECONDS)))).isTrue();
+        assertThat(scheduler.acquire()).isTrue();
+
+        assertThat(clock.currentTimeMillis()).isEqualTo(RESET_EPOCH_SECONDS * 1000);
+    }
+
+    @Test
+    public void testOnResponse_secondaryLimitWithoutRetryAfterPausesOneMinute() throws InterruptedException {
+        FakeClock clock = new FakeClock(NOW_MILLIS);
+        RateLimitScheduler scheduler = new RateLimitScheduler(new RateLimitBudget(50), 100, clock);
+
+        assertThat(scheduler.onResponse(429, Collections.<String, String>emptyMap())).isTrue();
+        assertThat(scheduler.acquire()).isTrue();
+
+        assertThat(clock.currentTimeMillis()).isEqualTo(NOW_MILLIS + 60000);
+    }
+
+    @Test
+    public void testOnResponse_otherResponsesAreNotRateLimited() {
+        RateLimitScheduler scheduler = new RateLimitScheduler(new RateLimitBudget(50), 100, new FakeClock(NOW_MILLIS));
+        final Map<String, String> headers = ImmutableMap.of("X-RateLimit-Remaining", "10");
+
+        assertThat(scheduler.onResponse(200, headers)).isFalse();
+        assertThat(scheduler.onResponse(403, headers)).isFalse();
+        assertThat(scheduler.onResponse(404, headers)).isFalse();
+    }
+
+    private static RateLimitBudget windowWith(int remaining) {
+        RateLimitBudget budget = new RateLimitBudget(50);
+        budget.tryAcquire();
+        budget.reconcile(remaining, RESET_EPOCH_SECONDS);
+        return budget;
+    }
+
+    /**
+     * Time only passes while someone sleeps.
+     */
+    static class FakeClock extends RateLimitScheduler.Clock {
+        private long millis;
+        private long longestSleepMillis;
+
+        FakeClock(long millis) {
+            this.millis = millis;
+        }
+
+        @Override
+        public synchronized long currentTimeMillis() {
+            return millis;
+        }
+
+        @Override
+        public synchronized void sleep(long millis) {
+            this.millis += millis;
+            longestSleepMillis = Math.max(longestSleepMillis, millis);
+        }
+
+        synchronized long getLongestSleepMillis() {
+            return longestSleepMillis;
+        }
+    }
+}
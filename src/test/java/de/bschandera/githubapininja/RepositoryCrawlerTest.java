@@ -0,0 +1,131 @@
+package de.bschandera.githubapininja;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableList;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class RepositoryCrawlerTest {
+    private StubServer server;
+
+    @Before
+    public void startServer() throws IOException {
+        server = StubServer.start();
+        server.stub("/repositories", StubServer.Reply.ok(reposPayload(1, 2))
+                .withHeader("Link", "<" + server.url("/repositories?since=2") + ">; rel=\"next\", "
+                        + "<" + server.url("/repositories{?since}") + ">; rel=\"first\""));
+        server.stub("/repositories?since=2", reposPayload(3, 4));
+        server.stub("/repositories?since=4", reposPayload(5));
+        server.stub("/repositories?since=5", "[]");
+    }
+
+    @After
+    public void stopServer() {
+        server.close();
+    }
+
+    @Test
+    public void testParseNextLink() {
+        final Optional<String> next = RepositoryCrawler.parseNextLink(Optional.of(
+                "<https://api.github.com/repositories{?since}>; rel=\"first\", "
+                        + "<https://api.github.com/repositories?since=367>; rel=\"next\""));
+        assertThat(next.get()).isEqualTo("https://api.github.com/repositories?since=367");
+
+        assertThat(RepositoryCrawler.parseNextLink(Optional.of("<https://api.github.com/x>; rel=\"first\"")).isPresent())
+                .isFalse();
+        assertThat(RepositoryCrawler.parseNextLink(Optional.<String>absent()).isPresent()).isFalse();
+    }
+
+    @Test
+    public void testCrawlFollowsLinkHeaderAndSinceCursor() {
+        assertThat(ids(crawler(CrawlLimits.unbounded(), Ticker.systemTicker()))).containsExactly("1", "2", "3", "4", "5");
+        assertThat(server.hits("/repositories")).isEqualTo(4);
+    }
+
+    @Test
+    public void testCrawlIsLazy() {
+        Iterator<Repository> crawler = crawler(CrawlLimits.unbounded(), Ticker.systemTicker());
+        assertThat(server.hits("/repositories")).isEqualTo(0);
+
+        crawler.next();
+        crawler.next();
+        assertThat(server.hits("/repositories")).isEqualTo(1);
+
+        crawler.next();
+        assertThat(server.hits("/repositories")).isEqualTo(2);
+    }
+
+    @Test
+    public void testCrawlStartsAtSinceId() {
+        assertThat(ids(crawler(CrawlLimits.unbounded().withSinceId(4), Ticker.systemTicker()))).containsExactly("5");
+    }
+
+    @Test
+    public void testCrawlStopsAtUntilId() {
+        assertThat(ids(crawler(CrawlLimits.unbounded().withUntilId(3), Ticker.systemTicker())))
+                .containsExactly("1", "2", "3");
+    }
+
+    @Test
+    public void testCrawlStopsAtMaxRepositories() {
+        assertThat(ids(crawler(CrawlLimits.unbounded().withMaxRepositories(2), Ticker.systemTicker())))
+                .containsExactly("1", "2");
+        assertThat(server.hits("/repositories")).isEqualTo(1);
+    }
+
+    @Test
+    public void testCrawlStopsWhenTimeBudgetIsUsedUp() {
+        final FakeTicker ticker = new FakeTicker();
+        Iterator<Repository> crawler = crawler(CrawlLimits.unbounded().withTimeBudget(1, TimeUnit.SECONDS), ticker);
+
+        assertThat(crawler.next().getId()).isEqualTo("1");
+        ticker.advance(TimeUnit.SECONDS.toNanos(1));
+        assertThat(crawler.hasNext()).isFalse();
+    }
+
+    private Iterator<Repository> crawler(CrawlLimits limits, Ticker ticker) {
+        CommunicationHelper communicationHelper =
+                new CommunicationHelper(HttpClientBuilder.create().build(), new OAuthHelper("token"));
+        return new RepositoryCrawler(communicationHelper, server.url("/repositories"), limits, ticker);
+    }
+
+    private static List<String> ids(Iterator<Repository> repositories) {
+        List<String> result = new ArrayList<>();
+        while (repositories.hasNext()) {
+            result.add(repositories.next().getId());
+        }
+        return result;
+    }
+
+    private String reposPayload(int... ids) {
+        List<String> repos = new ArrayList<>();
+        for (int id : ids) {
+            repos.add("{\"id\": " + id + ", \"languages_url\": \"" + server.url("/repos/r" + id + "/languages") + "\"}");
+        }
+        return ImmutableList.copyOf(repos).toString();
+    }
+
+    static class FakeTicker extends Ticker {
+        private long nanos;
+
+        @Override
+        public long read() {
+            return nanos;
+        }
+
+        void advance(long nanos) {
+            this.nanos += nanos;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package de.bschandera.githubapininja;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class RetryPolicyTest {
+
+    @Test
+    public void testRetriesTransientStatusCodesOnly() {
+        RetryPolicy retryPolicy = RetryPolicy.defaults();
+
+        assertThat(retryPolicy.isRetryable(502)).isTrue();
+        assertThat(retryPolicy.isRetryable(503)).isTrue();
+        assertThat(retryPolicy.isRetryable(404)).isFalse();
+        assertThat(retryPolicy.isRetryable(422)).isFalse();
+        assertThat(retryPolicy.withRetryableStatusCodes(Arrays.asList(404)).isRetryable(502)).isFalse();
+    }
+
+    @Test
+    public void testBackoffGrowsExponentiallyUpToMax() {
+        RetryPolicy retryPolicy = RetryPolicy.defaults().withBackoff(100, 1000, TimeUnit.MILLISECONDS);
+        Random noJitter = new Random() {
+            @Override
+            public double nextDouble() {
+                return 0.99999;
+            }
+        };
+
+        assertThat(retryPolicy.backoffMillis(1, noJitter)).isEqualTo(100);
+        assertThat(retryPolicy.backoffMillis(2, noJitter)).isEqualTo(200);
+        assertThat(retryPolicy.backoffMillis(4, noJitter)).isEqualTo(800);
+        assertThat(retryPolicy.backoffMillis(5, noJitter)).isEqualTo(1000);
+        assertThat(retryPolicy.backoffMillis(100, noJitter)).isEqualTo(1000);
+    }
+
+    @Test
+    public void testBackoffIsJittered() {
+        RetryPolicy retryPolicy = RetryPolicy.defaults().withBackoff(1, 1, TimeUnit.SECONDS);
+        Random random = new Random(42);
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (int i = 0; i < 1000; i++) {
+            final long backoff = retryPolicy.backoffMillis(3, random);
+            min = Math.min(min, backoff);
+            max = Math.max(max, backoff);
+        }
+
+        assertThat(min).isGreaterThanOrEqualTo(0).isLessThan(100);
+        assertThat(max).isGreaterThan(900).isLessThanOrEqualTo(1000);
+    }
+
+    @Test
+    public void testAllowsRetryWithinAttemptsAndDeadline() {
+        RetryPolicy retryPolicy = RetryPolicy.defaults().withMaxAttempts(3).withDeadline(1, TimeUnit.SECONDS);
+
+        assertThat(retryPolicy.allowsRetry(1, 0, 0)).isTrue();
+        assertThat(retryPolicy.allowsRetry(2, 500, 500)).isTrue();
+        assertThat(retryPolicy.allowsRetry(3, 0, 0)).isFalse();
+        assertThat(retryPolicy.allowsRetry(1, 800, 201)).isFalse();
+        assertThat(RetryPolicy.defaults().withMaxAttempts(1).allowsRetry(1, 0, 0)).isFalse();
+    }
+}
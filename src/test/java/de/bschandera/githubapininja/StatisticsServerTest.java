@@ -0,0 +1,143 @@
+package de.bschandera.githubapininja;
+
+import com.google.common.io.ByteStreams;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+import static de.bschandera.githubapininja.ModelFixtures.language;
+import static de.bschandera.githubapininja.ModelFixtures.repository;
+import static org.fest.assertions.Assertions.assertThat;
+
+public class StatisticsServerTest {
+
+    private StatisticsServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        server = StatisticsServer.start(new InetSocketAddress("localhost", 0), 2);
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    @Test
+    public void testUnavailableBeforeFirstPublication() throws IOException {
+        assertThat(open("/statistics").getResponseCode()).isEqualTo(503);
+    }
+
+    @Test
+    public void testStatisticsMostBytesFirst() throws IOException {
+        server.publish(snapshot(repository(1, language("Java", 10), language("C++", 30)),
+                repository(2, language("Java", 10))));
+
+        HttpURLConnection connection = open("/statistics");
+        assertThat(connection.getResponseCode()).isEqualTo(200);
+        assertThat(connection.getContentType()).isEqualTo("application/json; charset=utf-8");
+        JsonObject statistics = body(connection);
+        assertThat(statistics.get("repositories").getAsLong()).isEqualTo(2);
+        assertThat(statistics.get("bytesTotal").getAsLong()).isEqualTo(50);
+        JsonArray languages = statistics.getAsJsonArray("languages");
+        assertThat(languages.size()).isEqualTo(2);
+        assertThat(languages.get(0).getAsJsonObject().get("name").getAsString()).isEqualTo("C++");
+        assertThat(languages.get(1).getAsJsonObject().get("name").getAsString()).isEqualTo("Java");
+    }
+
+    @Test
+    public void testSingleLanguageIgnoresCase() throws IOException {
+        server.publish(snapshot(repository(1, language("Java", 10), language("C++", 30)),
+                repository(2, language("Java", 10))));
+
+        JsonObject java = body(open("/statistics/jAVA"));
+        assertThat(java.get("name").getAsString()).isEqualTo("Java");
+        assertThat(java.get("bytes").getAsLong()).isEqualTo(20);
+        assertThat(java.get("share").getAsBigDecimal()).isEqualTo(new BigDecimal("0.400000"));
+        assertThat(java.get("repositories").getAsLong()).isEqualTo(2);
+        assertThat(java.get("medianShare").getAsBigDecimal()).isEqualTo(new BigDecimal("0.25"));
+
+        JsonObject cpp = body(open("/statistics/c%2B%2B"));
+        assertThat(cpp.get("name").getAsString()).isEqualTo("C++");
+    }
+
+    @Test
+    public void testUnknownLanguage() throws IOException {
+        server.publish(snapshot(repository(1, language("Java", 10))));
+
+        assertThat(open("/statistics/Cobol").getResponseCode()).isEqualTo(404);
+        assertThat(open("/statisticsfoo").getResponseCode()).isEqualTo(404);
+    }
+
+    @Test
+    public void testOnlyGet() throws IOException {
+        server.publish(snapshot(repository(1, language("Java", 10))));
+
+        HttpURLConnection connection = open("/statistics");
+        connection.setRequestMethod("DELETE");
+        assertThat(connection.getResponseCode()).isEqualTo(405);
+        assertThat(connection.getHeaderField("Allow")).isEqualTo("GET");
+    }
+
+    @Test
+    public void testNotModifiedUntilNextPublication() throws IOException {
+        server.publish(snapshot(repository(1, language("Java", 10))));
+        String eTag = open("/statistics").getHeaderField("ETag");
+        assertThat(eTag).isNotNull();
+
+        HttpURLConnection unchanged = open("/statistics");
+        unchanged.setRequestProperty("If-None-Match", eTag);
+        assertThat(unchanged.getResponseCode()).isEqualTo(304);
+
+        server.publish(snapshot(repository(1, language("Java", 10)), repository(2, language("Go", 5))));
+        HttpURLConnection changed = open("/statistics");
+        changed.setRequestProperty("If-None-Match", eTag);
+        assertThat(changed.getResponseCode()).isEqualTo(200);
+        assertThat(changed.getHeaderField("ETag")).isNotEqualTo(eTag);
+        assertThat(body(changed).get("repositories").getAsLong()).isEqualTo(2);
+        assertThat(open("/statistics/go").getResponseCode()).isEqualTo(200);
+    }
+
+    @Test
+    public void testMetricsForPrometheus() throws IOException {
+        Metrics.counter("test_server_total", "help");
+
+        HttpURLConnection connection = open("/metrics");
+        assertThat(connection.getResponseCode()).isEqualTo(200);
+        assertThat(connection.getContentType()).isEqualTo("text/plain; version=0.0.4; charset=utf-8");
+        try (InputStream in = connection.getInputStream()) {
+            assertThat(new String(ByteStreams.toByteArray(in), StandardCharsets.UTF_8))
+                    .contains("# TYPE test_server_total counter\ntest_server_total 0\n");
+        }
+    }
+
+    private HttpURLConnection open(String path) throws IOException {
+        return (HttpURLConnection) new URL("http://localhost:" + server.getPort() + path).openConnection();
+    }
+
+    private static JsonObject body(HttpURLConnection connection) throws IOException {
+        try (InputStream in = connection.getInputStream()) {
+            return new JsonParser().parse(new String(ByteStreams.toByteArray(in), StandardCharsets.UTF_8))
+                    .getAsJsonObject();
+        }
+    }
+
+    private static LanguageStatistics.Snapshot snapshot(Repository... repositories) {
+        LanguageStatistics statistics = new LanguageStatistics();
+        for (Repository repository : repositories) {
+            statistics.add(repository);
+        }
+        return statistics.snapshot();
+    }
+}
@@ -0,0 +1,258 @@
+package de.bschandera.githubapininja;
+
+import com.google.common.io.ByteStreams;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Local stand-in for api.github.com. Serves canned replies per path and query (the access token is ignored), counts the
+ * X-RateLimit-Remaining header down with every request and can delay every reply to simulate network latency. Faults,
+ * e.g. {@code 502 Bad Gateway} or a dropped connection, can be injected into a share of the replies.
+ */
+class StubServer implements Closeable {
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Map<String, Deque<Reply>> replies = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, AtomicInteger> hits = new ConcurrentHashMap<>();
+    private final Map<String, Headers> lastRequestHeaders = new ConcurrentHashMap<>();
+    private final Map<String, String> lastRequestBodies = new ConcurrentHashMap<>();
+    private final AtomicInteger rateLimitRemaining = new AtomicInteger(5000);
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private final Random faults = new Random(42);
+    private final AtomicInteger injectedFaults = new AtomicInteger();
+    private volatile long latencyMillis;
+    private volatile double faultRate;
+    private volatile Reply fault;
+
+    private StubServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                serve(exchange);
+            }
+        });
+        server.start();
+    }
+
+    static StubServer start() throws IOException {
+        return new StubServer();
+    }
+
+    String url(String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+
+    /**
+     * Always answer the given path with status 200 and the given body. The path may contain a query, e.g.
+     * {@code /repositories?since=42}. Requests whose query is not stubbed get the reply stubbed for the bare path.
+     */
+    void stub(String path, String body) {
+        stub(path, Reply.ok(body));
+    }
+
+    /**
+     * Answer the given path with the given replies, one after another. The last one is repeated forever.
+     */
+    void stub(String path, Reply... repliesInOrder) {
+        replies.put(path, new ArrayDeque<>(Arrays.asList(repliesInOrder)));
+    }
+
+    void setLatencyMillis(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    /**
+     * Answer the given share of all requests with the given fault instead of their stubbed reply. The faults are
+     * picked by a seeded random, so they are the same in every run with the same order of requests.
+     */
+    void injectFaults(double rate, Reply fault) {
+        this.fault = fault;
+        this.faultRate = rate;
+    }
+
+    int injectedFaults() {
+        return injectedFaults.get();
+    }
+
+    void setRateLimitRemaining(int remaining) {
+        rateLimitRemaining.set(remaining);
+    }
+
+    int hits(String path) {
+        final AtomicInteger count = hits.get(path);
+        return count == null ? 0 : count.get();
+    }
+
+    /**
+     * @return the value of the given header in the last request to the given path, {@code null} if it was not sent.
+     */
+    String lastRequestHeader(String path, String name) {
+        final Headers headers = lastRequestHeaders.get(path);
+        return headers == null ? null : headers.getFirst(name);
+    }
+
+    /**
+     * @return the body of the last request to the given path, {@code null} if there was none.
+     */
+    String lastRequestBody(String path) {
+        return lastRequestBodies.get(path);
+    }
+
+    int maxConcurrentRequests() {
+        return maxInFlight.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        final int current = inFlight.incrementAndGet();
+        try {
+            updateMaxInFlight(current);
+            final String path = exchange.getRequestURI().getPath();
+            countHit(path);
+            lastRequestHeaders.put(path, exchange.getRequestHeaders());
+            lastRequestBodies.put(path, readBody(exchange));
+            sleepLatency();
+            final Reply reply = nextFault();
+            respond(exchange, reply != null ? reply
+                    : nextReply(path, queryWithoutAccessToken(exchange.getRequestURI().getRawQuery())));
+        } finally {
+            inFlight.decrementAndGet();
+            exchange.close();
+        }
+    }
+
+    private static String readBody(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            return new String(ByteStreams.toByteArray(in), StandardCharsets.UTF_8);
+        }
+    }
+
+    private void updateMaxInFlight(int current) {
+        int max;
+        do {
+            max = maxInFlight.get();
+        } while (current > max && !maxInFlight.compareAndSet(max, current));
+    }
+
+    private void countHit(String path) {
+        hits.putIfAbsent(path, new AtomicInteger());
+        hits.get(path).incrementAndGet();
+    }
+
+    private void sleepLatency() {
+        if (latencyMillis > 0) {
+            try {
+                Thread.sleep(latencyMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static String queryWithoutAccessToken(String query) {
+        if (query == null) {
+            return "";
+        }
+        StringBuilder result = new StringBuilder();
+        for (String parameter : query.split("&")) {
+            if (!parameter.startsWith("access_token=")) {
+                result.append(result.length() == 0 ? "" : "&").append(parameter);
+            }
+        }
+        return result.toString();
+    }
+
+    private Reply nextFault() {
+        if (faultRate > 0 && faults.nextDouble() < faultRate) {
+            injectedFaults.incrementAndGet();
+            return fault;
+        }
+        return null;
+    }
+
+    private Reply nextReply(String path, String query) {
+        Deque<Reply> queue = query.isEmpty() ? null : replies.get(path + "?" + query);
+        if (queue == null) {
+            queue = replies.get(path);
+        }
+        if (queue == null) {
+            return new Reply(404, "{\"message\": \"Not Found\"}");
+        }
+        synchronized (queue) {
+            return queue.size() > 1 ? queue.poll() : queue.peek();
+        }
+    }
+
+    private void respond(HttpExchange exchange, Reply reply) throws IOException {
+        if (reply.status == Reply.DISCONNECT) {
+            // closing the exchange before the headers are sent drops the connection
+            return;
+        }
+        // like GitHub, answers to conditional requests do not count
+        final int remaining = Math.max(0, reply.status == 304 ? rateLimitRemaining.get() : rateLimitRemaining.decrementAndGet());
+        exchange.getResponseHeaders().add("X-RateLimit-Remaining", String.valueOf(remaining));
+        for (Map.Entry<String, String> header : reply.headers.entrySet()) {
+            exchange.getResponseHeaders().add(header.getKey(), header.getValue());
+        }
+        final byte[] body = reply.body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(reply.status, body.length == 0 ? -1 : body.length);
+        if (body.length > 0) {
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    static class Reply {
+        private static final int DISCONNECT = -1;
+
+        private final int status;
+        private final String body;
+        private final Map<String, String> headers = new LinkedHashMap<>();
+
+        Reply(int status, String body) {
+            this.status = status;
+            this.body = body;
+        }
+
+        static Reply ok(String body) {
+            return new Reply(200, body);
+        }
+
+        /**
+         * Closes the connection without an answer.
+         */
+        static Reply disconnect() {
+            return new Reply(DISCONNECT, "");
+        }
+
+        Reply withHeader(String name, String value) {
+            headers.put(name, value);
+            return this;
+        }
+    }
+}
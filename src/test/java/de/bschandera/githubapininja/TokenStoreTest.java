@@ -0,0 +1,49 @@
+package de.bschandera.githubapininja;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.Arrays;
+import java.util.EnumSet;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class TokenStoreTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testAddCreatesStoreReadableByOwnerOnly() throws IOException {
+        TokenStore tokenStore = new TokenStore(new File(temporaryFolder.getRoot(), "ninja/tokens"));
+        assertThat(tokenStore.read()).isEmpty();
+
+        tokenStore.add("first");
+        tokenStore.add("second");
+        tokenStore.add("first");
+
+        assertThat(tokenStore.read()).containsExactly("first", "second");
+        assertThat(Files.getPosixFilePermissions(tokenStore.getFile().toPath()))
+                .isEqualTo(EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE));
+        assertThat(tokenStore.getFile().getParentFile().list()).containsOnly("tokens");
+    }
+
+    @Test
+    public void testRemoveKeepsOtherLines() throws IOException {
+        File file = temporaryFolder.newFile();
+        Files.write(file.toPath(), Arrays.asList("# nightly job", "first", "", "  second  "), StandardCharsets.UTF_8);
+        TokenStore tokenStore = new TokenStore(file);
+
+        assertThat(tokenStore.remove("second")).isTrue();
+        assertThat(tokenStore.remove("third")).isFalse();
+
+        assertThat(Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)).containsExactly("# nightly job", "first",
+                "");
+    }
+}